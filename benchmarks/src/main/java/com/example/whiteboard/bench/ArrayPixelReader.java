@@ -0,0 +1,78 @@
+package com.example.whiteboard.bench;
+
+import javafx.scene.image.PixelFormat;
+import javafx.scene.image.PixelReader;
+import javafx.scene.image.WritablePixelFormat;
+import javafx.scene.paint.Color;
+
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+
+// PixelReader over an ARGB array, standing in for a canvas snapshot without the FX toolkit
+final class ArrayPixelReader implements PixelReader {
+    private final int[] pixels;
+    private final int width, height;
+
+    ArrayPixelReader(int[] pixels, int width, int height) {
+        this.pixels = pixels;
+        this.width = width;
+        this.height = height;
+    }
+
+    int getWidth() { return width; }
+    int getHeight() { return height; }
+
+    @Override
+    public PixelFormat<?> getPixelFormat() {
+        return PixelFormat.getIntArgbInstance();
+    }
+
+    @Override
+    public int getArgb(int x, int y) {
+        return pixels[y * width + x];
+    }
+
+    @Override
+    public Color getColor(int x, int y) {
+        int argb = getArgb(x, y);
+        return Color.rgb(argb >> 16 & 0xff, argb >> 8 & 0xff, argb & 0xff, (argb >>> 24) / 255.0);
+    }
+
+    @Override
+    public <T extends Buffer> void getPixels(int x, int y, int w, int h,
+                                             WritablePixelFormat<T> format, T buffer, int scanlineStride) {
+        // setArgb indexes from the start of its buffer; callers expect pixels from the position on
+        @SuppressWarnings("unchecked")
+        T target = (T) buffer.slice();
+        copy(x, y, w, h, format, target, scanlineStride);
+    }
+
+    @Override
+    public void getPixels(int x, int y, int w, int h, WritablePixelFormat<ByteBuffer> format,
+                          byte[] buffer, int offset, int scanlineStride) {
+        copy(x, y, w, h, format, ByteBuffer.wrap(buffer, offset, buffer.length - offset).slice(), scanlineStride);
+    }
+
+    @Override
+    public void getPixels(int x, int y, int w, int h, WritablePixelFormat<IntBuffer> format,
+                          int[] buffer, int offset, int scanlineStride) {
+        if (format.getType() != PixelFormat.Type.INT_ARGB) {
+            copy(x, y, w, h, format, IntBuffer.wrap(buffer, offset, buffer.length - offset).slice(), scanlineStride);
+            return;
+        }
+        for (int row = 0; row < h; row++) {
+            System.arraycopy(pixels, (y + row) * width + x, buffer, offset + row * scanlineStride, w);
+        }
+    }
+
+    // One pixel at a time, letting the format convert, e.g. premultiply for the *_PRE formats
+    private <T extends Buffer> void copy(int x, int y, int w, int h, WritablePixelFormat<T> format,
+                                         T buffer, int scanlineStride) {
+        for (int row = 0; row < h; row++) {
+            for (int col = 0; col < w; col++) {
+                format.setArgb(buffer, col, row, scanlineStride, pixels[(y + row) * width + x + col]);
+            }
+        }
+    }
+}
@@ -0,0 +1,83 @@
+package com.example.whiteboard.bench;
+
+import com.example.whiteboard.HeadlessRenderer;
+import com.example.whiteboard.Rect;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.MemoryCacheImageOutputStream;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/*
+ * Encode throughput of the formats saveCanvas offers, on a 1920x1080 board
+ * image in the opaque RGB layout ImageExportTask hands to the encoder. The
+ * image comes from the headless renderer, so no stage or snapshot is needed.
+ * Multiply ops/s by 8.3 (megapixel-bytes at 4 bytes per pixel) for MB/s.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Djava.awt.headless=true"})
+public class ExportBenchmark {
+    @Param({"png", "jpg", "gif", "bmp"})
+    public String format;
+
+    private BufferedImage image;
+    private ImageWriter writer;
+
+    @Setup
+    public void setUp() {
+        HeadlessRenderer renderer = new HeadlessRenderer();
+        image = renderer.render(Fixtures.board(new Random(3), 400, 1920, 1080), Rect.ofSize(0, 0, 1920, 1080), 1);
+        writer = ImageIO.getImageWritersByFormatName(format).next();
+    }
+
+    @TearDown
+    public void tearDown() {
+        writer.dispose();
+    }
+
+    @Benchmark
+    public long encode() throws IOException {
+        CountingOutputStream bytes = new CountingOutputStream();
+        try (MemoryCacheImageOutputStream out = new MemoryCacheImageOutputStream(bytes)) {
+            writer.setOutput(out);
+            writer.write(image);
+        } finally {
+            writer.reset();
+        }
+        return bytes.count;
+    }
+
+    private static class CountingOutputStream extends OutputStream {
+        long count;
+
+        @Override
+        public void write(int b) {
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            count += len;
+        }
+    }
+}
@@ -0,0 +1,61 @@
+package com.example.whiteboard.bench;
+
+import com.example.whiteboard.SceneModel;
+import com.example.whiteboard.Stroke;
+import com.example.whiteboard.TextItem;
+import javafx.scene.paint.Color;
+
+import java.awt.BasicStroke;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.util.Random;
+
+// Shared test content: random scribbles like the ones people draw
+final class Fixtures {
+    private Fixtures() {}
+
+    static Stroke randomStroke(Random random, int points, double extent) {
+        Stroke stroke = new Stroke("pen", Color.hsb(random.nextDouble() * 360, 0.8, 0.7), 2 + random.nextInt(8));
+        double x = random.nextDouble() * extent;
+        double y = random.nextDouble() * extent;
+        for (int i = 0; i < points; i++) {
+            x += random.nextGaussian() * 4;
+            y += random.nextGaussian() * 4;
+            stroke.addPoint(x, y);
+        }
+        return stroke;
+    }
+
+    static SceneModel board(Random random, int strokes, double width, double height) {
+        SceneModel model = new SceneModel();
+        for (int i = 0; i < strokes; i++) {
+            model.add(randomStroke(random, 100, Math.min(width, height)));
+        }
+        model.add(new TextItem("Quarterly plan", width / 4, height / 4, Color.DARKBLUE, 48));
+        return model;
+    }
+
+    // A transparent canvas with scribbles over roughly the given fraction of its tiles
+    static ArrayPixelReader canvas(int width, int height, double coverage, Random random) {
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+        Graphics2D g = image.createGraphics();
+        g.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+        g.setStroke(new BasicStroke(4, BasicStroke.CAP_ROUND, BasicStroke.JOIN_ROUND));
+        int tile = 256;
+        for (int ty = 0; ty < height; ty += tile) {
+            for (int tx = 0; tx < width; tx += tile) {
+                if (random.nextDouble() >= coverage) continue;
+                g.setColor(new java.awt.Color(random.nextInt(0xffffff)));
+                for (int i = 0; i < 20; i++) {
+                    g.drawLine(tx + random.nextInt(tile), ty + random.nextInt(tile),
+                            tx + random.nextInt(tile), ty + random.nextInt(tile));
+                }
+            }
+        }
+        g.dispose();
+        int[] pixels = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+        return new ArrayPixelReader(pixels, width, height);
+    }
+}
@@ -0,0 +1,64 @@
+package com.example.whiteboard.bench;
+
+import com.example.whiteboard.SceneModel;
+import com.example.whiteboard.WhiteboardController;
+import javafx.scene.layout.Region;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/*
+ * The hit test behind handleMediaDragStart: the topmost media element under a
+ * point among N elements. Nodes are plain Regions, which compute bounds without
+ * the FX toolkit running.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"-Djava.awt.headless=true", "-Dprism.order=sw"})
+public class HitTestBenchmark {
+    private static final double BOARD_SIZE = 20_000;
+    private static final int PROBES = 1024;
+
+    @Param({"10", "1000", "100000"})
+    public int elements;
+
+    private SceneModel model;
+    private final double[] probes = new double[PROBES * 2];
+    private int next;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(11);
+        model = new SceneModel();
+        for (int i = 0; i < elements; i++) {
+            Region node = new Region();
+            node.resizeRelocate(random.nextDouble() * BOARD_SIZE, random.nextDouble() * BOARD_SIZE,
+                    100 + random.nextInt(500), 100 + random.nextInt(400));
+            model.addMedia(new WhiteboardController.MediaElement(node, 0, 0, null));
+        }
+        for (int i = 0; i < probes.length; i++) {
+            probes[i] = random.nextDouble() * BOARD_SIZE;
+        }
+    }
+
+    @Benchmark
+    public WhiteboardController.MediaElement mediaAt() {
+        int i = next;
+        next = (next + 2) % probes.length;
+        return model.mediaAt(probes[i], probes[i + 1]);
+    }
+}
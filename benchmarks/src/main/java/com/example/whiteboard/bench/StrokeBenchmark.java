@@ -0,0 +1,58 @@
+package com.example.whiteboard.bench;
+
+import com.example.whiteboard.Stroke;
+import com.example.whiteboard.Viewport;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/*
+ * Work handleMouseDragged does per event: map the screen point to the board
+ * and append it to the stroke (drawing happens once per frame, not per event).
+ * Each measurement is a batch of drag events appended to a stroke that
+ * already has strokeLength points, so a cost that grows with length shows up.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 10, batchSize = StrokeBenchmark.EVENTS)
+@Measurement(iterations = 20, batchSize = StrokeBenchmark.EVENTS)
+@Fork(value = 1, jvmArgsAppend = {"-Djava.awt.headless=true"})
+public class StrokeBenchmark {
+    static final int EVENTS = 10_000;
+
+    @Param({"100", "10000", "1000000"})
+    public int strokeLength;
+
+    private final Viewport viewport = new Viewport();
+    private Stroke stroke;
+    private double screenX, screenY;
+
+    @Setup(Level.Iteration)
+    public void setUp() {
+        stroke = Fixtures.randomStroke(new Random(7), strokeLength, 4000);
+        viewport.zoomAt(600, 350, 1.5);
+        screenX = 600;
+        screenY = 350;
+    }
+
+    @Benchmark
+    public int dragEvent() {
+        screenX += 0.7;
+        screenY += 0.3;
+        stroke.addPoint(viewport.toWorldX(screenX), viewport.toWorldY(screenY));
+        return stroke.getPointCount();
+    }
+}
@@ -0,0 +1,80 @@
+package com.example.whiteboard.bench;
+
+import com.example.whiteboard.CommandHistory;
+import com.example.whiteboard.SceneEdit;
+import com.example.whiteboard.SceneModel;
+import com.example.whiteboard.Stroke;
+import com.example.whiteboard.TileSnapshot;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/*
+ * What the old saveCurrentState snapshot turned into: recording a finished
+ * stroke as a SceneEdit (commit plus undo, so the board stays the same size),
+ * and capturing a canvas-sized raster as compressed tiles for raster content.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"-Djava.awt.headless=true"})
+public class UndoBenchmark {
+    @State(Scope.Thread)
+    public static class Board {
+        @Param({"100", "10000"})
+        public int boardItems;
+
+        SceneModel model;
+        CommandHistory history;
+        Stroke stroke;
+
+        @Setup
+        public void setUp() {
+            Random random = new Random(42);
+            model = new SceneModel();
+            history = new CommandHistory();
+            for (int i = 0; i < boardItems; i++) {
+                model.add(Fixtures.randomStroke(random, 50, 4000));
+            }
+            stroke = Fixtures.randomStroke(random, 200, 4000);
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Canvas {
+        @Param({"sparse", "full"})
+        public String coverage;
+
+        ArrayPixelReader pixels;
+
+        @Setup
+        public void setUp() {
+            pixels = Fixtures.canvas(1920, 1080, coverage.equals("full") ? 1.0 : 0.1, new Random(42));
+        }
+    }
+
+    @Benchmark
+    public SceneEdit commitAndUndoStroke(Board board) {
+        SceneEdit edit = SceneEdit.add(board.stroke);
+        edit.apply(board.model);
+        board.history.push(edit);
+        return board.history.undo(board.model);
+    }
+
+    @Benchmark
+    public TileSnapshot captureCanvas(Canvas canvas) {
+        return TileSnapshot.capture(canvas.pixels, canvas.pixels.getWidth(), canvas.pixels.getHeight());
+    }
+}
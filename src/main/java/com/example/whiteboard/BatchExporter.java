@@ -0,0 +1,188 @@
+package com.example.whiteboard;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageOutputStream;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/*
+ * Exports every board in a directory to PNG/JPG/GIF/BMP without a desktop
+ * session, using the headless renderer. A fixed number of worker threads each
+ * take the next board, so at most that many rendered images are in memory at
+ * once; tiles of each board still render in parallel on the fork-join pool.
+ * Each worker keeps its own encoder and reuses it for every board it writes.
+ *
+ *   --export <board dir> <png|jpg|gif|bmp> [--out <dir>] [--size <px>] [--threads <n>]
+ */
+public class BatchExporter {
+    public static final List<String> FORMATS = List.of("png", "jpg", "gif", "bmp");
+    public static final int DEFAULT_MAX_SIZE = 4096;
+
+    private final String format;
+    private final Path outputDir;
+    private final int maxSize;
+    private final int threads;
+    private final HeadlessRenderer renderer = new HeadlessRenderer();
+    private final ThreadLocal<ImageWriter> writers;
+
+    private final AtomicInteger exported = new AtomicInteger();
+    private final AtomicInteger failed = new AtomicInteger();
+    private final AtomicLong bytesRead = new AtomicLong();
+    private final AtomicLong bytesWritten = new AtomicLong();
+
+    public BatchExporter(String format, Path outputDir, int maxSize, int threads) {
+        this.format = format.toLowerCase(Locale.ROOT);
+        if (!FORMATS.contains(this.format)) throw new IllegalArgumentException("Unsupported format " + format);
+        this.outputDir = outputDir;
+        this.maxSize = maxSize;
+        this.threads = threads;
+        this.writers = ThreadLocal.withInitial(() -> {
+            Iterator<ImageWriter> available = ImageIO.getImageWritersByFormatName(this.format);
+            if (!available.hasNext()) throw new IllegalStateException("No encoder for " + this.format);
+            return available.next();
+        });
+    }
+
+    // Entry point for servers; WhiteboardApp.main also forwards --export here
+    public static void main(String[] args) {
+        System.exit(run(args));
+    }
+
+    // Returns the process exit code: 0 on success, 1 if any board failed, 2 on bad arguments
+    public static int run(String[] args) {
+        if (args.length < 3 || !args[0].equals("--export")) return usage();
+
+        Path boardDir = Paths.get(args[1]);
+        Path outputDir = boardDir;
+        int maxSize = DEFAULT_MAX_SIZE;
+        int threads = Runtime.getRuntime().availableProcessors();
+        try {
+            for (int i = 3; i < args.length; i += 2) {
+                if (i + 1 >= args.length) return usage();
+                switch (args[i]) {
+                    case "--out": outputDir = Paths.get(args[i + 1]); break;
+                    case "--size": maxSize = Integer.parseInt(args[i + 1]); break;
+                    case "--threads": threads = Integer.parseInt(args[i + 1]); break;
+                    default: return usage();
+                }
+            }
+            if (maxSize < 1 || threads < 1) return usage();
+
+            BatchExporter exporter = new BatchExporter(args[2], outputDir, maxSize, threads);
+            return exporter.exportAll(boardDir) ? 0 : 1;
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            return usage();
+        } catch (IOException e) {
+            System.err.println("Export failed: " + e.getMessage());
+            return 1;
+        }
+    }
+
+    private static int usage() {
+        System.err.println("Usage: --export <board dir> <png|jpg|gif|bmp> "
+                + "[--out <dir>] [--size <max pixels>] [--threads <n>]");
+        return 2;
+    }
+
+    // Exports every board file in boardDir and prints a throughput summary; false if any failed
+    public boolean exportAll(Path boardDir) throws IOException {
+        List<Path> boards;
+        try (Stream<Path> files = Files.list(boardDir)) {
+            boards = files.filter(path -> path.toString().endsWith("." + BoardFile.EXTENSION))
+                    .sorted()
+                    .collect(Collectors.toList());
+        }
+        Files.createDirectories(outputDir);
+
+        long start = System.nanoTime();
+        AtomicInteger next = new AtomicInteger();
+        ExecutorService workers = Executors.newFixedThreadPool(threads, r -> {
+            Thread thread = new Thread(r, "whiteboard-batch-export");
+            thread.setDaemon(true);
+            return thread;
+        });
+        for (int i = 0; i < threads; i++) {
+            workers.execute(() -> {
+                try {
+                    for (int index; (index = next.getAndIncrement()) < boards.size(); ) {
+                        export(boards.get(index));
+                    }
+                } finally {
+                    writers.get().dispose();
+                    writers.remove();
+                }
+            });
+        }
+        workers.shutdown();
+        try {
+            workers.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+        } catch (InterruptedException e) {
+            workers.shutdownNow();
+            Thread.currentThread().interrupt();
+            throw new IOException("Export interrupted");
+        }
+
+        printSummary((System.nanoTime() - start) / 1e9);
+        return failed.get() == 0;
+    }
+
+    private void export(Path board) {
+        String name = board.getFileName().toString();
+        name = name.substring(0, name.length() - BoardFile.EXTENSION.length() - 1);
+        Path target = outputDir.resolve(name + "." + format);
+        try {
+            bytesRead.addAndGet(Files.size(board));
+            BufferedImage image = renderer.renderBoard(board, maxSize);
+            bytesWritten.addAndGet(write(image, target));
+            exported.incrementAndGet();
+        } catch (IOException | RuntimeException e) {
+            failed.incrementAndGet();
+            System.err.println("Cannot export " + board + ": " + e.getMessage());
+        }
+    }
+
+    // Encodes through a temporary file so a failed export never leaves a partial image
+    private long write(BufferedImage image, Path target) throws IOException {
+        ImageWriter writer = writers.get();
+        File temp = File.createTempFile("whiteboard-", "." + format, target.toFile().getAbsoluteFile().getParentFile());
+        try {
+            try (ImageOutputStream out = ImageIO.createImageOutputStream(temp)) {
+                writer.setOutput(out);
+                writer.write(image);
+            } finally {
+                writer.reset();
+            }
+            Files.move(temp.toPath(), target, StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            Files.deleteIfExists(temp.toPath());
+        }
+        return Files.size(target);
+    }
+
+    private void printSummary(double seconds) {
+        double elapsed = Math.max(seconds, 1e-9);
+        double readMb = bytesRead.get() / 1e6;
+        double writtenMb = bytesWritten.get() / 1e6;
+        System.out.printf(Locale.ROOT,
+                "Exported %d boards (%d failed) in %.2f s: %.1f boards/s, %.1f MB/s read, %.1f MB/s written%n",
+                exported.get(), failed.get(), seconds, exported.get() / elapsed,
+                readMb / elapsed, writtenMb / elapsed);
+    }
+}
@@ -0,0 +1,376 @@
+package com.example.whiteboard;
+
+import javafx.scene.image.ImageView;
+import javafx.scene.media.MediaView;
+import javafx.scene.paint.Color;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+/*
+ * Native board format: an 8-byte header followed by an append-only sequence of
+ * operation records, each [int length][byte type][payload][int crc32]. A board
+ * is written compacted (one ADD per live item) and BoardJournal then appends
+ * the changes made to it. Reading replays the records and stops at the first
+ * torn or corrupt one, which recovers everything up to the last flush after a
+ * crash. All numbers are big-endian, including the ARGB pixels inside the
+ * deflated tiles of raster items.
+ */
+public class BoardFile {
+    public static final String EXTENSION = "wbd";
+    public static final Path RECOVERY_PATH =
+            Paths.get(System.getProperty("user.home"), ".whiteboard", "recovery." + EXTENSION);
+
+    static final int MAGIC = 0x57425244; // "WBRD"
+    static final int VERSION = 1;
+    static final int HEADER_SIZE = 8;
+
+    static final byte ADD_ITEM = 1;
+    static final byte REMOVE_ITEM = 2;
+    static final byte ADD_MEDIA = 3;
+    static final byte MOVE_MEDIA = 4;
+    static final byte REMOVE_MEDIA = 5;
+
+    private static final byte STROKE = 1;
+    private static final byte TEXT = 2;
+    private static final byte RASTER = 3;
+    private static final byte LARGE_IMAGE = 4;
+    private static final byte FILL = 5;
+
+    public static class MediaRecord {
+        public final String type;   // "image", "video" or "audio"
+        public final String source; // URL of the media
+        public final double x, y;
+
+        public MediaRecord(String type, String source, double x, double y) {
+            this.type = type;
+            this.source = source;
+            this.x = x;
+            this.y = y;
+        }
+    }
+
+    public static class Contents {
+        public final List<SceneItem> items;
+        public final List<MediaRecord> media;
+        public final boolean recovered; // true when a damaged tail was skipped
+
+        Contents(List<SceneItem> items, List<MediaRecord> media, boolean recovered) {
+            this.items = items;
+            this.media = media;
+            this.recovered = recovered;
+        }
+    }
+
+    public static boolean hasContent(Path path) {
+        try {
+            return Files.size(path) > HEADER_SIZE;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    // Reads the file onto the heap and replays its records. Not mapped: a live
+    // mapping keeps the file locked on Windows until it is collected, and
+    // write() replaces this same file right after a board is opened.
+    public static Contents read(Path path) throws IOException {
+        Map<Long, SceneItem> items = new LinkedHashMap<>();
+        Map<Long, MediaRecord> media = new LinkedHashMap<>();
+        boolean recovered;
+
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size < HEADER_SIZE) {
+                return new Contents(new ArrayList<>(), new ArrayList<>(), size > 0);
+            }
+            if (size > Integer.MAX_VALUE - 8) throw new IOException("Board file too large: " + path);
+            ByteBuffer buffer = ByteBuffer.allocate((int) size);
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer) < 0) break; // truncated while reading; replay what arrived
+            }
+            buffer.flip();
+            if (buffer.getInt() != MAGIC) throw new IOException("Not a whiteboard file: " + path);
+            int version = buffer.getInt();
+            if (version != VERSION) throw new IOException("Unsupported board version " + version);
+
+            CRC32 crc = new CRC32();
+            int validEnd = buffer.position();
+            while (buffer.remaining() >= 4) {
+                int length = buffer.getInt();
+                if (length < 1 || buffer.remaining() < length + 4) break;
+
+                ByteBuffer record = buffer.slice();
+                record.limit(length);
+                crc.reset();
+                crc.update(record.duplicate());
+                buffer.position(buffer.position() + length);
+                if ((int) crc.getValue() != buffer.getInt()) break;
+
+                try {
+                    apply(record, items, media);
+                } catch (RuntimeException e) {
+                    break; // checksum matched but the payload does not parse
+                }
+                validEnd = buffer.position();
+            }
+            recovered = validEnd < size;
+        }
+
+        List<SceneItem> sorted = new ArrayList<>(items.values());
+        sorted.sort(Comparator.comparingLong(SceneItem::getOrder));
+        return new Contents(sorted, new ArrayList<>(media.values()), recovered);
+    }
+
+    // Writes a compacted board, replacing the target only once it is complete
+    public static void write(Path path, SceneModel model) throws IOException {
+        Path parent = path.toAbsolutePath().getParent();
+        Files.createDirectories(parent);
+        Path temp = Files.createTempFile(parent, "board-", ".tmp");
+        try {
+            try (OutputStream out = Files.newOutputStream(temp)) {
+                out.write(header());
+                for (SceneItem item : model.getItems()) {
+                    out.write(addItemRecord(item));
+                }
+                for (WhiteboardController.MediaElement element : model.getMediaElements()) {
+                    byte[] record = addMediaRecord(model.getMediaId(element), element);
+                    if (record != null) out.write(record);
+                }
+            }
+            Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    static byte[] header() {
+        return ByteBuffer.allocate(HEADER_SIZE).putInt(MAGIC).putInt(VERSION).array();
+    }
+
+    static byte[] addItemRecord(SceneItem item) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeLong(item.getOrder());
+        writeItem(out, item);
+        return record(ADD_ITEM, bytes.toByteArray());
+    }
+
+    static byte[] removeItemRecord(SceneItem item) {
+        return record(REMOVE_ITEM, ByteBuffer.allocate(8).putLong(item.getOrder()).array());
+    }
+
+    // Null when the element has no source that can be stored
+    static byte[] addMediaRecord(long id, WhiteboardController.MediaElement element) throws IOException {
+        MediaRecord media = describe(element);
+        if (media == null) return null;
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeLong(id);
+        writeString(out, media.type);
+        writeString(out, media.source);
+        out.writeDouble(media.x);
+        out.writeDouble(media.y);
+        return record(ADD_MEDIA, bytes.toByteArray());
+    }
+
+    static byte[] moveMediaRecord(long id, WhiteboardController.MediaElement element) {
+        return record(MOVE_MEDIA, ByteBuffer.allocate(24).putLong(id)
+                .putDouble(element.node.getLayoutX()).putDouble(element.node.getLayoutY()).array());
+    }
+
+    static byte[] removeMediaRecord(long id) {
+        return record(REMOVE_MEDIA, ByteBuffer.allocate(8).putLong(id).array());
+    }
+
+    static MediaRecord describe(WhiteboardController.MediaElement element) {
+        double x = element.node.getLayoutX();
+        double y = element.node.getLayoutY();
+        if (element.node instanceof ImageView && ((ImageView) element.node).getImage() != null) {
+            String url = ((ImageView) element.node).getImage().getUrl();
+            return url != null ? new MediaRecord("image", url, x, y) : null;
+        }
+        if (element.source == null) return null;
+        return new MediaRecord(element.node instanceof MediaView ? "video" : "audio", element.source, x, y);
+    }
+
+    static byte[] record(byte type, byte[] payload) {
+        CRC32 crc = new CRC32();
+        crc.update(type);
+        crc.update(payload);
+        return ByteBuffer.allocate(4 + 1 + payload.length + 4)
+                .putInt(1 + payload.length)
+                .put(type)
+                .put(payload)
+                .putInt((int) crc.getValue())
+                .array();
+    }
+
+    private static void apply(ByteBuffer record, Map<Long, SceneItem> items, Map<Long, MediaRecord> media) {
+        byte type = record.get();
+        long id = record.getLong();
+        switch (type) {
+            case ADD_ITEM:
+                SceneItem item = readItem(record);
+                item.setOrder(id);
+                items.put(id, item);
+                break;
+            case REMOVE_ITEM:
+                items.remove(id);
+                break;
+            case ADD_MEDIA:
+                media.put(id, readMedia(record));
+                break;
+            case MOVE_MEDIA:
+                MediaRecord moved = media.get(id);
+                if (moved != null) media.put(id, readMove(moved, record));
+                break;
+            case REMOVE_MEDIA:
+                media.remove(id);
+                break;
+            default:
+                // Unknown record types come from newer versions and are skipped
+                break;
+        }
+    }
+
+    // Payload of an ADD_MEDIA record after its id
+    static MediaRecord readMedia(ByteBuffer in) {
+        return new MediaRecord(readString(in), readString(in), in.getDouble(), in.getDouble());
+    }
+
+    // Where a MOVE_MEDIA record puts the media, from the payload after its id
+    static MediaRecord readMove(MediaRecord media, ByteBuffer in) {
+        return new MediaRecord(media.type, media.source, in.getDouble(), in.getDouble());
+    }
+
+    private static void writeItem(DataOutputStream out, SceneItem item) throws IOException {
+        if (item instanceof Stroke) {
+            Stroke stroke = (Stroke) item;
+            out.writeByte(STROKE);
+            writeString(out, stroke.getTool());
+            writeColor(out, stroke.getColor());
+            out.writeFloat((float) stroke.getWidth());
+            out.writeInt(stroke.getPointCount());
+            for (int i = 0; i < stroke.getPointCount(); i++) {
+                out.writeFloat((float) stroke.getX(i));
+                out.writeFloat((float) stroke.getY(i));
+            }
+            // First point of each run, since the eraser can cut a stroke into several
+            out.writeInt(stroke.getRunCount());
+            for (int run = 0; run < stroke.getRunCount(); run++) {
+                out.writeInt(stroke.getRunStart(run));
+            }
+        } else if (item instanceof TextItem) {
+            TextItem text = (TextItem) item;
+            out.writeByte(TEXT);
+            writeString(out, text.getText());
+            out.writeDouble(text.getX());
+            out.writeDouble(text.getY());
+            writeColor(out, text.getColor());
+            out.writeFloat((float) text.getFontSize());
+        } else if (item instanceof FillItem) {
+            FillItem fill = (FillItem) item;
+            out.writeByte(FILL);
+            out.writeDouble(fill.getX());
+            out.writeDouble(fill.getY());
+            out.writeDouble(fill.getScale());
+            fill.getTiles().writeTo(out);
+        } else if (item instanceof RasterItem) {
+            RasterItem raster = (RasterItem) item;
+            out.writeByte(RASTER);
+            out.writeDouble(raster.getX());
+            out.writeDouble(raster.getY());
+            raster.getTiles().writeTo(out);
+        } else if (item instanceof LargeImageItem) {
+            // Stored by reference; the source file is decoded on demand when viewed
+            LargeImageItem image = (LargeImageItem) item;
+            out.writeByte(LARGE_IMAGE);
+            writeString(out, image.getFile().getAbsolutePath());
+            out.writeDouble(image.getX());
+            out.writeDouble(image.getY());
+            out.writeInt(image.getImageWidth());
+            out.writeInt(image.getImageHeight());
+        } else {
+            throw new IOException("Cannot store " + item.getClass().getSimpleName());
+        }
+    }
+
+    static SceneItem readItem(ByteBuffer in) {
+        byte kind = in.get();
+        switch (kind) {
+            case STROKE:
+                Stroke stroke = new Stroke(readString(in), readColor(in), in.getFloat());
+                int count = in.getInt();
+                float[] points = new float[count * 2];
+                for (int i = 0; i < points.length; i++) points[i] = in.getFloat();
+                int[] starts = new int[in.getInt()];
+                for (int run = 0; run < starts.length; run++) starts[run] = in.getInt();
+                for (int run = 0, i = 0; i < count; i++) {
+                    if (run + 1 < starts.length && starts[run + 1] == i) {
+                        stroke.startRun();
+                        run++;
+                    }
+                    stroke.addPoint(points[i * 2], points[i * 2 + 1]);
+                }
+                return stroke;
+            case TEXT:
+                return new TextItem(readString(in), in.getDouble(), in.getDouble(), readColor(in), in.getFloat());
+            case RASTER:
+                double x = in.getDouble();
+                double y = in.getDouble();
+                return new RasterItem(TileSnapshot.readFrom(in), x, y);
+            case FILL: {
+                double fillX = in.getDouble();
+                double fillY = in.getDouble();
+                double scale = in.getDouble();
+                return new FillItem(TileSnapshot.readFrom(in), fillX, fillY, scale);
+            }
+            case LARGE_IMAGE:
+                return new LargeImageItem(new File(readString(in)), in.getDouble(), in.getDouble(),
+                        in.getInt(), in.getInt());
+            default:
+                throw new IllegalArgumentException("Unknown item kind " + kind);
+        }
+    }
+
+    static void writeColor(DataOutputStream out, Color color) throws IOException {
+        out.writeFloat((float) color.getRed());
+        out.writeFloat((float) color.getGreen());
+        out.writeFloat((float) color.getBlue());
+        out.writeFloat((float) color.getOpacity());
+    }
+
+    static Color readColor(ByteBuffer in) {
+        return Color.color(in.getFloat(), in.getFloat(), in.getFloat(), in.getFloat());
+    }
+
+    static void writeString(DataOutputStream out, String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    static String readString(ByteBuffer in) {
+        byte[] bytes = new byte[in.getInt()];
+        in.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,128 @@
+package com.example.whiteboard;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/*
+ * Appends every change to the scene model to a board file. Records are encoded
+ * on the FX thread as changes happen and buffered; the autosave thread writes
+ * and syncs only what was added since the last flush, so autosave cost depends
+ * on how much changed rather than on the size of the board.
+ */
+public class BoardJournal implements SceneModel.Listener, Closeable {
+    private static final long AUTOSAVE_INTERVAL_SECONDS = 5;
+
+    private final Path path;
+    private final SceneModel model;
+    private final FileChannel channel;
+    private final ScheduledExecutorService autosave;
+    private final Object pendingLock = new Object();
+    private final Object writeLock = new Object();
+    private ByteArrayOutputStream pending = new ByteArrayOutputStream();
+
+    private BoardJournal(Path path, SceneModel model) throws IOException {
+        this.path = path;
+        this.model = model;
+        this.channel = FileChannel.open(path, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        this.autosave = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "whiteboard-autosave");
+            thread.setDaemon(true);
+            return thread;
+        });
+        autosave.scheduleWithFixedDelay(this::autosave,
+                AUTOSAVE_INTERVAL_SECONDS, AUTOSAVE_INTERVAL_SECONDS, TimeUnit.SECONDS);
+        model.addListener(this);
+    }
+
+    // Writes a compacted copy of the model to path, then journals further changes to it
+    public static BoardJournal open(Path path, SceneModel model) throws IOException {
+        BoardFile.write(path, model);
+        return new BoardJournal(path, model);
+    }
+
+    public Path getPath() { return path; }
+
+    @Override
+    public void itemAdded(SceneItem item) {
+        try {
+            append(BoardFile.addItemRecord(item));
+        } catch (IOException e) {
+            System.err.println("Cannot journal " + item.getClass().getSimpleName() + ": " + e.getMessage());
+        }
+    }
+
+    @Override
+    public void itemRemoved(SceneItem item) {
+        append(BoardFile.removeItemRecord(item));
+    }
+
+    @Override
+    public void mediaAdded(WhiteboardController.MediaElement element) {
+        try {
+            byte[] record = BoardFile.addMediaRecord(model.getMediaId(element), element);
+            if (record != null) append(record);
+        } catch (IOException e) {
+            System.err.println("Cannot journal media: " + e.getMessage());
+        }
+    }
+
+    @Override
+    public void mediaMoved(WhiteboardController.MediaElement element) {
+        append(BoardFile.moveMediaRecord(model.getMediaId(element), element));
+    }
+
+    @Override
+    public void mediaRemoved(WhiteboardController.MediaElement element) {
+        append(BoardFile.removeMediaRecord(model.getMediaId(element)));
+    }
+
+    // Writes and syncs everything recorded since the last flush
+    public void flush() throws IOException {
+        synchronized (writeLock) {
+            byte[] bytes;
+            synchronized (pendingLock) {
+                if (pending.size() == 0) return;
+                bytes = pending.toByteArray();
+                pending = new ByteArrayOutputStream();
+            }
+            ByteBuffer buffer = ByteBuffer.wrap(bytes);
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            channel.force(false);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        model.removeListener(this);
+        autosave.shutdown();
+        try {
+            flush();
+        } finally {
+            channel.close();
+        }
+    }
+
+    private void append(byte[] record) {
+        synchronized (pendingLock) {
+            pending.writeBytes(record);
+        }
+    }
+
+    private void autosave() {
+        try {
+            flush();
+        } catch (IOException e) {
+            System.err.println("Autosave to " + path + " failed: " + e.getMessage());
+        }
+    }
+}
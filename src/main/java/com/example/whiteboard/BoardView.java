@@ -0,0 +1,203 @@
+package com.example.whiteboard;
+
+import javafx.animation.AnimationTimer;
+import javafx.scene.canvas.Canvas;
+import javafx.scene.canvas.GraphicsContext;
+import javafx.scene.image.Image;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/*
+ * Paints the visible part of the infinite board onto the on-screen canvas.
+ * Only tiles that intersect the viewport are drawn; missing tiles are rendered
+ * a few per frame, with the coarser cached level shown in the meantime, so
+ * panning and zooming never block on a full repaint.
+ *
+ * Each layer has its own tile cache and the canvas is the composite of the
+ * visible layers' tiles. Model changes only drop tiles of the changed item's
+ * layer, batched until the next frame; hiding or reordering layers just
+ * composites the cached tiles again.
+ */
+public class BoardView {
+    private static final int MAX_RENDERS_PER_FRAME = 12;
+    private static final int MAX_DIRTY_AREAS = 64; // per layer and frame, beyond that they are merged
+
+    private final Canvas canvas;
+    private final GraphicsContext gc;
+    private final Viewport viewport = new Viewport();
+    private final Map<Layer, TileCache> caches = new EnumMap<>(Layer.class);
+    private final Map<Layer, List<Rect>> dirtyAreas = new EnumMap<>(Layer.class);
+    private final List<Layer> order = new ArrayList<>(List.of(Layer.values())); // bottom to top
+    private final Set<Layer> hidden = EnumSet.noneOf(Layer.class);
+    private final StrokeRenderer strokeRenderer;
+    private final PerfMonitor monitor;
+    private final AnimationTimer timer;
+    private boolean dirty;
+
+    public BoardView(Canvas canvas, SceneModel model, PerfMonitor monitor) {
+        this.canvas = canvas;
+        this.gc = canvas.getGraphicsContext2D();
+        for (Layer layer : Layer.values()) {
+            caches.put(layer, new TileCache(model, layer));
+            dirtyAreas.put(layer, new ArrayList<>());
+        }
+        this.monitor = monitor;
+        this.strokeRenderer = new StrokeRenderer(gc, viewport, monitor);
+        this.timer = new AnimationTimer() {
+            @Override
+            public void handle(long now) {
+                if (dirty) repaint();
+            }
+        };
+
+        model.addListener(new SceneModel.Listener() {
+            @Override
+            public void itemAdded(SceneItem item) {
+                invalidate(item.getLayer(), item.getBounds());
+            }
+
+            @Override
+            public void itemRemoved(SceneItem item) {
+                invalidate(item.getLayer(), item.getBounds());
+            }
+
+            @Override
+            public void itemChanged(SceneItem item, Rect area) {
+                invalidate(item.getLayer(), area);
+            }
+        });
+        viewport.addListener(this::requestRepaint);
+        canvas.widthProperty().addListener(obs -> requestRepaint());
+        canvas.heightProperty().addListener(obs -> requestRepaint());
+    }
+
+    public Viewport getViewport() { return viewport; }
+    public StrokeRenderer getStrokeRenderer() { return strokeRenderer; }
+    public TileCache getTileCache(Layer layer) { return caches.get(layer); }
+
+    public Rect getVisibleArea() {
+        return viewport.getVisibleArea(canvas.getWidth(), canvas.getHeight());
+    }
+
+    // Drops the layer's tiles under area at the next frame
+    public void invalidate(Layer layer, Rect area) {
+        if (area == null) return;
+        List<Rect> areas = dirtyAreas.get(layer);
+        areas.add(area.expand(1));
+        if (areas.size() > MAX_DIRTY_AREAS) {
+            Rect union = null;
+            for (Rect dirtyArea : areas) union = dirtyArea.union(union);
+            areas.clear();
+            areas.add(union);
+        }
+        requestRepaint();
+    }
+
+    public void invalidateAll() {
+        for (Layer layer : Layer.values()) {
+            dirtyAreas.get(layer).clear();
+            caches.get(layer).invalidateAll();
+        }
+        requestRepaint();
+    }
+
+    public void requestRepaint() {
+        dirty = true;
+        timer.start();
+    }
+
+    // Layers from bottom to top
+    public List<Layer> getLayerOrder() {
+        return List.copyOf(order);
+    }
+
+    // Moves the layer up (positive steps) or down in the stacking order
+    public void moveLayer(Layer layer, int steps) {
+        int from = order.indexOf(layer);
+        int to = Math.max(0, Math.min(order.size() - 1, from + steps));
+        if (from == to) return;
+        order.remove(from);
+        order.add(to, layer);
+        requestRepaint();
+    }
+
+    public boolean isLayerVisible(Layer layer) {
+        return !hidden.contains(layer);
+    }
+
+    public void setLayerVisible(Layer layer, boolean visible) {
+        if (visible ? hidden.remove(layer) : hidden.add(layer)) requestRepaint();
+    }
+
+    private void repaint() {
+        long started = monitor.repaintStarted();
+        for (Layer layer : Layer.values()) {
+            List<Rect> areas = dirtyAreas.get(layer);
+            for (Rect area : areas) caches.get(layer).invalidate(area);
+            areas.clear();
+        }
+
+        double width = canvas.getWidth();
+        double height = canvas.getHeight();
+        gc.clearRect(0, 0, width, height);
+
+        Rect visible = viewport.getVisibleArea(width, height);
+        int level = TileCache.levelFor(viewport.getScale());
+        double size = TileCache.worldSize(level);
+        int renders = 0, rerenders = 0;
+        boolean missing = false;
+        int columns = (int) (Math.ceil(visible.maxX / size) - Math.floor(visible.minX / size));
+        int rows = (int) (Math.ceil(visible.maxY / size) - Math.floor(visible.minY / size));
+
+        for (Layer layer : order) {
+            if (hidden.contains(layer)) continue;
+            TileCache tiles = caches.get(layer);
+            tiles.reserve(columns * rows);
+            for (int ty = (int) Math.floor(visible.minY / size); ty * size < visible.maxY; ty++) {
+                for (int tx = (int) Math.floor(visible.minX / size); tx * size < visible.maxX; tx++) {
+                    double x0 = Math.round(viewport.toScreenX(tx * size));
+                    double y0 = Math.round(viewport.toScreenY(ty * size));
+                    double x1 = Math.round(viewport.toScreenX((tx + 1) * size));
+                    double y1 = Math.round(viewport.toScreenY((ty + 1) * size));
+
+                    // Tiles dropped by an edit are re-rendered at once so changes never flicker;
+                    // tiles that were never on screen are spread over several frames
+                    Image tile = tiles.get(level, tx, ty);
+                    if (tile == null && tiles.isStale(level, tx, ty)) {
+                        tile = tiles.render(level, tx, ty);
+                        rerenders++;
+                    } else if (tile == null && renders < MAX_RENDERS_PER_FRAME) {
+                        tile = tiles.render(level, tx, ty);
+                        renders++;
+                    }
+                    if (tile == null) {
+                        missing = true;
+                        drawFallback(tiles, level, tx, ty, x0, y0, x1 - x0, y1 - y0);
+                    } else if (!tiles.isBlank(tile)) {
+                        gc.drawImage(tile, x0, y0, x1 - x0, y1 - y0);
+                    }
+                }
+            }
+        }
+
+        strokeRenderer.redrawAll();
+        monitor.repaintFinished(started, renders + rerenders);
+        dirty = missing;
+        if (!dirty) timer.stop();
+    }
+
+    // Shows the matching quarter of the cached parent tile until this one is rendered
+    private void drawFallback(TileCache tiles, int level, int tx, int ty, double x, double y, double w, double h) {
+        if (level >= TileCache.MAX_LEVEL) return;
+        Image parent = tiles.get(level + 1, Math.floorDiv(tx, 2), Math.floorDiv(ty, 2));
+        if (parent == null || tiles.isBlank(parent)) return;
+
+        double half = TileCache.TILE_SIZE / 2.0;
+        gc.drawImage(parent, Math.floorMod(tx, 2) * half, Math.floorMod(ty, 2) * half, half, half, x, y, w, h);
+    }
+}
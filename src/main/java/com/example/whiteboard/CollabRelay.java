@@ -0,0 +1,255 @@
+package com.example.whiteboard;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+
+/*
+ * Relay for a shared board. Clients send frames of board records (the same
+ * records BoardFile journals, plus live stroke records); the relay puts them in
+ * one order and forwards each frame to every other client, and answers the
+ * sender with an ack at the same point in that order, so every client can tell
+ * which of its changes the others' came before. It also keeps the op-log as a
+ * checkpoint (latest add per item and media id) plus a short tail of recent
+ * records, so a late joiner gets the current board instead of a replay of the
+ * whole session. Live stroke records are forwarded but not kept. A client that
+ * stops reading is dropped once its queue is full; it gets the current board
+ * again when it rejoins.
+ *
+ * A frame is [int length][records]; each record is [int length][type][payload][crc].
+ */
+public class CollabRelay implements Closeable {
+    public static final int DEFAULT_PORT = 7800;
+
+    // Session-only record types; BoardFile skips unknown types, so they never reach a board file
+    static final byte HELLO = 16;          // relay -> client: long site, byte 1 if the board is empty
+    static final byte STROKE_BEGIN = 17;   // long live id, tool, color, float width, float x, float y
+    static final byte STROKE_POINTS = 18;  // long live id, varint count, zigzag varint deltas
+    static final byte STROKE_END = 19;     // long live id
+    static final byte ACK = 20;            // relay -> sender: long 0; the sender's oldest unacked frame is ordered
+
+    static final int MAX_FRAME = 64 << 20; // bytes; larger lengths from either side end the connection
+
+    private static final int TAIL_LIMIT = 512;
+    private static final int MAX_QUEUED_FRAMES = 4096; // about a minute of frames at one per pulse
+    private static final byte[] ACK_FRAME = BoardFile.record(ACK, new byte[8]);
+
+    private final ServerSocket server;
+    private final Object lock = new Object();
+    private final List<Client> clients = new ArrayList<>();
+    private final BitSet sites = new BitSet();
+    private final Map<Long, byte[]> items = new LinkedHashMap<>();
+    private final Map<Long, byte[]> media = new LinkedHashMap<>();
+    private final Map<Long, byte[]> mediaMoves = new LinkedHashMap<>();
+    private final List<byte[]> tail = new ArrayList<>();
+
+    private class Client {
+        final Socket socket;
+        final int site;
+        final BlockingQueue<byte[]> outgoing = new LinkedBlockingQueue<>(MAX_QUEUED_FRAMES);
+
+        Client(Socket socket, int site) {
+            this.socket = socket;
+            this.site = site;
+        }
+
+        void read() {
+            try (DataInputStream in = new DataInputStream(socket.getInputStream())) {
+                while (true) {
+                    int length = in.readInt();
+                    if (length < 0 || length > MAX_FRAME) throw new IOException("Bad frame length " + length);
+                    byte[] frame = new byte[length];
+                    in.readFully(frame);
+                    relay(this, frame);
+                }
+            } catch (IOException e) {
+                // Disconnected
+            } finally {
+                disconnect(this);
+            }
+        }
+
+        // Writes queued frames, flushing only once the queue is drained so bursts share packets
+        void write() {
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()))) {
+                while (true) {
+                    byte[] frame = outgoing.take();
+                    if (frame.length == 0) return; // poison pill from disconnect
+                    out.writeInt(frame.length);
+                    out.write(frame);
+                    if (outgoing.isEmpty()) out.flush();
+                }
+            } catch (IOException | InterruptedException e) {
+                disconnect(this);
+            }
+        }
+    }
+
+    public CollabRelay(InetAddress address, int port) throws IOException {
+        server = new ServerSocket();
+        server.bind(new InetSocketAddress(address, port));
+        Thread acceptor = new Thread(this::accept, "whiteboard-relay");
+        acceptor.setDaemon(true);
+        acceptor.start();
+    }
+
+    // Loopback-only relay, for sessions between instances on one machine
+    public static CollabRelay startLocal(int port) throws IOException {
+        return new CollabRelay(InetAddress.getLoopbackAddress(), port);
+    }
+
+    // Standalone relay: --relay [port] [bind address]
+    public static void main(String[] args) throws IOException, InterruptedException {
+        int port = args.length > 1 ? Integer.parseInt(args[1]) : DEFAULT_PORT;
+        InetAddress address = args.length > 2 ? InetAddress.getByName(args[2]) : InetAddress.getLoopbackAddress();
+        CollabRelay relay = new CollabRelay(address, port);
+        System.out.println("Relay listening on " + relay.server.getLocalSocketAddress());
+        Thread.currentThread().join();
+    }
+
+    public int getPort() { return server.getLocalPort(); }
+
+    public int getClientCount() {
+        synchronized (lock) {
+            return clients.size();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        server.close();
+        List<Client> connected;
+        synchronized (lock) {
+            connected = new ArrayList<>(clients);
+        }
+        for (Client client : connected) disconnect(client);
+    }
+
+    private void accept() {
+        while (!server.isClosed()) {
+            try {
+                Socket socket = server.accept();
+                socket.setTcpNoDelay(true);
+                join(socket);
+            } catch (IOException e) {
+                if (!server.isClosed()) System.err.println("Relay accept failed: " + e.getMessage());
+            }
+        }
+    }
+
+    // Registers the client and queues the hello, checkpoint and tail before any newer frame
+    private void join(Socket socket) throws IOException {
+        Client client;
+        synchronized (lock) {
+            int site = sites.nextClearBit(1);
+            if (site > SceneModel.MAX_SITE) {
+                socket.close();
+                return;
+            }
+            sites.set(site);
+            client = new Client(socket, site);
+            boolean empty = items.isEmpty() && media.isEmpty() && tail.isEmpty();
+            client.outgoing.add(BoardFile.record(HELLO,
+                    ByteBuffer.allocate(9).putLong(site).put((byte) (empty ? 1 : 0)).array()));
+            if (!empty) client.outgoing.add(snapshot());
+            clients.add(client);
+        }
+        start(client::read, "whiteboard-relay-in-" + client.site);
+        start(client::write, "whiteboard-relay-out-" + client.site);
+    }
+
+    private void relay(Client sender, byte[] frame) {
+        List<Client> stalled = new ArrayList<>();
+        synchronized (lock) {
+            log(frame);
+            for (Client client : clients) {
+                if (!client.outgoing.offer(client == sender ? ACK_FRAME : frame)) stalled.add(client);
+            }
+        }
+        for (Client client : stalled) disconnect(client);
+    }
+
+    private void disconnect(Client client) {
+        synchronized (lock) {
+            if (!clients.remove(client)) return;
+            sites.clear(client.site);
+        }
+        // Whatever was still queued is dropped; the writer stops at the poison pill
+        client.outgoing.clear();
+        client.outgoing.offer(new byte[0]);
+        try {
+            client.socket.close();
+        } catch (IOException e) {
+            // Already closed
+        }
+    }
+
+    // Appends the board records of a frame to the tail, folding the tail in when it grows
+    private void log(byte[] frame) {
+        ByteBuffer buffer = ByteBuffer.wrap(frame);
+        while (buffer.remaining() >= 4) {
+            int length = buffer.getInt();
+            if (length < 1 || buffer.remaining() < length + 4) return;
+            byte type = buffer.get(buffer.position());
+            if (type >= BoardFile.ADD_ITEM && type <= BoardFile.REMOVE_MEDIA) {
+                byte[] record = new byte[length + 8];
+                buffer.get(buffer.position() - 4, record);
+                tail.add(record);
+            }
+            buffer.position(buffer.position() + length + 4);
+        }
+        if (tail.size() > TAIL_LIMIT) fold();
+    }
+
+    private void fold() {
+        for (byte[] record : tail) {
+            ByteBuffer buffer = ByteBuffer.wrap(record);
+            byte type = buffer.get(4);
+            long id = buffer.getLong(5);
+            switch (type) {
+                case BoardFile.ADD_ITEM: items.put(id, record); break;
+                case BoardFile.REMOVE_ITEM: items.remove(id); break;
+                case BoardFile.ADD_MEDIA: media.put(id, record); mediaMoves.remove(id); break;
+                case BoardFile.MOVE_MEDIA: mediaMoves.put(id, record); break;
+                case BoardFile.REMOVE_MEDIA: media.remove(id); mediaMoves.remove(id); break;
+                default: break;
+            }
+        }
+        tail.clear();
+    }
+
+    // Checkpoint followed by the tail, as one frame
+    private byte[] snapshot() {
+        int size = 0;
+        for (byte[] record : items.values()) size += record.length;
+        for (byte[] record : media.values()) size += record.length;
+        for (byte[] record : mediaMoves.values()) size += record.length;
+        for (byte[] record : tail) size += record.length;
+        ByteBuffer frame = ByteBuffer.allocate(size);
+        items.values().forEach(frame::put);
+        media.values().forEach(frame::put);
+        mediaMoves.values().forEach(frame::put);
+        tail.forEach(frame::put);
+        return frame.array();
+    }
+
+    private static void start(Runnable task, String name) {
+        Thread thread = new Thread(task, name);
+        thread.setDaemon(true);
+        thread.start();
+    }
+}
@@ -0,0 +1,465 @@
+package com.example.whiteboard;
+
+import javafx.animation.AnimationTimer;
+import javafx.application.Platform;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/*
+ * One participant's connection to a CollabRelay. Local model changes are
+ * encoded as board records and queued; once per JavaFX pulse everything queued,
+ * plus the new points of the stroke being drawn, goes out as a single frame.
+ * Live points are sent as varint deltas in 1/16 board units, since the exact
+ * stroke follows in its add record when the mouse is released. Frames from the
+ * relay are applied to the model on the FX thread. All methods except close
+ * must be called on the FX thread.
+ *
+ * Local changes apply at once and remote ones as they arrive, so both sides
+ * may change the same item before seeing each other's change. The relay's
+ * order decides: it acks each frame to its sender where it put it, and until
+ * then remote records for the items and media that frame changed are ignored,
+ * because the local change was ordered after them and replaces them
+ * everywhere. Every id thus ends up as the last change to it in relay order
+ * on every board.
+ */
+public class CollabSession implements SceneModel.Listener, Closeable {
+    private static final double POINT_QUANTUM = 16; // live point steps per board unit
+    private static final int CONNECT_TIMEOUT_MILLIS = 3000;
+
+    private final WhiteboardController controller;
+    private final SceneModel model;
+    private final MediaHandler mediaHandler;
+    private final Socket socket;
+    private final DataOutputStream out;
+    private final ExecutorService sender;
+    private final AnimationTimer pulse;
+    private final ByteArrayOutputStream pending = new ByteArrayOutputStream();
+    private final Map<Long, SceneItem> itemsById = new HashMap<>();
+    private final Map<Long, Stroke> remoteStrokes = new HashMap<>();
+    private final Map<Stroke, LiveStroke> localStrokes = new IdentityHashMap<>();
+    private final Map<Long, Integer> unacked = new HashMap<>(); // item and media ids with local changes in flight
+    private final Deque<long[]> sentIds = new ArrayDeque<>();    // ids changed by each frame awaiting its ack
+    private long[] pendingIds = new long[16];
+    private int pendingIdCount;
+    private boolean applyingRemote;
+    private volatile boolean closed;
+    private int site;
+    private long nextLiveId = 1;
+
+    // Media needs nodes, so remote media changes are handed to the UI
+    public interface MediaHandler {
+        void mediaAdded(long id, BoardFile.MediaRecord media);
+        void mediaRemoved(WhiteboardController.MediaElement element);
+        void disconnected(String reason);
+    }
+
+    // Where a local stroke in progress has been sent up to
+    private static class LiveStroke {
+        final long id;
+        int sentCount = 1;
+        long lastX, lastY; // last sent point, quantized
+
+        LiveStroke(long id) {
+            this.id = id;
+        }
+    }
+
+    private CollabSession(WhiteboardController controller, MediaHandler mediaHandler, Socket socket) throws IOException {
+        this.controller = controller;
+        this.model = controller.getModel();
+        this.mediaHandler = mediaHandler;
+        this.socket = socket;
+        this.out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+        this.sender = Executors.newSingleThreadExecutor(r -> {
+            Thread thread = new Thread(r, "whiteboard-collab-send");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.pulse = new AnimationTimer() {
+            @Override
+            public void handle(long now) {
+                sendPending();
+            }
+        };
+    }
+
+    // Connects to a relay; the board is shared once the relay's hello arrives
+    public static CollabSession connect(String host, int port, WhiteboardController controller,
+                                        MediaHandler mediaHandler) throws IOException {
+        Socket socket = new Socket();
+        try {
+            socket.connect(new InetSocketAddress(host, port), CONNECT_TIMEOUT_MILLIS);
+            socket.setTcpNoDelay(true);
+            CollabSession session = new CollabSession(controller, mediaHandler, socket);
+            Thread reader = new Thread(session::read, "whiteboard-collab-receive");
+            reader.setDaemon(true);
+            reader.start();
+            return session;
+        } catch (IOException e) {
+            socket.close();
+            throw e;
+        }
+    }
+
+    public int getSite() { return site; }
+
+    // Called when the local user starts a stroke; its points follow once per frame
+    public void strokeStarted(Stroke stroke) {
+        if (site == 0) return;
+        LiveStroke live = new LiveStroke((long) site << 32 | nextLiveId++);
+        localStrokes.put(stroke, live);
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream data = new DataOutputStream(bytes);
+            data.writeLong(live.id);
+            BoardFile.writeString(data, stroke.getTool());
+            BoardFile.writeColor(data, stroke.getColor());
+            data.writeFloat((float) stroke.getWidth());
+            data.writeFloat((float) stroke.getX(0));
+            data.writeFloat((float) stroke.getY(0));
+            queue(BoardFile.record(CollabRelay.STROKE_BEGIN, bytes.toByteArray()));
+        } catch (IOException e) {
+            throw new IllegalStateException(e); // in-memory stream
+        }
+        live.lastX = quantize((float) stroke.getX(0));
+        live.lastY = quantize((float) stroke.getY(0));
+    }
+
+    // Called after the finished stroke was committed (or dropped) so peers remove their preview
+    public void strokeFinished(Stroke stroke) {
+        LiveStroke live = localStrokes.remove(stroke);
+        if (live == null) return;
+        queue(BoardFile.record(CollabRelay.STROKE_END, ByteBuffer.allocate(8).putLong(live.id).array()));
+    }
+
+    @Override
+    public void itemAdded(SceneItem item) {
+        SceneItem previous = itemsById.put(item.getOrder(), item);
+        if (applyingRemote) return;
+        // e.g. undo bringing back an item a peer has since replaced; the add supersedes the replacement
+        if (previous != null && previous != item) {
+            applyingRemote = true;
+            try {
+                model.remove(previous);
+            } finally {
+                applyingRemote = false;
+            }
+        }
+        share(item);
+    }
+
+    @Override
+    public void itemRemoved(SceneItem item) {
+        itemsById.remove(item.getOrder(), item);
+        if (!applyingRemote) queue(BoardFile.removeItemRecord(item));
+    }
+
+    @Override
+    public void mediaAdded(WhiteboardController.MediaElement element) {
+        if (!applyingRemote) share(element);
+    }
+
+    @Override
+    public void mediaMoved(WhiteboardController.MediaElement element) {
+        if (!applyingRemote) queue(BoardFile.moveMediaRecord(model.getMediaId(element), element));
+    }
+
+    @Override
+    public void mediaRemoved(WhiteboardController.MediaElement element) {
+        if (!applyingRemote) queue(BoardFile.removeMediaRecord(model.getMediaId(element)));
+    }
+
+    @Override
+    public void close() {
+        if (closed) return;
+        closed = true;
+        Platform.runLater(() -> {
+            model.removeListener(this);
+            pulse.stop();
+            for (Stroke stroke : remoteStrokes.values()) controller.getView().getStrokeRenderer().finish(stroke);
+            remoteStrokes.clear();
+            controller.getView().requestRepaint();
+        });
+        sender.shutdown();
+        try {
+            socket.close();
+        } catch (IOException e) {
+            // Already closed
+        }
+    }
+
+    private void share(SceneItem item) {
+        try {
+            queue(BoardFile.addItemRecord(item));
+        } catch (IOException e) {
+            System.err.println("Cannot share " + item.getClass().getSimpleName() + ": " + e.getMessage());
+        }
+    }
+
+    private void share(WhiteboardController.MediaElement element) {
+        try {
+            byte[] record = BoardFile.addMediaRecord(model.getMediaId(element), element);
+            if (record != null) queue(record);
+        } catch (IOException e) {
+            System.err.println("Cannot share media: " + e.getMessage());
+        }
+    }
+
+    private void queue(byte[] record) {
+        pending.writeBytes(record);
+        // [int length][type][long id]...: board records change the item or media with that id
+        byte type = record[4];
+        if (type >= BoardFile.ADD_ITEM && type <= BoardFile.REMOVE_MEDIA) {
+            long id = ByteBuffer.wrap(record).getLong(5);
+            if (pendingIdCount == pendingIds.length) pendingIds = Arrays.copyOf(pendingIds, pendingIdCount * 2);
+            pendingIds[pendingIdCount++] = id;
+            unacked.merge(id, 1, Integer::sum);
+        }
+    }
+
+    // The relay has ordered the oldest frame in flight, so its changes no longer hide remote ones
+    private void acknowledged() {
+        long[] ids = sentIds.poll();
+        if (ids == null) return;
+        for (long id : ids) unacked.computeIfPresent(id, (key, count) -> count > 1 ? count - 1 : null);
+    }
+
+    // Sends everything queued this frame, with new live points, as one frame
+    private void sendPending() {
+        for (Map.Entry<Stroke, LiveStroke> entry : localStrokes.entrySet()) {
+            queuePoints(entry.getKey(), entry.getValue());
+        }
+        if (pending.size() == 0) return;
+
+        byte[] frame = pending.toByteArray();
+        pending.reset();
+        sentIds.add(Arrays.copyOf(pendingIds, pendingIdCount));
+        pendingIdCount = 0;
+        sender.execute(() -> {
+            try {
+                out.writeInt(frame.length);
+                out.write(frame);
+                out.flush();
+            } catch (IOException e) {
+                if (!closed) Platform.runLater(() -> disconnected(e.getMessage()));
+            }
+        });
+    }
+
+    private void queuePoints(Stroke stroke, LiveStroke live) {
+        int count = stroke.getPointCount();
+        if (count <= live.sentCount) return;
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(16 + (count - live.sentCount) * 4);
+        ByteBuffer id = ByteBuffer.allocate(8).putLong(live.id);
+        bytes.writeBytes(id.array());
+        writeVarint(bytes, count - live.sentCount);
+        for (int i = live.sentCount; i < count; i++) {
+            long x = quantize(stroke.getX(i));
+            long y = quantize(stroke.getY(i));
+            writeVarint(bytes, zigzag(x - live.lastX));
+            writeVarint(bytes, zigzag(y - live.lastY));
+            live.lastX = x;
+            live.lastY = y;
+        }
+        live.sentCount = count;
+        queue(BoardFile.record(CollabRelay.STROKE_POINTS, bytes.toByteArray()));
+    }
+
+    private void read() {
+        try (DataInputStream in = new DataInputStream(socket.getInputStream())) {
+            while (true) {
+                int length = in.readInt();
+                if (length < 0 || length > CollabRelay.MAX_FRAME) {
+                    lost("The relay sent a frame of " + length + " bytes");
+                    return;
+                }
+                byte[] frame = new byte[length];
+                in.readFully(frame);
+                Platform.runLater(() -> apply(ByteBuffer.wrap(frame)));
+            }
+        } catch (IOException | RuntimeException e) {
+            lost("Connection to the relay was lost");
+        } catch (OutOfMemoryError e) {
+            lost("Not enough memory for a frame from the relay");
+        }
+    }
+
+    // Called on the receive thread, which then ends
+    private void lost(String reason) {
+        if (!closed) Platform.runLater(() -> disconnected(reason));
+    }
+
+    private void disconnected(String reason) {
+        if (closed) return;
+        close();
+        mediaHandler.disconnected(reason);
+    }
+
+    private void apply(ByteBuffer frame) {
+        if (closed) return;
+        applyingRemote = true;
+        try {
+            while (frame.remaining() >= 4) {
+                int length = frame.getInt();
+                ByteBuffer record = frame.slice();
+                record.limit(length);
+                frame.position(frame.position() + length + 4); // skip the checksum; TCP already has one
+                applyRecord(record);
+            }
+        } finally {
+            applyingRemote = false;
+        }
+    }
+
+    private void applyRecord(ByteBuffer record) {
+        byte type = record.get();
+        long id = record.getLong();
+        BoardView view = controller.getView();
+        switch (type) {
+            case CollabRelay.HELLO:
+                start((int) id, record.get() == 1);
+                break;
+            case CollabRelay.ACK:
+                acknowledged();
+                break;
+            default:
+                if (type >= BoardFile.ADD_ITEM && type <= BoardFile.REMOVE_MEDIA && unacked.containsKey(id)) break;
+                applyChange(type, id, record, view);
+                break;
+        }
+    }
+
+    private void applyChange(byte type, long id, ByteBuffer record, BoardView view) {
+        switch (type) {
+            case BoardFile.ADD_ITEM: {
+                SceneItem existing = itemsById.get(id);
+                if (existing != null) model.remove(existing);
+                SceneItem item = BoardFile.readItem(record);
+                item.setOrder(id);
+                model.add(item);
+                break;
+            }
+            case BoardFile.REMOVE_ITEM: {
+                SceneItem item = itemsById.get(id);
+                if (item != null) model.remove(item);
+                break;
+            }
+            case BoardFile.ADD_MEDIA:
+                mediaHandler.mediaAdded(id, new BoardFile.MediaRecord(BoardFile.readString(record),
+                        BoardFile.readString(record), record.getDouble(), record.getDouble()));
+                break;
+            case BoardFile.MOVE_MEDIA: {
+                WhiteboardController.MediaElement element = model.getMedia(id);
+                if (element != null) {
+                    element.node.setLayoutX(record.getDouble());
+                    element.node.setLayoutY(record.getDouble());
+                    model.mediaMoved(element);
+                }
+                break;
+            }
+            case BoardFile.REMOVE_MEDIA: {
+                WhiteboardController.MediaElement element = model.getMedia(id);
+                if (element != null) mediaHandler.mediaRemoved(element);
+                break;
+            }
+            case CollabRelay.STROKE_BEGIN: {
+                Stroke stroke = new Stroke(BoardFile.readString(record), BoardFile.readColor(record), record.getFloat());
+                stroke.addPoint(record.getFloat(), record.getFloat());
+                remoteStrokes.put(id, stroke);
+                view.getStrokeRenderer().begin(stroke);
+                break;
+            }
+            case CollabRelay.STROKE_POINTS: {
+                Stroke stroke = remoteStrokes.get(id);
+                if (stroke == null) break;
+                int count = (int) readVarint(record);
+                long x = quantize(stroke.getX(stroke.getPointCount() - 1));
+                long y = quantize(stroke.getY(stroke.getPointCount() - 1));
+                for (int i = 0; i < count; i++) {
+                    x += unzigzag(readVarint(record));
+                    y += unzigzag(readVarint(record));
+                    stroke.addPoint(x / POINT_QUANTUM, y / POINT_QUANTUM);
+                }
+                break;
+            }
+            case CollabRelay.STROKE_END: {
+                Stroke stroke = remoteStrokes.remove(id);
+                if (stroke != null) {
+                    view.getStrokeRenderer().finish(stroke);
+                    view.requestRepaint(); // wipe the preview if no item replaced it
+                }
+                break;
+            }
+            default:
+                break;
+        }
+    }
+
+    // An empty shared board takes this participant's board; otherwise the relay's copy replaces it
+    private void start(int site, boolean boardIsEmpty) {
+        this.site = site;
+        model.setSite(site);
+        if (boardIsEmpty) {
+            for (SceneItem item : model.getItems()) share(item);
+            for (WhiteboardController.MediaElement element : model.getMediaElements()) share(element);
+        } else {
+            // Local undo history refers to items that are no longer on the board
+            for (WhiteboardController.MediaElement element : model.getMediaElements()) {
+                mediaHandler.mediaRemoved(element);
+            }
+            model.clear();
+            controller.getHistory().clear();
+            controller.getView().invalidateAll();
+        }
+        for (SceneItem item : model.getItems()) itemsById.put(item.getOrder(), item);
+        model.addListener(this);
+        pulse.start();
+    }
+
+    // Live points are quantized in absolute board space so sender and receiver round alike
+    private static long quantize(double value) {
+        return Math.round(value * POINT_QUANTUM);
+    }
+
+    private static long zigzag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    private static long unzigzag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    private static void writeVarint(ByteArrayOutputStream out, long value) {
+        while ((value & ~0x7FL) != 0) {
+            out.write((int) (value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.write((int) value);
+    }
+
+    private static long readVarint(ByteBuffer in) {
+        long value = 0;
+        for (int shift = 0; ; shift += 7) {
+            byte b = in.get();
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) return value;
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package com.example.whiteboard;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+/*
+ * Undo/redo history of scene edits. Edits reference the items they add or
+ * remove rather than pixels, so undoing one only has to redraw its bounds.
+ *
+ * Everything held by the history counts against a byte budget. When it is
+ * exceeded the oldest edits are dropped, so undo depth shrinks instead of
+ * memory growing without bound.
+ */
+public class CommandHistory {
+    public static final long DEFAULT_BYTE_BUDGET = 64L * 1024 * 1024;
+
+    private final Deque<SceneEdit> undoStack = new ArrayDeque<>();
+    private final Deque<SceneEdit> redoStack = new ArrayDeque<>();
+    private long byteBudget;
+    private long bytesHeld;
+
+    public CommandHistory() {
+        this(Long.getLong("whiteboard.undo.budget", DEFAULT_BYTE_BUDGET));
+    }
+
+    public CommandHistory(long byteBudget) {
+        this.byteBudget = byteBudget;
+    }
+
+    // Records an edit that has already been applied to the model
+    public void push(SceneEdit edit) {
+        for (SceneEdit stale : redoStack) bytesHeld -= stale.getByteSize();
+        redoStack.clear();
+        undoStack.push(edit);
+        bytesHeld += edit.getByteSize();
+        enforceBudget();
+    }
+
+    public boolean canUndo() { return !undoStack.isEmpty(); }
+    public boolean canRedo() { return !redoStack.isEmpty(); }
+
+    // Reverts the latest edit and returns it, or null when there is nothing to undo
+    public SceneEdit undo(SceneModel model) {
+        if (!canUndo()) return null;
+        SceneEdit edit = undoStack.pop();
+        edit.revert(model);
+        redoStack.push(edit);
+        return edit;
+    }
+
+    public SceneEdit redo(SceneModel model) {
+        if (!canRedo()) return null;
+        SceneEdit edit = redoStack.pop();
+        edit.apply(model);
+        undoStack.push(edit);
+        return edit;
+    }
+
+    public void clear() {
+        undoStack.clear();
+        redoStack.clear();
+        bytesHeld = 0;
+    }
+
+    public long getByteBudget() { return byteBudget; }
+    public long getBytesHeld() { return bytesHeld; }
+    public int getUndoDepth() { return undoStack.size(); }
+    public int getRedoDepth() { return redoStack.size(); }
+
+    public void setByteBudget(long byteBudget) {
+        this.byteBudget = byteBudget;
+        enforceBudget();
+    }
+
+    // Evicts the oldest undo entries first; the latest edit is always kept
+    private void enforceBudget() {
+        while (bytesHeld > byteBudget && undoStack.size() > 1) {
+            bytesHeld -= undoStack.removeLast().getByteSize();
+        }
+    }
+}
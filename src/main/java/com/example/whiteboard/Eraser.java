@@ -0,0 +1,256 @@
+package com.example.whiteboard;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+
+/*
+ * One eraser gesture. Each drag step sweeps a capsule (the segment between two
+ * pointer positions, widened by the radius) over the board; only the items
+ * the ink layer's quadtree returns for the capsule's bounds are tested. Object
+ * mode removes every item on the ink layer whose ink the capsule touches:
+ * strokes and fills alike. Otherwise strokes are cut where the capsule crosses
+ * their line and the rest is kept, as a stroke with the same id and z-order;
+ * fills are raster and cannot be cut, so this mode leaves them for object
+ * mode. Steps are applied to the model as they happen and folded into a
+ * single edit for the history when the gesture ends.
+ *
+ * The radius is half the eraser's width. Cut mode removes the parts of a
+ * stroke's line within the radius of the pointer path, so the gap it leaves is
+ * as wide as the eraser. Object mode measures to a stroke's ink edge instead
+ * (radius plus half the stroke width), so grazing the visible ink is enough,
+ * and takes a fill when a painted pixel centre lies within the radius.
+ */
+public class Eraser {
+    private final SceneModel model;
+    private final boolean wholeStrokes;
+    private final double radius;
+    private final Set<SceneItem> removed = Collections.newSetFromMap(new IdentityHashMap<>());
+    private final Set<SceneItem> added = Collections.newSetFromMap(new IdentityHashMap<>());
+
+    public Eraser(SceneModel model, boolean wholeStrokes, double radius) {
+        this.model = model;
+        this.wholeStrokes = wholeStrokes;
+        this.radius = radius;
+    }
+
+    // Erases along the segment; returns the edit applied to the model, or null if nothing was hit
+    public SceneEdit erase(double x0, double y0, double x1, double y1) {
+        Rect area = new Rect(Math.min(x0, x1), Math.min(y0, y1), Math.max(x0, x1), Math.max(y0, y1));
+        List<SceneItem> hit = new ArrayList<>();
+        List<SceneItem> pieces = new ArrayList<>();
+        for (SceneItem item : model.query(area.expand(radius), Layer.INK)) {
+            if (item instanceof RasterItem) {
+                if (wholeStrokes && touches((RasterItem) item, x0, y0, x1, y1, radius)) hit.add(item);
+                continue;
+            }
+            if (!(item instanceof Stroke)) continue;
+            Stroke stroke = (Stroke) item;
+            if (wholeStrokes) {
+                if (touches(stroke, x0, y0, x1, y1, radius + stroke.getWidth() / 2)) hit.add(stroke);
+            } else {
+                Stroke rest = cut(stroke, x0, y0, x1, y1, radius);
+                if (rest == stroke) continue;
+                hit.add(stroke);
+                if (rest != null) pieces.add(rest);
+            }
+        }
+        if (hit.isEmpty()) return null;
+
+        SceneEdit edit = new SceneEdit(hit, pieces);
+        edit.apply(model);
+        for (SceneItem item : hit) {
+            if (!added.remove(item)) removed.add(item);
+        }
+        added.addAll(pieces);
+        return edit;
+    }
+
+    // The whole gesture as one edit, already applied; null if it erased nothing
+    public SceneEdit finish() {
+        if (removed.isEmpty()) return null;
+        return new SceneEdit(new ArrayList<>(removed), new ArrayList<>(added));
+    }
+
+    static boolean touches(Stroke stroke, double x0, double y0, double x1, double y1, double reach) {
+        for (int run = 0; run < stroke.getRunCount(); run++) {
+            int start = stroke.getRunStart(run), end = stroke.getRunEnd(run);
+            if (end - start == 1 && sweep(stroke.getX(start), stroke.getY(start),
+                    stroke.getX(start), stroke.getY(start), x0, y0, x1, y1, reach) != null) return true;
+            for (int i = start; i + 1 < end; i++) {
+                if (sweep(stroke.getX(i), stroke.getY(i), stroke.getX(i + 1), stroke.getY(i + 1),
+                        x0, y0, x1, y1, reach) != null) return true;
+            }
+        }
+        return false;
+    }
+
+    // True if a pixel that is not fully transparent has its centre within reach of the segment
+    static boolean touches(RasterItem raster, double x0, double y0, double x1, double y1, double reach) {
+        Rect capsule = new Rect(Math.min(x0, x1), Math.min(y0, y1), Math.max(x0, x1), Math.max(y0, y1)).expand(reach);
+        Rect region = raster.toPixels(capsule);
+        double scale = raster.getScale();
+        boolean[] hit = new boolean[1];
+        // Only the tiles under the capsule are inflated
+        raster.getTiles().inflateTiles(region, (tx, ty, w, h, pixels) -> {
+            int minX = Math.max(0, (int) Math.floor(region.minX) - tx), maxX = Math.min(w, (int) Math.ceil(region.maxX) - tx);
+            int minY = Math.max(0, (int) Math.floor(region.minY) - ty), maxY = Math.min(h, (int) Math.ceil(region.maxY) - ty);
+            for (int py = minY; py < maxY && !hit[0]; py++) {
+                for (int px = minX; px < maxX; px++) {
+                    if (pixels[py * w + px] >>> 24 == 0) continue;
+                    double cx = raster.getX() + (tx + px + 0.5) * scale, cy = raster.getY() + (ty + py + 0.5) * scale;
+                    if (sweep(cx, cy, cx, cy, x0, y0, x1, y1, reach) != null) {
+                        hit[0] = true;
+                        break;
+                    }
+                }
+            }
+        });
+        return hit[0];
+    }
+
+    /*
+     * The stroke with the parts of its line within reach of the segment removed:
+     * the stroke itself if nothing is within reach, null if nothing is left.
+     * Runs of a single point are dropped, since they would not be drawn.
+     */
+    static Stroke cut(Stroke stroke, double x0, double y0, double x1, double y1, double reach) {
+        Stroke rest = new Stroke(stroke.getTool(), stroke.getColor(), stroke.getWidth());
+        Run run = new Run(rest);
+        boolean changed = false;
+        for (int r = 0; r < stroke.getRunCount(); r++) {
+            int start = stroke.getRunStart(r), end = stroke.getRunEnd(r);
+            for (int i = start; i + 1 < end; i++) {
+                double ax = stroke.getX(i), ay = stroke.getY(i);
+                double bx = stroke.getX(i + 1), by = stroke.getY(i + 1);
+                double[] range = sweep(ax, ay, bx, by, x0, y0, x1, y1, reach);
+                if (range == null) {
+                    run.add(ax, ay);
+                    run.add(bx, by);
+                    continue;
+                }
+                changed = true;
+                if (range[0] > 0) {
+                    run.add(ax, ay);
+                    run.add(ax + (bx - ax) * range[0], ay + (by - ay) * range[0]);
+                }
+                run.end();
+                if (range[1] < 1) {
+                    run.add(ax + (bx - ax) * range[1], ay + (by - ay) * range[1]);
+                    run.add(bx, by);
+                }
+            }
+            run.end();
+        }
+        if (!changed) return stroke;
+        if (rest.getPointCount() == 0) return null;
+        rest.setOrder(stroke.getOrder());
+        return rest;
+    }
+
+    // Collects the points of one output run; a run is only kept if it has a segment to draw
+    private static class Run {
+        final Stroke target;
+        double[] points = new double[32];
+        int count;
+
+        Run(Stroke target) {
+            this.target = target;
+        }
+
+        // Consecutive segments share their end point, which is added once
+        void add(double x, double y) {
+            if (count > 0 && points[count * 2 - 2] == x && points[count * 2 - 1] == y) return;
+            if (count * 2 == points.length) points = Arrays.copyOf(points, points.length * 2);
+            points[count * 2] = x;
+            points[count * 2 + 1] = y;
+            count++;
+        }
+
+        void end() {
+            if (count >= 2) {
+                target.startRun();
+                for (int i = 0; i < count; i++) target.addPoint(points[i * 2], points[i * 2 + 1]);
+            }
+            count = 0;
+        }
+    }
+
+    /*
+     * Parameter range [t0, t1] of segment a-b lying within reach of segment
+     * e0-e1, or null. The capsule around e0-e1 is convex, so the range is one
+     * interval: the union of the ranges inside its two end circles and its body.
+     */
+    static double[] sweep(double ax, double ay, double bx, double by,
+                          double e0x, double e0y, double e1x, double e1y, double reach) {
+        if (Math.max(ax, bx) < Math.min(e0x, e1x) - reach || Math.min(ax, bx) > Math.max(e0x, e1x) + reach
+                || Math.max(ay, by) < Math.min(e0y, e1y) - reach || Math.min(ay, by) > Math.max(e0y, e1y) + reach) {
+            return null;
+        }
+        double[] range = {Double.MAX_VALUE, -Double.MAX_VALUE};
+        circle(ax, ay, bx, by, e0x, e0y, reach, range);
+        circle(ax, ay, bx, by, e1x, e1y, reach, range);
+        body(ax, ay, bx, by, e0x, e0y, e1x, e1y, reach, range);
+        return range[0] <= range[1] ? range : null;
+    }
+
+    private static void circle(double ax, double ay, double bx, double by,
+                               double cx, double cy, double r, double[] range) {
+        double dx = bx - ax, dy = by - ay;
+        double fx = ax - cx, fy = ay - cy;
+        double a = dx * dx + dy * dy;
+        double c = fx * fx + fy * fy - r * r;
+        if (a == 0) {
+            if (c <= 0) include(0, 1, range);
+            return;
+        }
+        double b = 2 * (fx * dx + fy * dy);
+        double disc = b * b - 4 * a * c;
+        if (disc < 0) return;
+        double root = Math.sqrt(disc);
+        include((-b - root) / (2 * a), (-b + root) / (2 * a), range);
+    }
+
+    // Liang-Barsky clip of a-b against the rectangle between the end circles
+    private static void body(double ax, double ay, double bx, double by,
+                             double e0x, double e0y, double e1x, double e1y, double r, double[] range) {
+        double ex = e1x - e0x, ey = e1y - e0y;
+        double length = Math.hypot(ex, ey);
+        if (length == 0) return;
+        double ux = ex / length, uy = ey / length;
+        double along = (ax - e0x) * ux + (ay - e0y) * uy;
+        double across = (ay - e0y) * ux - (ax - e0x) * uy;
+        double dAlong = (bx - ax) * ux + (by - ay) * uy;
+        double dAcross = (by - ay) * ux - (bx - ax) * uy;
+
+        double[] t = {0, 1};
+        if (clip(-dAlong, along, t) && clip(dAlong, length - along, t)
+                && clip(-dAcross, across + r, t) && clip(dAcross, r - across, t)) {
+            include(t[0], t[1], range);
+        }
+    }
+
+    private static boolean clip(double p, double q, double[] t) {
+        if (p == 0) return q >= 0;
+        double ratio = q / p;
+        if (p < 0) {
+            if (ratio > t[1]) return false;
+            t[0] = Math.max(t[0], ratio);
+        } else {
+            if (ratio < t[0]) return false;
+            t[1] = Math.min(t[1], ratio);
+        }
+        return true;
+    }
+
+    private static void include(double t0, double t1, double[] range) {
+        t0 = Math.max(t0, 0);
+        t1 = Math.min(t1, 1);
+        if (t0 > t1) return;
+        range[0] = Math.min(range[0], t0);
+        range[1] = Math.max(range[1], t1);
+    }
+}
@@ -0,0 +1,13 @@
+package com.example.whiteboard;
+
+// Region painted by the fill tool, captured at screen resolution; drawn with the ink
+public class FillItem extends RasterItem {
+    public FillItem(TileSnapshot tiles, double x, double y, double scale) {
+        super(tiles, x, y, scale);
+    }
+
+    @Override
+    public Layer getLayer() {
+        return Layer.INK;
+    }
+}
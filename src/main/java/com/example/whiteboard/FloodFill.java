@@ -0,0 +1,270 @@
+package com.example.whiteboard;
+
+import java.util.Arrays;
+import java.util.stream.IntStream;
+
+/*
+ * Scanline flood fill over an ARGB pixel buffer. A pixel belongs to the region
+ * when every channel is within tolerance of the seed pixel and it connects to
+ * the seed through such pixels (4-connected).
+ *
+ * Fills start as a sequential span fill, which only visits the region itself.
+ * Once a region grows past SMALL_REGION pixels the buffer is instead split
+ * into bands of rows that are scanned in parallel: each band finds the runs of
+ * matching pixels in its rows and joins overlapping runs of adjacent rows with
+ * union-find, then the bands are joined at their borders and the runs that
+ * ended up connected to the seed are painted, again band by band. The pixels
+ * the span fill already took are known to match, so the band scan skips
+ * comparing them a 64-pixel word at a time.
+ */
+public class FloodFill {
+    private static final int SMALL_REGION = 1 << 16; // pixels
+    private static final int BAND_HEIGHT = 64;       // rows
+
+    // The filled pixels, cropped to their bounding box
+    public static class Region {
+        public final int x, y, width, height;
+        public final int[] pixels; // fill colour inside the region, transparent elsewhere
+
+        Region(int x, int y, int width, int height, int[] pixels) {
+            this.x = x;
+            this.y = y;
+            this.width = width;
+            this.height = height;
+            this.pixels = pixels;
+        }
+    }
+
+    // Runs of matching pixels in one band, with union-find parents as global run indices
+    private static class Band {
+        final int firstRow, rows;
+        final int[] rowStarts; // first run of each row, plus the end of the last
+        int[] starts = new int[64], ends = new int[64]; // [start, end) x of each run
+        int count;
+        int base; // global index of the first run
+
+        Band(int firstRow, int rows) {
+            this.firstRow = firstRow;
+            this.rows = rows;
+            this.rowStarts = new int[rows + 1];
+        }
+
+        void add(int start, int end) {
+            if (count == starts.length) {
+                starts = Arrays.copyOf(starts, count * 2);
+                ends = Arrays.copyOf(ends, count * 2);
+            }
+            starts[count] = start;
+            ends[count] = end;
+            count++;
+        }
+    }
+
+    // Returns the filled region, or null if the seed is outside the buffer
+    public static Region fill(int[] argb, int width, int height, int seedX, int seedY, int tolerance, int color) {
+        if (seedX < 0 || seedY < 0 || seedX >= width || seedY >= height) return null;
+        int target = argb[seedY * width + seedX];
+        long[] visited = new long[(width * height + 63) >>> 6];
+        Region region = spanFill(argb, visited, width, height, seedX, seedY, target, tolerance, color);
+        return region != null ? region : bandFill(argb, visited, width, height, seedX, seedY, target, tolerance, color);
+    }
+
+    static boolean matches(int pixel, int target, int tolerance) {
+        if (pixel == target) return true;
+        return Math.abs((pixel >>> 24) - (target >>> 24)) <= tolerance
+                && Math.abs((pixel >> 16 & 0xff) - (target >> 16 & 0xff)) <= tolerance
+                && Math.abs((pixel >> 8 & 0xff) - (target >> 8 & 0xff)) <= tolerance
+                && Math.abs((pixel & 0xff) - (target & 0xff)) <= tolerance;
+    }
+
+    // Classic span fill; null once the region turns out larger than SMALL_REGION, with what it took in visited
+    private static Region spanFill(int[] argb, long[] visited, int width, int height, int seedX, int seedY,
+                                   int target, int tolerance, int color) {
+        int[] stack = new int[64];
+        int[] spans = new int[48]; // y, start, end per span
+        int stackSize = 0, spanCount = 0, filled = 0;
+        int minX = seedX, minY = seedY, maxX = seedX, maxY = seedY;
+
+        stack[stackSize++] = seedY * width + seedX;
+        while (stackSize > 0) {
+            int index = stack[--stackSize];
+            if ((visited[index >>> 6] & 1L << index) != 0) continue;
+            int y = index / width, rowStart = y * width;
+            int start = index - rowStart, end = start + 1;
+            while (start > 0 && unvisitedMatch(argb, visited, rowStart + start - 1, target, tolerance)) start--;
+            while (end < width && unvisitedMatch(argb, visited, rowStart + end, target, tolerance)) end++;
+            for (int x = start; x < end; x++) visited[(rowStart + x) >>> 6] |= 1L << (rowStart + x);
+
+            filled += end - start;
+            if (filled > SMALL_REGION) return null;
+            if (spanCount * 3 + 3 > spans.length) spans = Arrays.copyOf(spans, spans.length * 2);
+            spans[spanCount * 3] = y;
+            spans[spanCount * 3 + 1] = start;
+            spans[spanCount * 3 + 2] = end;
+            spanCount++;
+            minX = Math.min(minX, start);
+            maxX = Math.max(maxX, end - 1);
+            minY = Math.min(minY, y);
+            maxY = Math.max(maxY, y);
+
+            // Seed the start of each matching run in the rows above and below
+            for (int row = y - 1; row <= y + 1; row += 2) {
+                if (row < 0 || row >= height) continue;
+                boolean inRun = false;
+                for (int x = start; x < end; x++) {
+                    boolean match = unvisitedMatch(argb, visited, row * width + x, target, tolerance);
+                    if (match && !inRun) {
+                        if (stackSize == stack.length) stack = Arrays.copyOf(stack, stackSize * 2);
+                        stack[stackSize++] = row * width + x;
+                    }
+                    inRun = match;
+                }
+            }
+        }
+
+        int regionWidth = maxX - minX + 1;
+        int[] pixels = new int[regionWidth * (maxY - minY + 1)];
+        for (int i = 0; i < spanCount; i++) {
+            int offset = (spans[i * 3] - minY) * regionWidth - minX;
+            Arrays.fill(pixels, offset + spans[i * 3 + 1], offset + spans[i * 3 + 2], color);
+        }
+        return new Region(minX, minY, regionWidth, maxY - minY + 1, pixels);
+    }
+
+    private static boolean unvisitedMatch(int[] argb, long[] visited, int index, int target, int tolerance) {
+        return (visited[index >>> 6] & 1L << index) == 0 && matches(argb[index], target, tolerance);
+    }
+
+    // known marks pixels already found to match, e.g. by the span fill
+    private static Region bandFill(int[] argb, long[] known, int width, int height, int seedX, int seedY,
+                                   int target, int tolerance, int color) {
+        Band[] bands = new Band[(height + BAND_HEIGHT - 1) / BAND_HEIGHT];
+        for (int b = 0; b < bands.length; b++) {
+            bands[b] = new Band(b * BAND_HEIGHT, Math.min(BAND_HEIGHT, height - b * BAND_HEIGHT));
+        }
+        IntStream.range(0, bands.length).parallel()
+                .forEach(b -> scanRuns(bands[b], argb, known, width, target, tolerance));
+
+        // Bands are numbered in order, so a parent always has a lower index than its children
+        int total = 0;
+        for (Band band : bands) {
+            band.base = total;
+            total += band.count;
+        }
+        int[] parents = new int[total];
+        IntStream.range(0, bands.length).parallel().forEach(b -> linkRows(bands[b], parents));
+        for (int b = 1; b < bands.length; b++) {
+            Band above = bands[b - 1], below = bands[b];
+            join(above, above.rows - 1, below, 0, parents);
+        }
+        for (int i = 0; i < total; i++) parents[i] = parents[parents[i]];
+
+        Band seedBand = bands[seedY / BAND_HEIGHT];
+        int row = seedY - seedBand.firstRow;
+        int root = -1;
+        for (int i = seedBand.rowStarts[row]; i < seedBand.rowStarts[row + 1]; i++) {
+            if (seedBand.starts[i] <= seedX && seedX < seedBand.ends[i]) root = parents[seedBand.base + i];
+        }
+        int seedRoot = root;
+
+        // Bounding box of the seed's runs: minX, minY, maxX, maxY per band
+        int[][] boxes = new int[bands.length][];
+        IntStream.range(0, bands.length).parallel().forEach(b -> boxes[b] = bounds(bands[b], parents, seedRoot));
+        int minX = width, minY = height, maxX = -1, maxY = -1;
+        for (int[] box : boxes) {
+            if (box == null) continue;
+            minX = Math.min(minX, box[0]);
+            minY = Math.min(minY, box[1]);
+            maxX = Math.max(maxX, box[2]);
+            maxY = Math.max(maxY, box[3]);
+        }
+
+        int regionX = minX, regionY = minY, regionWidth = maxX - minX + 1;
+        int[] pixels = new int[regionWidth * (maxY - minY + 1)];
+        IntStream.range(0, bands.length).parallel().forEach(b -> {
+            Band band = bands[b];
+            if (boxes[b] == null) return;
+            for (int r = 0; r < band.rows; r++) {
+                int offset = (band.firstRow + r - regionY) * regionWidth - regionX;
+                for (int i = band.rowStarts[r]; i < band.rowStarts[r + 1]; i++) {
+                    if (parents[band.base + i] == seedRoot) {
+                        Arrays.fill(pixels, offset + band.starts[i], offset + band.ends[i], color);
+                    }
+                }
+            }
+        });
+        return new Region(regionX, regionY, regionWidth, maxY - minY + 1, pixels);
+    }
+
+    private static void scanRuns(Band band, int[] argb, long[] known, int width, int target, int tolerance) {
+        for (int r = 0; r < band.rows; r++) {
+            band.rowStarts[r] = band.count;
+            int rowStart = (band.firstRow + r) * width;
+            int x = 0;
+            while (x < width) {
+                while (x < width && !matches(argb[rowStart + x], target, tolerance)) x++;
+                int start = x;
+                while (x < width) {
+                    int index = rowStart + x;
+                    // A whole word of known pixels inside the row is taken without looking at them
+                    if ((index & 63) == 0 && x + 64 <= width && known[index >>> 6] == -1L) {
+                        x += 64;
+                    } else if (matches(argb[index], target, tolerance)) {
+                        x++;
+                    } else {
+                        break;
+                    }
+                }
+                if (x > start) band.add(start, x);
+            }
+        }
+        band.rowStarts[band.rows] = band.count;
+    }
+
+    // Unions overlapping runs of adjacent rows inside the band
+    private static void linkRows(Band band, int[] parents) {
+        for (int i = 0; i < band.count; i++) parents[band.base + i] = band.base + i;
+        for (int r = 1; r < band.rows; r++) join(band, r - 1, band, r, parents);
+    }
+
+    // Unions the runs of one row with the overlapping runs of the row below
+    private static void join(Band above, int aboveRow, Band below, int belowRow, int[] parents) {
+        int i = above.rowStarts[aboveRow], iEnd = above.rowStarts[aboveRow + 1];
+        int j = below.rowStarts[belowRow], jEnd = below.rowStarts[belowRow + 1];
+        while (i < iEnd && j < jEnd) {
+            if (above.starts[i] < below.ends[j] && below.starts[j] < above.ends[i]) {
+                union(parents, above.base + i, below.base + j);
+            }
+            if (above.ends[i] < below.ends[j]) i++; else j++;
+        }
+    }
+
+    private static int find(int[] parents, int i) {
+        while (parents[i] != i) {
+            parents[i] = parents[parents[i]];
+            i = parents[i];
+        }
+        return i;
+    }
+
+    // Links the higher root under the lower one, keeping parents below their children
+    private static void union(int[] parents, int a, int b) {
+        int rootA = find(parents, a), rootB = find(parents, b);
+        if (rootA < rootB) parents[rootB] = rootA;
+        else if (rootB < rootA) parents[rootA] = rootB;
+    }
+
+    private static int[] bounds(Band band, int[] parents, int root) {
+        int[] box = null;
+        for (int r = 0; r < band.rows; r++) {
+            for (int i = band.rowStarts[r]; i < band.rowStarts[r + 1]; i++) {
+                if (parents[band.base + i] != root) continue;
+                if (box == null) box = new int[] {band.starts[i], band.firstRow + r, band.ends[i] - 1, band.firstRow + r};
+                box[0] = Math.min(box[0], band.starts[i]);
+                box[2] = Math.max(box[2], band.ends[i] - 1);
+                box[3] = band.firstRow + r;
+            }
+        }
+        return box;
+    }
+}
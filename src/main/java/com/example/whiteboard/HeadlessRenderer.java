@@ -0,0 +1,405 @@
+package com.example.whiteboard;
+
+import javafx.scene.paint.Color;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+import java.awt.BasicStroke;
+import java.awt.Font;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.RenderingHints;
+import java.awt.font.FontRenderContext;
+import java.awt.font.LineMetrics;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.Path2D;
+import java.awt.geom.Rectangle2D;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.BiConsumer;
+
+/*
+ * Draws boards with Java2D into plain BufferedImages, with no JavaFX stage or
+ * FX thread, so thumbnails and exports can be produced on a server. Output is
+ * split into tiles rendered on a fork-join pool, and renderBoards also spreads
+ * whole boards across the pool. Items are drawn the way the interactive canvas
+ * draws them (round-capped strokes, simplified below one pixel per unit,
+ * baseline text, smoothed images on white), so results match the canvas up to
+ * antialiasing and font hinting differences; difference() measures how far,
+ * and RenderComparison (--compare) runs it on a board.
+ */
+public class HeadlessRenderer {
+    public static final int TILE_SIZE = 256;
+
+    private static final Font BASE_FONT = new Font(Font.SANS_SERIF, Font.PLAIN, 1);
+    private static final FontRenderContext FONT_CONTEXT = new FontRenderContext(null, true, true);
+    private static final long MAX_PIXELS = 1L << 28;
+
+    private final ForkJoinPool pool;
+
+    // An embedded image decoded for one render, with its board-space bounds
+    private static class PlacedImage {
+        final BufferedImage image;
+        final Rect bounds;
+
+        PlacedImage(BufferedImage image, Rect bounds) {
+            this.image = image;
+            this.bounds = bounds;
+        }
+
+        PlacedImage at(double x, double y) {
+            return new PlacedImage(image, Rect.ofSize(x, y, bounds.getWidth(), bounds.getHeight()));
+        }
+    }
+
+    // Embedded images decoded once per source, e.g. for every frame of a replay
+    public static class ImageSet {
+        private final int maxSize;
+        private final Map<String, PlacedImage> decoded = new HashMap<>(); // at the origin; null if unloadable
+
+        public ImageSet(int maxSize) {
+            this.maxSize = maxSize;
+        }
+
+        // Where the media is drawn; null for videos, audio and images that cannot be loaded
+        public Rect bounds(BoardFile.MediaRecord media) {
+            PlacedImage placed = place(media);
+            return placed != null ? placed.bounds : null;
+        }
+
+        List<PlacedImage> place(Collection<BoardFile.MediaRecord> media) {
+            List<PlacedImage> images = new ArrayList<>();
+            for (BoardFile.MediaRecord record : media) {
+                PlacedImage placed = place(record);
+                if (placed != null) images.add(placed);
+            }
+            return images;
+        }
+
+        private PlacedImage place(BoardFile.MediaRecord media) {
+            if (!media.type.equals("image")) return null;
+            if (!decoded.containsKey(media.source)) decoded.put(media.source, decodeImage(media.source, maxSize));
+            PlacedImage image = decoded.get(media.source);
+            return image != null ? image.at(media.x, media.y) : null;
+        }
+    }
+
+    public HeadlessRenderer() {
+        this(ForkJoinPool.commonPool());
+    }
+
+    public HeadlessRenderer(ForkJoinPool pool) {
+        this.pool = pool;
+    }
+
+    // Renders the whole board stored at path, scaled down to fit maxSize pixels if larger
+    public BufferedImage renderBoard(Path path, int maxSize) throws IOException {
+        BoardFile.Contents contents = BoardFile.read(path);
+        SceneModel model = new SceneModel();
+        for (SceneItem item : contents.items) model.add(item);
+
+        Rect area = null;
+        for (SceneItem item : model.getItems()) area = item.getBounds().union(area);
+        List<PlacedImage> images = new ImageSet(maxSize).place(contents.media);
+        for (PlacedImage placed : images) area = placed.bounds.union(area);
+        if (area == null) area = Rect.ofSize(0, 0, 1, 1);
+
+        double scale = Math.min(1, maxSize / Math.max(area.getWidth(), area.getHeight()));
+        return render(model, images, area, scale);
+    }
+
+    // Renders area of the model at scale output pixels per board unit
+    public BufferedImage render(SceneModel model, Rect area, double scale) {
+        return render(model, List.of(), area, scale);
+    }
+
+    // The same with the image media drawn over the items, decoded through images
+    public BufferedImage render(SceneModel model, Collection<BoardFile.MediaRecord> media, ImageSet images,
+                                Rect area, double scale) {
+        return render(model, images.place(media), area, scale);
+    }
+
+    // Renders each board on the pool; sink is called from worker threads as boards finish
+    public void renderBoards(List<Path> boards, int maxSize, BiConsumer<Path, BufferedImage> sink) {
+        List<RecursiveAction> tasks = new ArrayList<>(boards.size());
+        for (Path board : boards) {
+            tasks.add(new RecursiveAction() {
+                @Override
+                protected void compute() {
+                    try {
+                        sink.accept(board, renderBoard(board, maxSize));
+                    } catch (IOException | RuntimeException e) {
+                        System.err.println("Cannot render " + board + ": " + e.getMessage());
+                    }
+                }
+            });
+        }
+        pool.invoke(new RecursiveAction() {
+            @Override
+            protected void compute() {
+                invokeAll(tasks);
+            }
+        });
+    }
+
+    private BufferedImage render(SceneModel model, List<PlacedImage> images, Rect area, double scale) {
+        int width = Math.max(1, (int) Math.ceil(area.getWidth() * scale));
+        int height = Math.max(1, (int) Math.ceil(area.getHeight() * scale));
+        if ((long) width * height > MAX_PIXELS) {
+            throw new IllegalArgumentException("Output of " + width + "x" + height + " pixels is too large");
+        }
+
+        BufferedImage output = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        int columns = (width + TILE_SIZE - 1) / TILE_SIZE;
+        int rows = (height + TILE_SIZE - 1) / TILE_SIZE;
+        pool.invoke(new TileTask(model, images, area, scale, output, columns, 0, columns * rows));
+        return output;
+    }
+
+    // Splits a range of tile indices in halves until single tiles remain
+    private static class TileTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        final SceneModel model;
+        final List<PlacedImage> images;
+        final Rect area;
+        final double scale;
+        final BufferedImage output;
+        final int columns, from, to;
+
+        TileTask(SceneModel model, List<PlacedImage> images, Rect area, double scale,
+                 BufferedImage output, int columns, int from, int to) {
+            this.model = model;
+            this.images = images;
+            this.area = area;
+            this.scale = scale;
+            this.output = output;
+            this.columns = columns;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from == 1) {
+                renderTile(from % columns * TILE_SIZE, from / columns * TILE_SIZE);
+                return;
+            }
+            int mid = (from + to) >>> 1;
+            invokeAll(new TileTask(model, images, area, scale, output, columns, from, mid),
+                    new TileTask(model, images, area, scale, output, columns, mid, to));
+        }
+
+        // Each tile draws into its own image, then is copied into its disjoint part of the output
+        private void renderTile(int px, int py) {
+            int w = Math.min(TILE_SIZE, output.getWidth() - px);
+            int h = Math.min(TILE_SIZE, output.getHeight() - py);
+            BufferedImage tile = new BufferedImage(w, h, BufferedImage.TYPE_INT_RGB);
+            Graphics2D g = tile.createGraphics();
+            try {
+                g.setColor(java.awt.Color.WHITE);
+                g.fillRect(0, 0, w, h);
+                setQualityHints(g);
+                g.translate(-px, -py);
+                g.scale(scale, scale);
+                g.translate(-area.minX, -area.minY);
+
+                Rect world = Rect.ofSize(area.minX + px / scale, area.minY + py / scale, w / scale, h / scale);
+                for (SceneItem item : model.query(world)) {
+                    draw(g, item, world, 1 / scale);
+                }
+                for (PlacedImage placed : images) {
+                    if (placed.bounds.intersects(world)) drawImage(g, placed.image, placed.bounds);
+                }
+            } finally {
+                g.dispose();
+            }
+            output.getRaster().setDataElements(px, py, tile.getRaster());
+        }
+    }
+
+    static void setQualityHints(Graphics2D g) {
+        g.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+        g.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING, RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
+        g.setRenderingHint(RenderingHints.KEY_FRACTIONALMETRICS, RenderingHints.VALUE_FRACTIONALMETRICS_ON);
+        g.setRenderingHint(RenderingHints.KEY_STROKE_CONTROL, RenderingHints.VALUE_STROKE_PURE);
+        g.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+        g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+    }
+
+    // Java2D counterpart of SceneItem.drawRegion for the item types the board stores
+    static void draw(Graphics2D g, SceneItem item, Rect area, double unitsPerPixel) {
+        if (item instanceof Stroke) {
+            drawStroke(g, (Stroke) item, unitsPerPixel > 1 ? unitsPerPixel / 2 : 0);
+        } else if (item instanceof TextItem) {
+            drawText(g, (TextItem) item);
+        } else if (item instanceof RasterItem) {
+            RasterItem raster = (RasterItem) item;
+            AffineTransform saved = g.getTransform();
+            g.translate(raster.getX(), raster.getY());
+            g.scale(raster.getScale(), raster.getScale());
+            raster.getTiles().draw(g, 0, 0, raster.toPixels(area));
+            g.setTransform(saved);
+        } else if (item instanceof LargeImageItem) {
+            drawLargeImage(g, (LargeImageItem) item, area, unitsPerPixel);
+        }
+    }
+
+    // Same path as Stroke.drawSegments, or drawSimplified when tolerance is positive
+    private static void drawStroke(Graphics2D g, Stroke stroke, double tolerance) {
+        int count = stroke.getPointCount();
+        if (count < 2) return;
+
+        Path2D.Double path = new Path2D.Double(Path2D.WIND_NON_ZERO, count);
+        double minDistSq = tolerance * tolerance;
+        for (int run = 0; run < stroke.getRunCount(); run++) {
+            int start = stroke.getRunStart(run), end = stroke.getRunEnd(run);
+            if (end - start < 2) continue;
+            double lastX = stroke.getX(start), lastY = stroke.getY(start);
+            path.moveTo(lastX, lastY);
+            for (int i = start + 1; i < end; i++) {
+                double x = stroke.getX(i), y = stroke.getY(i);
+                double dx = x - lastX, dy = y - lastY;
+                if (dx * dx + dy * dy >= minDistSq || i == end - 1) {
+                    path.lineTo(x, y);
+                    lastX = x;
+                    lastY = y;
+                }
+            }
+        }
+
+        g.setColor(toAwt(stroke.getColor()));
+        g.setStroke(new BasicStroke((float) stroke.getWidth(), BasicStroke.CAP_ROUND, BasicStroke.JOIN_ROUND));
+        g.draw(path);
+    }
+
+    // (x, y) is the baseline of the first line, as with fillText
+    private static void drawText(Graphics2D g, TextItem item) {
+        Font font = BASE_FONT.deriveFont((float) item.getFontSize());
+        g.setFont(font);
+        g.setColor(toAwt(item.getColor()));
+        float lineHeight = (float) lineHeight(item.getText(), item.getFontSize());
+        float y = (float) item.getY();
+        for (String line : item.getText().split("\n", -1)) {
+            g.drawString(line, (float) item.getX(), y);
+            y += lineHeight;
+        }
+    }
+
+    // Decodes just the visible region at the subsampling LargeImageItem would use for this scale
+    private static void drawLargeImage(Graphics2D g, LargeImageItem item, Rect area, double unitsPerPixel) {
+        int x0 = Math.max(0, (int) Math.floor(area.minX - item.getX()));
+        int y0 = Math.max(0, (int) Math.floor(area.minY - item.getY()));
+        int x1 = Math.min(item.getImageWidth(), (int) Math.ceil(area.maxX - item.getX()));
+        int y1 = Math.min(item.getImageHeight(), (int) Math.ceil(area.maxY - item.getY()));
+        if (x1 <= x0 || y1 <= y0) return;
+
+        Rectangle region = new Rectangle(x0, y0, x1 - x0, y1 - y0);
+        try {
+            BufferedImage decoded = item.decode(region, 1 << item.levelFor(unitsPerPixel));
+            drawImage(g, decoded, Rect.ofSize(item.getX() + x0, item.getY() + y0, region.width, region.height));
+        } catch (IOException | RuntimeException e) {
+            System.err.println("Cannot decode " + item.getFile() + " " + region + ": " + e.getMessage());
+        }
+    }
+
+    private static void drawImage(Graphics2D g, BufferedImage image, Rect bounds) {
+        AffineTransform transform = AffineTransform.getTranslateInstance(bounds.minX, bounds.minY);
+        transform.scale(bounds.getWidth() / image.getWidth(), bounds.getHeight() / image.getHeight());
+        g.drawImage(image, transform, null);
+    }
+
+    // Embedded images are shown IMAGE_WIDTH wide with their aspect ratio kept; placed at the origin
+    private static PlacedImage decodeImage(String source, int maxSize) {
+        try (InputStream in = new URL(source).openStream();
+             ImageInputStream stream = ImageIO.createImageInputStream(in)) {
+            Iterator<ImageReader> readers = stream != null ? ImageIO.getImageReaders(stream) : null;
+            if (readers == null || !readers.hasNext()) throw new IOException("Unsupported image format");
+
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(stream, true, true);
+                int width = reader.getWidth(0);
+                int height = reader.getHeight(0);
+                // Never decode more pixels than the widest output the image can be drawn at
+                int subsampling = Math.max(1, (int) (width / Math.max(WhiteboardUI.IMAGE_WIDTH, maxSize)));
+                ImageReadParam param = reader.getDefaultReadParam();
+                param.setSourceSubsampling(subsampling, subsampling, 0, 0);
+                BufferedImage image = reader.read(0, param);
+                double shownHeight = WhiteboardUI.IMAGE_WIDTH * height / width;
+                return new PlacedImage(image, Rect.ofSize(0, 0, WhiteboardUI.IMAGE_WIDTH, shownHeight));
+            } finally {
+                reader.dispose();
+            }
+        } catch (IOException | RuntimeException e) {
+            System.err.println("Cannot load " + source + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    // Distance between the baselines of consecutive lines of text, as drawText spaces them
+    static double lineHeight(String text, double fontSize) {
+        return BASE_FONT.deriveFont((float) fontSize).getLineMetrics(text, FONT_CONTEXT).getHeight();
+    }
+
+    // Bounds of text as drawn by drawText, relative to its baseline origin (x, y)
+    static Rect measureText(String text, double x, double y, double fontSize) {
+        Font font = BASE_FONT.deriveFont((float) fontSize);
+        String[] lines = text.split("\n", -1);
+        LineMetrics metrics = font.getLineMetrics(text, FONT_CONTEXT);
+        double width = 0;
+        for (String line : lines) {
+            Rectangle2D bounds = font.getStringBounds(line, FONT_CONTEXT);
+            width = Math.max(width, bounds.getMaxX());
+        }
+        return Rect.ofSize(x, y - metrics.getAscent(), width,
+                metrics.getHeight() * (lines.length - 1) + metrics.getAscent() + metrics.getDescent());
+    }
+
+    static java.awt.Color toAwt(Color color) {
+        return new java.awt.Color((float) color.getRed(), (float) color.getGreen(),
+                (float) color.getBlue(), (float) color.getOpacity());
+    }
+
+    /*
+     * Fraction of pixels where any channel differs by more than tolerance
+     * (0-255). Used to compare headless output with a canvas snapshot of the
+     * same board; the images must have the same size.
+     */
+    public static double difference(BufferedImage a, BufferedImage b, int tolerance) {
+        if (a.getWidth() != b.getWidth() || a.getHeight() != b.getHeight()) {
+            throw new IllegalArgumentException("Images differ in size");
+        }
+        int width = a.getWidth();
+        int[] rowA = new int[width];
+        int[] rowB = new int[width];
+        long differing = 0;
+        for (int y = 0; y < a.getHeight(); y++) {
+            a.getRGB(0, y, width, 1, rowA, 0, width);
+            b.getRGB(0, y, width, 1, rowB, 0, width);
+            for (int x = 0; x < width; x++) {
+                int pa = rowA[x], pb = rowB[x];
+                for (int shift = 0; shift < 32; shift += 8) {
+                    if (Math.abs((pa >>> shift & 0xff) - (pb >>> shift & 0xff)) > tolerance) {
+                        differing++;
+                        break;
+                    }
+                }
+            }
+        }
+        return (double) differing / ((long) width * a.getHeight());
+    }
+}
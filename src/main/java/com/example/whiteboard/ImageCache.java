@@ -0,0 +1,173 @@
+package com.example.whiteboard;
+
+import javafx.scene.image.Image;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.net.URI;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/*
+ * Decoded images keyed by source, modification time and decode width. Images
+ * are decoded in the background at a power-of-two width just large enough for
+ * how they are displayed, so a large photo shown as a thumbnail costs a
+ * thumbnail's worth of memory. Least recently used images are dropped once the
+ * byte budget is exceeded. Exports do not go through the cache: vector exports
+ * decode the original files themselves, off the FX thread.
+ */
+public class ImageCache {
+    public static final long DEFAULT_BYTE_BUDGET = 256L * 1024 * 1024;
+
+    private static final int MIN_DECODE_WIDTH = 256;
+    private static final int FULL_RESOLUTION = 0;
+    private static final int MAX_SIZES = 1024; // image headers remembered
+
+    private final Map<String, Entry> images = new LinkedHashMap<>(32, 0.75f, true);
+    // Keyed by source and modification time, so a file changed on disk is read again
+    private final Map<String, int[]> naturalSizes = new LinkedHashMap<>(32, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, int[]> eldest) {
+            return size() > MAX_SIZES;
+        }
+    };
+    private long byteBudget;
+    private long bytesHeld;
+
+    private static class Entry {
+        final Image image;
+        final long bytes;
+
+        Entry(Image image, long bytes) {
+            this.image = image;
+            this.bytes = bytes;
+        }
+    }
+
+    public ImageCache() {
+        this(Long.getLong("whiteboard.image.cache", DEFAULT_BYTE_BUDGET));
+    }
+
+    public ImageCache(long byteBudget) {
+        this.byteBudget = byteBudget;
+    }
+
+    // Returns an image decoded for display at pixelWidth; loading continues in the background
+    public Image load(String url, double pixelWidth) {
+        long modified = lastModified(url);
+        int[] natural = naturalSize(url, modified);
+        int width = decodeWidth(pixelWidth, natural);
+
+        // Any cached decode at least as large will do; get() also refreshes the LRU order
+        int candidate = width;
+        while (candidate != FULL_RESOLUTION) {
+            Entry cached = images.get(key(url, modified, candidate));
+            if (cached != null && !cached.image.isError()) return cached.image;
+            int next = decodeWidth(candidate * 2.0, natural);
+            if (next == candidate) break;
+            candidate = next;
+        }
+        Entry full = images.get(key(url, modified, FULL_RESOLUTION));
+        if (full != null && !full.image.isError()) return full.image;
+
+        Image image = width == FULL_RESOLUTION
+                ? new Image(url, true)
+                : new Image(url, width, 0, true, true, true);
+        long bytes = estimateBytes(width, natural);
+        images.put(key(url, modified, width), new Entry(image, bytes));
+        bytesHeld += bytes;
+        evict();
+        return image;
+    }
+
+    // True when the image was decoded smaller than displaying it at pixelWidth needs
+    public boolean needsLargerDecode(Image image, double pixelWidth) {
+        int current = (int) image.getRequestedWidth();
+        if (image.getUrl() == null || current == FULL_RESOLUTION) return false;
+        int needed = decodeWidth(pixelWidth, naturalSize(image.getUrl(), lastModified(image.getUrl())));
+        return needed == FULL_RESOLUTION || needed > current;
+    }
+
+    public long getByteBudget() { return byteBudget; }
+    public long getBytesHeld() { return bytesHeld; }
+    public int size() { return images.size(); }
+
+    public void setByteBudget(long byteBudget) {
+        this.byteBudget = byteBudget;
+        evict();
+    }
+
+    private void evict() {
+        Iterator<Entry> entries = images.values().iterator();
+        // The most recently added image is never evicted
+        while (bytesHeld > byteBudget && images.size() > 1 && entries.hasNext()) {
+            bytesHeld -= entries.next().bytes;
+            entries.remove();
+        }
+    }
+
+    // Smallest power-of-two width covering pixelWidth, or full resolution when that is not smaller
+    private static int decodeWidth(double pixelWidth, int[] natural) {
+        int width = MIN_DECODE_WIDTH;
+        while (width < pixelWidth && width < (1 << 16)) width *= 2;
+        if (natural != null && width >= natural[0]) return FULL_RESOLUTION;
+        return width;
+    }
+
+    private static String key(String url, long modified, int width) {
+        return url + "@" + modified + "#" + width;
+    }
+
+    private static long estimateBytes(int width, int[] natural) {
+        if (natural == null) return (long) Math.max(width, MIN_DECODE_WIDTH) * Math.max(width, MIN_DECODE_WIDTH) * 4;
+        int w = width == FULL_RESOLUTION ? natural[0] : width;
+        long h = Math.max(1, (long) natural[1] * w / Math.max(1, natural[0]));
+        return w * h * 4;
+    }
+
+    private int[] naturalSize(String url, long modified) {
+        String key = url + "@" + modified;
+        if (naturalSizes.containsKey(key)) return naturalSizes.get(key);
+
+        File file = toFile(url);
+        int[] size = file != null ? readSize(file) : null;
+        naturalSizes.put(key, size);
+        return size;
+    }
+
+    // Reads only the image header; null when the size cannot be determined up front
+    public static int[] readSize(File file) {
+        try (ImageInputStream in = ImageIO.createImageInputStream(file)) {
+            Iterator<ImageReader> readers = in != null ? ImageIO.getImageReaders(in) : null;
+            if (readers == null || !readers.hasNext()) return null;
+
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(in, true, true);
+                return new int[] {reader.getWidth(0), reader.getHeight(0)};
+            } finally {
+                reader.dispose();
+            }
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    private static long lastModified(String url) {
+        File file = toFile(url);
+        return file != null ? file.lastModified() : 0;
+    }
+
+    private static File toFile(String url) {
+        try {
+            URI uri = URI.create(url);
+            return "file".equals(uri.getScheme()) ? new File(uri) : null;
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,153 @@
+package com.example.whiteboard;
+
+import javafx.concurrent.Task;
+import javafx.embed.swing.SwingFXUtils;
+import javafx.scene.image.Image;
+import javafx.scene.image.PixelFormat;
+import javafx.scene.image.PixelReader;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageWriter;
+import javax.imageio.event.IIOWriteProgressListener;
+import javax.imageio.stream.ImageOutputStream;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/*
+ * Encodes a canvas snapshot to PNG/JPG/GIF/BMP off the FX application thread.
+ * The snapshot pixels are copied once, straight into the raster of the image
+ * handed to the encoder, and media frames captured with it are composited on
+ * top here too, so the FX thread only hands over the buffers. Output goes to
+ * a temporary file that only replaces the target when encoding finishes, so a
+ * cancelled save leaves nothing behind.
+ */
+public class ImageExportTask extends Task<File> {
+    static final ExecutorService EXECUTOR = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "whiteboard-export");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    // Pixels of a media element, such as an image or the current video frame, and where they are on screen
+    public static class Frame {
+        final Image image;
+        final Rect bounds;
+
+        public Frame(Image image, Rect bounds) {
+            this.image = image;
+            this.bounds = bounds;
+        }
+    }
+
+    private final Image snapshot;
+    private final List<Frame> frames;
+    private final File file;
+    private final String format;
+    private volatile ImageWriter writer;
+
+    public ImageExportTask(Image snapshot, File file, String format) {
+        this(snapshot, List.of(), file, format);
+    }
+
+    // Frames are drawn over the snapshot in order, scaled to their bounds
+    public ImageExportTask(Image snapshot, List<Frame> frames, File file, String format) {
+        this.snapshot = snapshot;
+        this.frames = frames;
+        this.file = file;
+        this.format = format.toLowerCase();
+    }
+
+    public ImageExportTask start() {
+        EXECUTOR.execute(this);
+        return this;
+    }
+
+    @Override
+    protected File call() throws IOException {
+        updateMessage("Saving " + file.getName());
+        BufferedImage image = toBufferedImage(snapshot);
+        if (isCancelled()) return null;
+        composite(image);
+        if (isCancelled()) return null;
+
+        Iterator<ImageWriter> writers = ImageIO.getImageWritersByFormatName(format);
+        if (!writers.hasNext()) throw new IOException("No encoder for " + format);
+        writer = writers.next();
+        writer.addIIOWriteProgressListener(new ProgressListener());
+
+        File temp = File.createTempFile("whiteboard-", "." + format, file.getAbsoluteFile().getParentFile());
+        try {
+            try (ImageOutputStream out = ImageIO.createImageOutputStream(temp)) {
+                writer.setOutput(out);
+                writer.write(image);
+            } finally {
+                writer.dispose();
+            }
+            if (isCancelled()) return null;
+            Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            Files.deleteIfExists(temp.toPath());
+        }
+        updateProgress(1, 1);
+        return file;
+    }
+
+    @Override
+    protected void cancelled() {
+        ImageWriter current = writer;
+        if (current != null) current.abort();
+    }
+
+    // Captured images never change, so their pixels can be read here rather than on the FX thread
+    private void composite(BufferedImage image) {
+        if (frames.isEmpty()) return;
+        Graphics2D g = image.createGraphics();
+        try {
+            g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            for (Frame frame : frames) {
+                if (isCancelled()) return;
+                BufferedImage pixels = SwingFXUtils.fromFXImage(frame.image, null);
+                g.drawImage(pixels, (int) Math.round(frame.bounds.minX), (int) Math.round(frame.bounds.minY),
+                        (int) Math.round(frame.bounds.getWidth()), (int) Math.round(frame.bounds.getHeight()), null);
+            }
+        } finally {
+            g.dispose();
+        }
+    }
+
+    // The snapshot is opaque, so every format can share a plain RGB raster
+    static BufferedImage toBufferedImage(Image snapshot) {
+        int width = (int) snapshot.getWidth();
+        int height = (int) snapshot.getHeight();
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        int[] pixels = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+        PixelReader reader = snapshot.getPixelReader();
+        reader.getPixels(0, 0, width, height, PixelFormat.getIntArgbInstance(), pixels, 0, width);
+        return image;
+    }
+
+    private class ProgressListener implements IIOWriteProgressListener {
+        @Override
+        public void imageProgress(ImageWriter source, float percentageDone) {
+            updateProgress(percentageDone, 100);
+            if (isCancelled()) source.abort();
+        }
+
+        @Override public void imageStarted(ImageWriter source, int imageIndex) {}
+        @Override public void imageComplete(ImageWriter source) {}
+        @Override public void thumbnailStarted(ImageWriter source, int imageIndex, int thumbnailIndex) {}
+        @Override public void thumbnailProgress(ImageWriter source, float percentageDone) {}
+        @Override public void thumbnailComplete(ImageWriter source) {}
+        @Override public void writeAborted(ImageWriter source) {}
+    }
+}
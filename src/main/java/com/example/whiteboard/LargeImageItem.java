@@ -0,0 +1,198 @@
+package com.example.whiteboard;
+
+import javafx.application.Platform;
+import javafx.embed.swing.SwingFXUtils;
+import javafx.scene.canvas.GraphicsContext;
+import javafx.scene.image.Image;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/*
+ * An image too large to decode at once, such as a scanned blueprint. Only the
+ * regions that are drawn get decoded, through an ImageReader source region and
+ * subsampling matched to the zoom level, on background threads. Decoded tiles
+ * live in a small LRU cache, so memory depends on what is on screen rather
+ * than on the size of the file. Until a tile arrives, a coarser cached one is
+ * stretched over its area.
+ */
+public class LargeImageItem extends SceneItem {
+    public static final long LARGE_PIXEL_COUNT = 4096L * 4096;
+
+    private static final int TILE_SIZE = 256;
+    private static final int MAX_TILES = 128;
+    private static final ExecutorService DECODER = Executors.newFixedThreadPool(2, r -> {
+        Thread thread = new Thread(r, "whiteboard-region-decoder");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final File file;
+    private final double x, y;
+    private final int width, height;
+    private final int maxLevel;
+    // Accessed on the FX thread only; decoders hand results over with runLater
+    private final Map<Long, Image> tiles = new LinkedHashMap<>(64, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Long, Image> eldest) {
+            return size() > MAX_TILES;
+        }
+    };
+    private final Set<Long> pending = new HashSet<>();
+    private final Set<Long> failed = new HashSet<>();
+
+    public LargeImageItem(File file, double x, double y, int width, int height) {
+        this.file = file;
+        this.x = x;
+        this.y = y;
+        this.width = width;
+        this.height = height;
+        int level = 0;
+        while ((Math.max(width, height) >> level) > TILE_SIZE) level++;
+        this.maxLevel = level;
+    }
+
+    public static boolean isLarge(int width, int height) {
+        return (long) width * height > LARGE_PIXEL_COUNT;
+    }
+
+    public File getFile() { return file; }
+    public double getX() { return x; }
+    public double getY() { return y; }
+    public int getImageWidth() { return width; }
+    public int getImageHeight() { return height; }
+
+    @Override
+    public Rect getBounds() {
+        return Rect.ofSize(x, y, width, height);
+    }
+
+    // Outside the tile renderer, draw the whole image at a moderate resolution
+    @Override
+    public void draw(GraphicsContext gc) {
+        drawRegion(gc, getBounds(), Math.max(1, Math.max(width, height) / 2048.0));
+    }
+
+    @Override
+    public void drawRegion(GraphicsContext gc, Rect area, double unitsPerPixel) {
+        int level = levelFor(unitsPerPixel);
+        int span = TILE_SIZE << level; // image pixels covered by one tile at this level
+
+        int tx0 = Math.max(0, (int) Math.floor((area.minX - x) / span));
+        int ty0 = Math.max(0, (int) Math.floor((area.minY - y) / span));
+        int tx1 = Math.min((width - 1) / span, (int) Math.floor((area.maxX - x) / span));
+        int ty1 = Math.min((height - 1) / span, (int) Math.floor((area.maxY - y) / span));
+
+        for (int ty = ty0; ty <= ty1; ty++) {
+            for (int tx = tx0; tx <= tx1; tx++) {
+                int px = tx * span;
+                int py = ty * span;
+                int pw = Math.min(span, width - px);
+                int ph = Math.min(span, height - py);
+
+                Image tile = tiles.get(key(level, tx, ty));
+                if (tile != null) {
+                    gc.drawImage(tile, x + px, y + py, pw, ph);
+                } else {
+                    request(level, tx, ty);
+                    drawFallback(gc, level, px, py, pw, ph);
+                }
+            }
+        }
+    }
+
+    // Coarsest level whose subsampling still gives at least one image pixel per output pixel
+    int levelFor(double unitsPerPixel) {
+        int level = 0;
+        while (level < maxLevel && (1 << (level + 1)) <= unitsPerPixel) level++;
+        return level;
+    }
+
+    @Override
+    public Layer getLayer() {
+        return Layer.BACKGROUND;
+    }
+
+    @Override
+    public long getByteSize() {
+        return 128 + tiles.size() * (long) TILE_SIZE * TILE_SIZE * 4;
+    }
+
+    // Stretches the closest cached coarser tile over the missing area
+    private void drawFallback(GraphicsContext gc, int level, int px, int py, int pw, int ph) {
+        for (int coarser = level + 1; coarser <= maxLevel; coarser++) {
+            int span = TILE_SIZE << coarser;
+            int tx = px / span;
+            int ty = py / span;
+            Image tile = tiles.get(key(coarser, tx, ty));
+            if (tile == null) continue;
+
+            double step = 1 << coarser;
+            gc.drawImage(tile, (px - tx * span) / step, (py - ty * span) / step, pw / step, ph / step,
+                    x + px, y + py, pw, ph);
+            return;
+        }
+    }
+
+    private void request(int level, int tx, int ty) {
+        long key = key(level, tx, ty);
+        if (failed.contains(key) || !pending.add(key)) return;
+
+        int span = TILE_SIZE << level;
+        Rectangle region = new Rectangle(tx * span, ty * span,
+                Math.min(span, width - tx * span), Math.min(span, height - ty * span));
+        DECODER.execute(() -> {
+            Image decoded = null;
+            try {
+                decoded = SwingFXUtils.toFXImage(decode(region, 1 << level), null);
+            } catch (IOException | RuntimeException e) {
+                System.err.println("Cannot decode " + file + " " + region + ": " + e.getMessage());
+            }
+            Image result = decoded;
+            Platform.runLater(() -> {
+                pending.remove(key);
+                if (result == null) {
+                    failed.add(key);
+                    return;
+                }
+                tiles.put(key, result);
+                fireChanged(Rect.ofSize(x + region.x, y + region.y, region.width, region.height));
+            });
+        });
+    }
+
+    BufferedImage decode(Rectangle region, int subsampling) throws IOException {
+        try (ImageInputStream in = ImageIO.createImageInputStream(file)) {
+            Iterator<ImageReader> readers = in != null ? ImageIO.getImageReaders(in) : null;
+            if (readers == null || !readers.hasNext()) throw new IOException("Unsupported image format");
+
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(in, true, true);
+                ImageReadParam param = reader.getDefaultReadParam();
+                param.setSourceRegion(region);
+                param.setSourceSubsampling(subsampling, subsampling, 0, 0);
+                return reader.read(0, param);
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+
+    private static long key(int level, int tx, int ty) {
+        return ((long) level << 56) | ((long) tx << 28) | ty;
+    }
+}
@@ -0,0 +1,21 @@
+package com.example.whiteboard;
+
+/*
+ * Layers of the board, bottom to top in their default order. An item's layer
+ * follows from its kind (see SceneItem.getLayer); each layer has its own tile
+ * cache, so an edit only re-renders tiles of the layer it touched. Media
+ * nodes are not items and always sit above the board layers.
+ */
+public enum Layer {
+    BACKGROUND("Background"),
+    INK("Ink"),
+    ANNOTATIONS("Annotations");
+
+    private final String label;
+
+    Layer(String label) {
+        this.label = label;
+    }
+
+    public String getLabel() { return label; }
+}
@@ -0,0 +1,240 @@
+package com.example.whiteboard;
+
+import javafx.animation.KeyFrame;
+import javafx.animation.Timeline;
+import javafx.geometry.Bounds;
+import javafx.scene.media.Media;
+import javafx.scene.media.MediaPlayer;
+import javafx.scene.media.MediaView;
+import javafx.util.Duration;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/*
+ * Owns every MediaPlayer on the board. At most maxPlayingVideos videos decode
+ * at once; starting another pauses the one that has been playing longest.
+ * Videos that scroll out of view or are hidden are paused, and after staying
+ * out of view for SUSPEND_AFTER their player is disposed to free the native
+ * decoder. A suspended video gets a fresh player at its old position when it
+ * comes back into view. Deleting or clearing media always disposes players.
+ */
+public class MediaManager {
+    public static final int DEFAULT_MAX_PLAYING_VIDEOS = 4;
+
+    private static final Duration SUSPEND_AFTER = Duration.seconds(30);
+    private static final Duration CHECK_INTERVAL = Duration.seconds(5);
+
+    private final Map<WhiteboardController.MediaElement, Entry> entries = new IdentityHashMap<>();
+    private final Timeline suspendCheck;
+    private int maxPlayingVideos = Integer.getInteger("whiteboard.media.maxPlaying", DEFAULT_MAX_PLAYING_VIDEOS);
+    private Rect visibleArea;
+
+    private static class Entry {
+        final String source;
+        final boolean video;
+        boolean wantsToPlay;     // what the user asked for, independent of suspension
+        boolean pausedByManager; // paused because it went out of view
+        boolean suspended;       // player disposed until the element is visible again
+        Duration resumeAt = Duration.ZERO;
+        double volume = 1;
+        long hiddenSince;
+        long playingSince;
+
+        Entry(String source, boolean video) {
+            this.source = source;
+            this.video = video;
+        }
+    }
+
+    public MediaManager() {
+        suspendCheck = new Timeline(new KeyFrame(CHECK_INTERVAL, e -> updateVisibility()));
+        suspendCheck.setCycleCount(Timeline.INDEFINITE);
+        suspendCheck.play();
+    }
+
+    public void register(WhiteboardController.MediaElement element) {
+        if (element.mediaPlayer == null || entries.containsKey(element)) return;
+        Entry entry = new Entry(element.source, element.node instanceof MediaView);
+        entry.volume = element.mediaPlayer.getVolume();
+        entries.put(element, entry);
+        element.mediaPlayer.setOnEndOfMedia(() -> entry.wantsToPlay = false);
+    }
+
+    public void play(WhiteboardController.MediaElement element) {
+        Entry entry = entries.get(element);
+        if (entry == null) return;
+        entry.wantsToPlay = true;
+        if (entry.video && !isVisible(element)) {
+            entry.pausedByManager = true;
+            return;
+        }
+        start(element, entry);
+    }
+
+    public void pause(WhiteboardController.MediaElement element) {
+        Entry entry = entries.get(element);
+        if (entry == null) return;
+        entry.wantsToPlay = false;
+        entry.pausedByManager = false;
+        if (element.mediaPlayer != null) element.mediaPlayer.pause();
+    }
+
+    public void stop(WhiteboardController.MediaElement element) {
+        Entry entry = entries.get(element);
+        if (entry == null) return;
+        entry.wantsToPlay = false;
+        entry.pausedByManager = false;
+        entry.resumeAt = Duration.ZERO;
+        if (element.mediaPlayer != null) element.mediaPlayer.stop();
+    }
+
+    public void setVolume(WhiteboardController.MediaElement element, double volume) {
+        Entry entry = entries.get(element);
+        if (entry == null) return;
+        entry.volume = volume;
+        if (element.mediaPlayer != null) element.mediaPlayer.setVolume(volume);
+    }
+
+    public double getVolume(WhiteboardController.MediaElement element) {
+        Entry entry = entries.get(element);
+        return entry != null ? entry.volume : 1;
+    }
+
+    // Stops the player and releases its native resources
+    public void remove(WhiteboardController.MediaElement element) {
+        if (entries.remove(element) != null) dispose(element);
+    }
+
+    public void clear() {
+        for (WhiteboardController.MediaElement element : new ArrayList<>(entries.keySet())) {
+            remove(element);
+        }
+    }
+
+    public void setMaxPlayingVideos(int maxPlayingVideos) {
+        this.maxPlayingVideos = Math.max(1, maxPlayingVideos);
+        enforcePlayingLimit(null);
+    }
+
+    public int getPlayerCount() {
+        int count = 0;
+        for (WhiteboardController.MediaElement element : entries.keySet()) {
+            if (element.mediaPlayer != null) count++;
+        }
+        return count;
+    }
+
+    public int getPlayingCount() {
+        int count = 0;
+        for (Entry entry : entries.values()) {
+            if (isActive(entry)) count++;
+        }
+        return count;
+    }
+
+    // Called when the viewport moves; area is the visible part of the board
+    public void setVisibleArea(Rect area) {
+        this.visibleArea = area;
+        updateVisibility();
+    }
+
+    // Also called when media is shown or hidden as a whole, which moves no viewport
+    public void updateVisibility() {
+        long now = System.nanoTime();
+        for (Map.Entry<WhiteboardController.MediaElement, Entry> e : entries.entrySet()) {
+            WhiteboardController.MediaElement element = e.getKey();
+            Entry entry = e.getValue();
+            if (!entry.video) continue;
+
+            if (isVisible(element)) {
+                entry.hiddenSince = 0;
+                if (entry.wantsToPlay && entry.pausedByManager) {
+                    entry.pausedByManager = false;
+                    start(element, entry);
+                }
+            } else {
+                if (entry.hiddenSince == 0) entry.hiddenSince = now;
+                if (isPlaying(element)) {
+                    element.mediaPlayer.pause();
+                    entry.pausedByManager = true;
+                }
+                if (!entry.suspended && now - entry.hiddenSince > SUSPEND_AFTER.toMillis() * 1_000_000) {
+                    suspend(element, entry);
+                }
+            }
+        }
+    }
+
+    private void start(WhiteboardController.MediaElement element, Entry entry) {
+        if (entry.suspended) restore(element, entry);
+        if (entry.video) enforcePlayingLimit(element);
+        entry.playingSince = System.nanoTime();
+        element.mediaPlayer.play();
+    }
+
+    // Pauses the longest-playing videos so that starting another stays within the limit
+    private void enforcePlayingLimit(WhiteboardController.MediaElement starting) {
+        List<WhiteboardController.MediaElement> playing = new ArrayList<>();
+        for (Map.Entry<WhiteboardController.MediaElement, Entry> e : entries.entrySet()) {
+            if (e.getValue().video && e.getKey() != starting && isActive(e.getValue())) playing.add(e.getKey());
+        }
+        playing.sort((a, b) -> Long.compare(entries.get(a).playingSince, entries.get(b).playingSince));
+        int allowed = starting != null ? maxPlayingVideos - 1 : maxPlayingVideos;
+        for (int i = 0; i < playing.size() - allowed; i++) {
+            WhiteboardController.MediaElement element = playing.get(i);
+            if (element.mediaPlayer != null) element.mediaPlayer.pause();
+            entries.get(element).wantsToPlay = false;
+        }
+    }
+
+    private void suspend(WhiteboardController.MediaElement element, Entry entry) {
+        if (element.mediaPlayer == null) return;
+        entry.resumeAt = element.mediaPlayer.getCurrentTime();
+        dispose(element);
+        entry.suspended = true;
+    }
+
+    private void restore(WhiteboardController.MediaElement element, Entry entry) {
+        MediaPlayer player = new MediaPlayer(new Media(entry.source));
+        player.setVolume(entry.volume);
+        Duration resumeAt = entry.resumeAt;
+        player.setOnReady(() -> player.seek(resumeAt));
+        player.setOnEndOfMedia(() -> entry.wantsToPlay = false);
+        if (element.node instanceof MediaView) {
+            ((MediaView) element.node).setMediaPlayer(player);
+        }
+        element.mediaPlayer = player;
+        entry.suspended = false;
+    }
+
+    private void dispose(WhiteboardController.MediaElement element) {
+        MediaPlayer player = element.mediaPlayer;
+        if (player == null) return;
+        if (element.node instanceof MediaView) {
+            ((MediaView) element.node).setMediaPlayer(null);
+        }
+        player.stop();
+        player.dispose();
+        element.mediaPlayer = null;
+    }
+
+    // Playing as far as the user is concerned, whatever the player status says right now
+    private static boolean isActive(Entry entry) {
+        return entry.wantsToPlay && !entry.pausedByManager && !entry.suspended;
+    }
+
+    private boolean isPlaying(WhiteboardController.MediaElement element) {
+        return element.mediaPlayer != null && element.mediaPlayer.getStatus() == MediaPlayer.Status.PLAYING;
+    }
+
+    private boolean isVisible(WhiteboardController.MediaElement element) {
+        if (!element.isShown() || element.node.getScene() == null) return false;
+        if (visibleArea == null) return true;
+        Bounds bounds = element.node.getBoundsInParent();
+        if (bounds.isEmpty()) return true; // not laid out yet
+        return visibleArea.intersects(new Rect(bounds.getMinX(), bounds.getMinY(), bounds.getMaxX(), bounds.getMaxY()));
+    }
+}
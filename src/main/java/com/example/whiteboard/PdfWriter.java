@@ -0,0 +1,301 @@
+package com.example.whiteboard;
+
+import javafx.scene.paint.Color;
+
+import java.awt.image.BufferedImage;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedSet;
+import java.util.TreeSet;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+
+/*
+ * Single-page PDF output, one board unit per point unless the board is larger
+ * than viewers accept. Drawing operators are deflated straight into a content
+ * stream. A PDF object cannot be written inside a stream, so an image seen
+ * for the first time ends the current content stream, is written as its own
+ * XObject (JPEG as is, or deflated RGB with a soft mask for transparency), and
+ * drawing continues in a new content stream; the page lists all of them in
+ * order. Stream lengths are written as objects after each stream, and the
+ * page, its resources and the cross-reference table come last, so the file is
+ * produced in one pass.
+ */
+public class PdfWriter extends VectorWriter {
+    private static final double MAX_PAGE_SIZE = 14400; // points; larger pages are scaled down
+    private static final int CATALOG = 1, PAGES = 2, PAGE = 3;
+
+    private final Counter counter;
+    private final Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+    private long[] offsets = new long[64]; // file offset of each object, by number
+    private int objectCount = PAGE + 1;    // next free object number
+    private final List<Integer> contents = new ArrayList<>();
+    private final Map<String, Integer> imageObjects = new LinkedHashMap<>();
+    private final SortedSet<Integer> opacities = new TreeSet<>(); // percent, one graphics state each
+    private OutputStream content; // deflater of the open content stream
+    private int contentObject;
+    private long streamStart;
+    private double pageWidth, pageHeight;
+
+    // Counts the bytes written, for the cross-reference table
+    private static class Counter extends FilterOutputStream {
+        long count;
+
+        Counter(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            count++;
+        }
+
+        @Override
+        public void write(byte[] bytes, int offset, int length) throws IOException {
+            out.write(bytes, offset, length);
+            count += length;
+        }
+    }
+
+    public PdfWriter(OutputStream out) {
+        this(new Counter(out));
+    }
+
+    private PdfWriter(Counter counter) {
+        super(counter);
+        this.counter = counter;
+    }
+
+    @Override
+    public void begin(Rect area) throws IOException {
+        double scale = Math.min(1, MAX_PAGE_SIZE / Math.max(area.getWidth(), area.getHeight()));
+        pageWidth = Math.max(1, area.getWidth() * scale);
+        pageHeight = Math.max(1, area.getHeight() * scale);
+        // The binary comment marks the file as binary for transfer tools
+        out.write("%PDF-1.4\n%\u00e2\u00e3\u00cf\u00d3\n".getBytes(StandardCharsets.ISO_8859_1));
+
+        startContent();
+        // Board coordinates grow downwards, PDF coordinates upwards
+        line.setLength(0);
+        appendNumbers(scale, 0, 0, -scale, -area.minX * scale, pageHeight + area.minY * scale);
+        line.append(" cm 1 J 1 j\n");
+        emit();
+    }
+
+    @Override
+    public void finish() throws IOException {
+        endContent();
+
+        line.setLength(0);
+        line.append("<< /Type /Page /Parent ").append(PAGES).append(" 0 R /MediaBox [0 0 ");
+        appendNumbers(pageWidth, pageHeight);
+        line.append("] /Resources << /Font << /F1 << /Type /Font /Subtype /Type1 /BaseFont /Helvetica"
+                + " /Encoding /WinAnsiEncoding >> >> /XObject <<");
+        for (Map.Entry<String, Integer> image : imageObjects.entrySet()) {
+            line.append(" /").append(image.getKey()).append(' ').append(image.getValue()).append(" 0 R");
+        }
+        line.append(" >> /ExtGState <<");
+        for (int opacity : opacities) {
+            line.append(" /GS").append(opacity).append(" << /CA ");
+            appendNumber(line, opacity / 100.0);
+            line.append(" /ca ");
+            appendNumber(line, opacity / 100.0);
+            line.append(" >>");
+        }
+        line.append(" >> >> /Contents [");
+        for (int object : contents) line.append(object).append(" 0 R ");
+        line.append("] >>");
+        writeObject(PAGE, line);
+        writeObject(PAGES, "<< /Type /Pages /Kids [" + PAGE + " 0 R] /Count 1 >>");
+        writeObject(CATALOG, "<< /Type /Catalog /Pages " + PAGES + " 0 R >>");
+
+        long xref = counter.count;
+        StringBuilder table = new StringBuilder(objectCount * 20 + 64);
+        table.append("xref\n0 ").append(objectCount).append("\n0000000000 65535 f \n");
+        for (int object = 1; object < objectCount; object++) {
+            String offset = Long.toString(offsets[object]);
+            for (int i = offset.length(); i < 10; i++) table.append('0');
+            table.append(offset).append(" 00000 n \n");
+        }
+        table.append("trailer\n<< /Size ").append(objectCount).append(" /Root ").append(CATALOG)
+                .append(" 0 R >>\nstartxref\n").append(xref).append("\n%%EOF\n");
+        write(table);
+        out.flush();
+        deflater.end();
+    }
+
+    @Override
+    protected void drawStroke(Stroke stroke) throws IOException {
+        line.setLength(0);
+        line.append("q ");
+        Color color = stroke.getColor();
+        appendOpacity(color);
+        appendNumbers(color.getRed(), color.getGreen(), color.getBlue());
+        line.append(" RG ");
+        appendNumber(line, stroke.getWidth());
+        line.append(" w\n");
+        for (int run = 0; run < stroke.getRunCount(); run++) {
+            int start = stroke.getRunStart(run), end = stroke.getRunEnd(run);
+            if (end - start < 2) continue;
+            for (int i = start; i < end; i++) {
+                appendNumbers(stroke.getX(i), stroke.getY(i));
+                line.append(i == start ? " m\n" : " l\n");
+            }
+        }
+        line.append("S Q\n");
+        emit();
+    }
+
+    // Helvetica is always available to viewers; characters outside WinAnsi become '?'
+    @Override
+    protected void drawText(TextItem text) throws IOException {
+        line.setLength(0);
+        line.append("q ");
+        appendOpacity(text.getColor());
+        appendNumbers(text.getColor().getRed(), text.getColor().getGreen(), text.getColor().getBlue());
+        line.append(" rg BT /F1 ");
+        appendNumber(line, text.getFontSize());
+        line.append(" Tf\n");
+        double lineHeight = HeadlessRenderer.lineHeight(text.getText(), text.getFontSize());
+        double y = text.getY();
+        for (String textLine : text.getText().split("\n", -1)) {
+            // Flipped back, or the glyphs would be upside down
+            line.append("1 0 0 -1 ");
+            appendNumbers(text.getX(), y);
+            line.append(" Tm (");
+            for (int i = 0; i < textLine.length(); i++) {
+                char c = textLine.charAt(i);
+                if (c == '(' || c == ')' || c == '\\') line.append('\\');
+                if (c < 0x20) continue;
+                line.append(c < 0x7f || c >= 0xa0 && c <= 0xff ? c : '?');
+            }
+            line.append(") Tj\n");
+            y += lineHeight;
+        }
+        line.append("ET Q\n");
+        emit();
+    }
+
+    @Override
+    protected String defineImage(BufferedImage image) throws IOException {
+        endContent();
+        int width = image.getWidth(), height = image.getHeight();
+        String size = " /Width " + width + " /Height " + height + " /BitsPerComponent 8";
+        int object;
+        if (isOpaque(image)) {
+            object = beginStream("/Type /XObject /Subtype /Image" + size + " /ColorSpace /DeviceRGB /Filter /DCTDecode");
+            writeJpeg(image, shielded());
+            endStream(object);
+        } else {
+            int mask = beginStream("/Type /XObject /Subtype /Image" + size + " /ColorSpace /DeviceGray /Filter /FlateDecode");
+            writePixels(image, true);
+            endStream(mask);
+            object = beginStream("/Type /XObject /Subtype /Image" + size + " /ColorSpace /DeviceRGB /Filter /FlateDecode"
+                    + " /SMask " + mask + " 0 R");
+            writePixels(image, false);
+            endStream(object);
+        }
+        String name = "Im" + (imageObjects.size() + 1);
+        imageObjects.put(name, object);
+        startContent();
+        return name;
+    }
+
+    // Deflates the image row by row, as alpha bytes or as RGB bytes
+    private void writePixels(BufferedImage image, boolean alpha) throws IOException {
+        int width = image.getWidth();
+        int[] row = new int[width];
+        byte[] bytes = new byte[alpha ? width : width * 3];
+        try (OutputStream pixels = new DeflaterOutputStream(shielded(), deflater, 8192)) {
+            for (int y = 0; y < image.getHeight(); y++) {
+                image.getRGB(0, y, width, 1, row, 0, width);
+                for (int x = 0; x < width; x++) {
+                    int pixel = row[x];
+                    if (alpha) {
+                        bytes[x] = (byte) (pixel >>> 24);
+                    } else {
+                        bytes[x * 3] = (byte) (pixel >> 16);
+                        bytes[x * 3 + 1] = (byte) (pixel >> 8);
+                        bytes[x * 3 + 2] = (byte) pixel;
+                    }
+                }
+                pixels.write(bytes);
+            }
+        }
+        deflater.reset();
+    }
+
+    // The image space is the unit square with its first row at the top
+    @Override
+    protected void placeImage(String name, Rect bounds) throws IOException {
+        line.setLength(0);
+        line.append("q ");
+        appendNumbers(bounds.getWidth(), 0, 0, -bounds.getHeight(), bounds.minX, bounds.maxY);
+        line.append(" cm /").append(name).append(" Do Q\n");
+        emit();
+    }
+
+    private void startContent() throws IOException {
+        contentObject = beginStream("/Filter /FlateDecode");
+        contents.add(contentObject);
+        content = new DeflaterOutputStream(shielded(), deflater, 8192);
+    }
+
+    private void endContent() throws IOException {
+        content.close();
+        deflater.reset();
+        endStream(contentObject);
+    }
+
+    // Opens a stream object whose length follows it as the next object
+    private int beginStream(String dictionary) throws IOException {
+        int object = allocate();
+        allocate();
+        startObject(object);
+        write("<< " + dictionary + " /Length " + (object + 1) + " 0 R >>\nstream\n");
+        streamStart = counter.count;
+        return object;
+    }
+
+    private void endStream(int object) throws IOException {
+        long length = counter.count - streamStart;
+        write("\nendstream\nendobj\n");
+        writeObject(object + 1, Long.toString(length));
+    }
+
+    private int allocate() {
+        if (objectCount == offsets.length) offsets = Arrays.copyOf(offsets, objectCount * 2);
+        return objectCount++;
+    }
+
+    private void startObject(int object) throws IOException {
+        offsets[object] = counter.count;
+        write(object + " 0 obj\n");
+    }
+
+    private void writeObject(int object, CharSequence body) throws IOException {
+        startObject(object);
+        write(body);
+        write("\nendobj\n");
+    }
+
+    // Content bytes are Latin-1, which matches WinAnsi for the characters drawText keeps
+    private void emit() throws IOException {
+        content.write(line.toString().getBytes(StandardCharsets.ISO_8859_1));
+    }
+
+    private void appendOpacity(Color color) {
+        int opacity = (int) Math.round(color.getOpacity() * 100);
+        if (opacity >= 100) return;
+        opacities.add(opacity);
+        line.append("/GS").append(opacity).append(" gs ");
+    }
+}
@@ -0,0 +1,276 @@
+package com.example.whiteboard;
+
+import javafx.animation.AnimationTimer;
+import javafx.animation.KeyFrame;
+import javafx.animation.Timeline;
+import javafx.util.Duration;
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Event;
+import jdk.jfr.FlightRecorder;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Period;
+import jdk.jfr.Timespan;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.Locale;
+
+/*
+ * Frame timing, input-to-pixel latency and memory figures for the board.
+ * While disabled, the hooks on the drawing path are a single volatile read;
+ * only a once-a-second sample of the history, media and image cache sizes
+ * runs, so the gauges stay current for JMX and JFR. Enabled, a per-pulse timer
+ * measures frame intervals and the time from a mouse event to the pulse after
+ * its points were drawn, i.e. once the frame holding them has been rendered.
+ * Figures are published as an overlay (describe), JFR events and an MBean.
+ */
+public class PerfMonitor implements PerfMonitorMBean {
+    public static final String MBEAN_NAME = "com.example.whiteboard:type=PerfMonitor";
+
+    private static final int WINDOW = 120; // frames in the rolling average
+
+    private final CommandHistory history;
+    private final MediaManager mediaManager;
+    private final ImageCache imageCache;
+    private final AnimationTimer pulse;
+    private final Timeline sampler;
+    private final Runnable statsHook = this::emitBoardStats;
+    private volatile boolean enabled;
+
+    // FX thread only
+    private final long[] frameTimes = new long[WINDOW];
+    private int frameIndex, frameCount;
+    private long frameTotal;
+    private long lastPulse;
+    private long pendingInput; // oldest input whose points are not drawn yet, 0 if none
+    private long drawnInput;   // oldest input drawn during the current pulse
+    private long repaintNanos;
+    private int tilesRendered;
+
+    // Published for the overlay, JMX and JFR
+    private volatile double lastFrameMillis, averageFrameMillis, worstFrameMillis;
+    private volatile double lastLatencyMillis, worstLatencyMillis;
+    private volatile long undoBytes, imageCacheBytes;
+    private volatile int undoDepth, mediaPlayers, playingMedia, imageCacheEntries;
+
+    @Name("com.example.whiteboard.Frame")
+    @Label("Whiteboard Frame")
+    @Category("Whiteboard")
+    static class FrameEvent extends Event {
+        @Label("Frame Time") @Timespan long frameTime;
+        @Label("Repaint Time") @Timespan long repaintTime;
+        @Label("Tiles Rendered") int tilesRendered;
+    }
+
+    @Name("com.example.whiteboard.InputLatency")
+    @Label("Whiteboard Input Latency")
+    @Category("Whiteboard")
+    static class InputLatencyEvent extends Event {
+        @Label("Latency") @Timespan long latency;
+    }
+
+    @Name("com.example.whiteboard.BoardStats")
+    @Label("Whiteboard Board Statistics")
+    @Category("Whiteboard")
+    @Period("1 s")
+    static class BoardStatsEvent extends Event {
+        @Label("Undo Bytes") @DataAmount long undoBytes;
+        @Label("Undo Depth") int undoDepth;
+        @Label("Media Players") int mediaPlayers;
+        @Label("Playing Media") int playingMedia;
+        @Label("Image Cache Bytes") @DataAmount long imageCacheBytes;
+        @Label("Image Cache Entries") int imageCacheEntries;
+    }
+
+    public PerfMonitor(CommandHistory history, MediaManager mediaManager, ImageCache imageCache) {
+        this.history = history;
+        this.mediaManager = mediaManager;
+        this.imageCache = imageCache;
+        this.pulse = new AnimationTimer() {
+            @Override
+            public void handle(long now) {
+                onPulse();
+            }
+        };
+        this.sampler = new Timeline(new KeyFrame(Duration.seconds(1), e -> sample()));
+        sampler.setCycleCount(Timeline.INDEFINITE);
+        sampler.play();
+        if (Boolean.getBoolean("whiteboard.perf")) setEnabled(true);
+    }
+
+    // Publishes the MBean and the periodic JFR statistics event
+    public void register() {
+        FlightRecorder.addPeriodicEvent(BoardStatsEvent.class, statsHook);
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName(MBEAN_NAME);
+            if (!server.isRegistered(name)) server.registerMBean(this, name);
+        } catch (JMException e) {
+            System.err.println("Cannot register " + MBEAN_NAME + ": " + e.getMessage());
+        }
+    }
+
+    public void unregister() {
+        FlightRecorder.removePeriodicEvent(statsHook);
+        sampler.stop();
+        setEnabled(false);
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName(MBEAN_NAME);
+            if (server.isRegistered(name)) server.unregisterMBean(name);
+        } catch (JMException e) {
+            System.err.println("Cannot unregister " + MBEAN_NAME + ": " + e.getMessage());
+        }
+    }
+
+    @Override
+    public boolean isEnabled() { return enabled; }
+
+    // May be called from the JMX thread, so the timer is switched on the FX thread
+    @Override
+    public void setEnabled(boolean enabled) {
+        if (this.enabled == enabled) return;
+        this.enabled = enabled;
+        runOnFxThread(() -> {
+            if (this.enabled) {
+                lastPulse = 0;
+                pendingInput = 0;
+                drawnInput = 0;
+                pulse.start();
+            } else {
+                pulse.stop();
+            }
+        });
+    }
+
+    // A mouse event that adds to the stroke in progress
+    public void inputReceived() {
+        if (!enabled || pendingInput != 0) return;
+        pendingInput = System.nanoTime();
+    }
+
+    // Called after the points of pending input were drawn to the canvas
+    public void inputDrawn() {
+        if (!enabled || pendingInput == 0) return;
+        if (drawnInput == 0) drawnInput = pendingInput;
+        pendingInput = 0;
+    }
+
+    // Returns a start time to pass to repaintFinished, or 0 when disabled
+    public long repaintStarted() {
+        return enabled ? System.nanoTime() : 0;
+    }
+
+    public void repaintFinished(long start, int tiles) {
+        if (start == 0) return;
+        repaintNanos += System.nanoTime() - start;
+        tilesRendered += tiles;
+    }
+
+    // The frame that held drawn input has been rendered by the time the next pulse starts
+    private void onPulse() {
+        long now = System.nanoTime();
+        if (lastPulse != 0) recordFrame(now - lastPulse);
+        lastPulse = now;
+        repaintNanos = 0;
+        tilesRendered = 0;
+
+        if (drawnInput != 0) {
+            long latency = now - drawnInput;
+            drawnInput = 0;
+            lastLatencyMillis = latency / 1e6;
+            worstLatencyMillis = Math.max(worstLatencyMillis, lastLatencyMillis);
+            InputLatencyEvent event = new InputLatencyEvent();
+            if (event.shouldCommit()) {
+                event.latency = latency;
+                event.commit();
+            }
+        }
+    }
+
+    private void recordFrame(long frameNanos) {
+        frameTotal += frameNanos - frameTimes[frameIndex];
+        frameTimes[frameIndex] = frameNanos;
+        frameIndex = (frameIndex + 1) % WINDOW;
+        frameCount = Math.min(frameCount + 1, WINDOW);
+
+        lastFrameMillis = frameNanos / 1e6;
+        averageFrameMillis = frameTotal / 1e6 / frameCount;
+        worstFrameMillis = Math.max(worstFrameMillis, lastFrameMillis);
+
+        FrameEvent event = new FrameEvent();
+        if (event.shouldCommit()) {
+            event.frameTime = frameNanos;
+            event.repaintTime = repaintNanos;
+            event.tilesRendered = tilesRendered;
+            event.commit();
+        }
+    }
+
+    // Reads the gauges on the FX thread, which owns the objects they come from
+    private void sample() {
+        undoBytes = history.getBytesHeld();
+        undoDepth = history.getUndoDepth();
+        mediaPlayers = mediaManager.getPlayerCount();
+        playingMedia = mediaManager.getPlayingCount();
+        imageCacheBytes = imageCache.getBytesHeld();
+        imageCacheEntries = imageCache.size();
+    }
+
+    private void emitBoardStats() {
+        BoardStatsEvent event = new BoardStatsEvent();
+        event.undoBytes = undoBytes;
+        event.undoDepth = undoDepth;
+        event.mediaPlayers = mediaPlayers;
+        event.playingMedia = playingMedia;
+        event.imageCacheBytes = imageCacheBytes;
+        event.imageCacheEntries = imageCacheEntries;
+        event.commit();
+    }
+
+    // Overlay text; gauges are refreshed here so the overlay never lags a second behind
+    public String describe() {
+        sample();
+        return String.format(Locale.ROOT,
+                "Frame %.1f ms (avg %.1f, worst %.1f)%n"
+                        + "Input to pixel %.1f ms (worst %.1f)%n"
+                        + "Undo %.1f MB in %d edits%n"
+                        + "Media players %d (%d playing)%n"
+                        + "Image cache %.1f MB, %d images",
+                lastFrameMillis, averageFrameMillis, worstFrameMillis,
+                lastLatencyMillis, worstLatencyMillis,
+                undoBytes / 1e6, undoDepth,
+                mediaPlayers, playingMedia,
+                imageCacheBytes / 1e6, imageCacheEntries);
+    }
+
+    @Override public double getLastFrameMillis() { return lastFrameMillis; }
+    @Override public double getAverageFrameMillis() { return averageFrameMillis; }
+    @Override public double getWorstFrameMillis() { return worstFrameMillis; }
+    @Override public double getLastInputLatencyMillis() { return lastLatencyMillis; }
+    @Override public double getWorstInputLatencyMillis() { return worstLatencyMillis; }
+    @Override public long getUndoBytes() { return undoBytes; }
+    @Override public int getUndoDepth() { return undoDepth; }
+    @Override public int getMediaPlayers() { return mediaPlayers; }
+    @Override public int getPlayingMedia() { return playingMedia; }
+    @Override public long getImageCacheBytes() { return imageCacheBytes; }
+    @Override public int getImageCacheEntries() { return imageCacheEntries; }
+
+    @Override
+    public void resetWorst() {
+        worstFrameMillis = 0;
+        worstLatencyMillis = 0;
+    }
+
+    private static void runOnFxThread(Runnable task) {
+        if (javafx.application.Platform.isFxApplicationThread()) {
+            task.run();
+        } else {
+            javafx.application.Platform.runLater(task);
+        }
+    }
+}
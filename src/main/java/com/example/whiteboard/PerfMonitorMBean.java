@@ -0,0 +1,23 @@
+package com.example.whiteboard;
+
+// JMX view of PerfMonitor; times are in milliseconds, sizes in bytes
+public interface PerfMonitorMBean {
+    boolean isEnabled();
+    void setEnabled(boolean enabled);
+
+    double getLastFrameMillis();
+    double getAverageFrameMillis();
+    double getWorstFrameMillis();
+    double getLastInputLatencyMillis();
+    double getWorstInputLatencyMillis();
+
+    long getUndoBytes();
+    int getUndoDepth();
+    int getMediaPlayers();
+    int getPlayingMedia();
+    long getImageCacheBytes();
+    int getImageCacheEntries();
+
+    // Starts a new measurement window for the worst-case figures
+    void resetWorst();
+}
@@ -0,0 +1,181 @@
+package com.example.whiteboard;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/*
+ * Region quadtree over item bounds. Each item lives in the smallest node that
+ * fully contains it, so queries only visit nodes that intersect the search
+ * area. The root doubles in size whenever an item lands outside it, which lets
+ * the board grow in any direction.
+ */
+public class QuadTree<T> {
+    private static final int MAX_ITEMS = 8;
+    private static final double MIN_NODE_SIZE = 32;
+    private static final double INITIAL_SIZE = 4096;
+
+    private final Map<T, Entry<T>> entries = new IdentityHashMap<>();
+    private Node<T> root = new Node<>(new Rect(0, 0, INITIAL_SIZE, INITIAL_SIZE));
+
+    private static class Entry<T> {
+        final T item;
+        Rect bounds;
+        Node<T> node;
+
+        Entry(T item, Rect bounds) {
+            this.item = item;
+            this.bounds = bounds;
+        }
+    }
+
+    private static class Node<T> {
+        final Rect bounds;
+        final List<Entry<T>> entries = new ArrayList<>();
+        Node<T>[] children;
+
+        Node(Rect bounds) {
+            this.bounds = bounds;
+        }
+    }
+
+    public void insert(T item, Rect bounds) {
+        if (!Double.isFinite(bounds.minX + bounds.minY + bounds.maxX + bounds.maxY)) {
+            throw new IllegalArgumentException("Bounds must be finite: " + bounds);
+        }
+        remove(item);
+        Entry<T> entry = new Entry<>(item, bounds);
+        entries.put(item, entry);
+        while (!root.bounds.contains(bounds)) {
+            grow(bounds);
+        }
+        insert(root, entry);
+    }
+
+    public boolean remove(T item) {
+        Entry<T> entry = entries.remove(item);
+        if (entry == null) return false;
+        entry.node.entries.remove(entry);
+        return true;
+    }
+
+    public void update(T item, Rect bounds) {
+        insert(item, bounds);
+    }
+
+    public boolean contains(T item) {
+        return entries.containsKey(item);
+    }
+
+    public Rect getBounds(T item) {
+        Entry<T> entry = entries.get(item);
+        return entry != null ? entry.bounds : null;
+    }
+
+    public void clear() {
+        entries.clear();
+        root = new Node<>(new Rect(0, 0, INITIAL_SIZE, INITIAL_SIZE));
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    public List<T> items() {
+        return new ArrayList<>(entries.keySet());
+    }
+
+    public List<T> query(Rect area) {
+        List<T> result = new ArrayList<>();
+        query(area, result::add);
+        return result;
+    }
+
+    // Visits every item whose bounds intersect the area
+    public void query(Rect area, Consumer<T> visitor) {
+        query(root, area, visitor);
+    }
+
+    private void query(Node<T> node, Rect area, Consumer<T> visitor) {
+        if (!node.bounds.intersects(area)) return;
+
+        for (Entry<T> entry : node.entries) {
+            if (entry.bounds.intersects(area)) visitor.accept(entry.item);
+        }
+        if (node.children != null) {
+            for (Node<T> child : node.children) {
+                query(child, area, visitor);
+            }
+        }
+    }
+
+    private void insert(Node<T> node, Entry<T> entry) {
+        while (node.children != null) {
+            Node<T> child = childContaining(node, entry.bounds);
+            if (child == null) break;
+            node = child;
+        }
+        node.entries.add(entry);
+        entry.node = node;
+
+        if (node.children == null && node.entries.size() > MAX_ITEMS
+                && node.bounds.getWidth() > MIN_NODE_SIZE) {
+            split(node);
+        }
+    }
+
+    private void split(Node<T> node) {
+        Rect b = node.bounds;
+        double midX = (b.minX + b.maxX) / 2;
+        double midY = (b.minY + b.maxY) / 2;
+        node.children = newChildren();
+        node.children[0] = new Node<>(new Rect(b.minX, b.minY, midX, midY));
+        node.children[1] = new Node<>(new Rect(midX, b.minY, b.maxX, midY));
+        node.children[2] = new Node<>(new Rect(b.minX, midY, midX, b.maxY));
+        node.children[3] = new Node<>(new Rect(midX, midY, b.maxX, b.maxY));
+
+        List<Entry<T>> current = new ArrayList<>(node.entries);
+        node.entries.clear();
+        for (Entry<T> entry : current) {
+            Node<T> child = childContaining(node, entry.bounds);
+            Node<T> target = child != null ? child : node;
+            target.entries.add(entry);
+            entry.node = target;
+        }
+    }
+
+    private Node<T> childContaining(Node<T> node, Rect bounds) {
+        for (Node<T> child : node.children) {
+            if (child.bounds.contains(bounds)) return child;
+        }
+        return null;
+    }
+
+    // Java cannot create arrays of a generic type, so the one unchecked conversion lives here
+    @SuppressWarnings({"rawtypes", "unchecked"})
+    private static <T> Node<T>[] newChildren() {
+        return new Node[4];
+    }
+
+    // Doubles the root towards the given bounds, keeping the old root as one quadrant
+    private void grow(Rect towards) {
+        Rect b = root.bounds;
+        double size = b.getWidth();
+        boolean left = towards.minX < b.minX;
+        boolean up = towards.minY < b.minY;
+        double minX = left ? b.minX - size : b.minX;
+        double minY = up ? b.minY - size : b.minY;
+
+        Node<T> grown = new Node<>(new Rect(minX, minY, minX + size * 2, minY + size * 2));
+        grown.children = newChildren();
+        int oldIndex = (left ? 1 : 0) + (up ? 2 : 0);
+        for (int i = 0; i < 4; i++) {
+            double cx = minX + (i % 2) * size;
+            double cy = minY + (i / 2) * size;
+            grown.children[i] = i == oldIndex ? root : new Node<>(new Rect(cx, cy, cx + size, cy + size));
+        }
+        root = grown;
+    }
+}
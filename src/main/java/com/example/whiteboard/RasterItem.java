@@ -0,0 +1,66 @@
+package com.example.whiteboard;
+
+import javafx.scene.canvas.GraphicsContext;
+
+// Raster content (e.g. an opened image) kept as compressed tiles
+public class RasterItem extends SceneItem {
+    private final TileSnapshot tiles;
+    private final double x, y;
+    private final double scale; // board units per pixel
+
+    public RasterItem(TileSnapshot tiles, double x, double y) {
+        this(tiles, x, y, 1);
+    }
+
+    public RasterItem(TileSnapshot tiles, double x, double y, double scale) {
+        this.tiles = tiles;
+        this.x = x;
+        this.y = y;
+        this.scale = scale;
+    }
+
+    public TileSnapshot getTiles() { return tiles; }
+    public double getX() { return x; }
+    public double getY() { return y; }
+    public double getScale() { return scale; }
+
+    @Override
+    public Rect getBounds() {
+        return Rect.ofSize(x, y, tiles.getWidth() * scale, tiles.getHeight() * scale);
+    }
+
+    @Override
+    public void draw(GraphicsContext gc) {
+        drawTiles(gc, null);
+    }
+
+    // Only the stored tiles under area are inflated
+    @Override
+    public void drawRegion(GraphicsContext gc, Rect area, double unitsPerPixel) {
+        drawTiles(gc, toPixels(area));
+    }
+
+    // Area in board units as snapshot pixels
+    public Rect toPixels(Rect area) {
+        return new Rect((area.minX - x) / scale, (area.minY - y) / scale,
+                (area.maxX - x) / scale, (area.maxY - y) / scale);
+    }
+
+    private void drawTiles(GraphicsContext gc, Rect region) {
+        gc.save();
+        gc.translate(x, y);
+        gc.scale(scale, scale);
+        tiles.draw(gc, 0, 0, region);
+        gc.restore();
+    }
+
+    @Override
+    public Layer getLayer() {
+        return Layer.BACKGROUND;
+    }
+
+    @Override
+    public long getByteSize() {
+        return tiles.getByteSize();
+    }
+}
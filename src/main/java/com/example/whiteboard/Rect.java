@@ -0,0 +1,51 @@
+package com.example.whiteboard;
+
+// Immutable axis-aligned rectangle in board coordinates
+public final class Rect {
+    public final double minX, minY, maxX, maxY;
+
+    public Rect(double minX, double minY, double maxX, double maxY) {
+        this.minX = minX;
+        this.minY = minY;
+        this.maxX = maxX;
+        this.maxY = maxY;
+    }
+
+    public static Rect ofSize(double x, double y, double width, double height) {
+        return new Rect(x, y, x + width, y + height);
+    }
+
+    public static Rect ofPoint(double x, double y) {
+        return new Rect(x, y, x, y);
+    }
+
+    public double getWidth() { return maxX - minX; }
+    public double getHeight() { return maxY - minY; }
+
+    public boolean intersects(Rect other) {
+        return other.minX <= maxX && other.maxX >= minX && other.minY <= maxY && other.maxY >= minY;
+    }
+
+    public boolean contains(Rect other) {
+        return other.minX >= minX && other.maxX <= maxX && other.minY >= minY && other.maxY <= maxY;
+    }
+
+    public boolean contains(double x, double y) {
+        return x >= minX && x <= maxX && y >= minY && y <= maxY;
+    }
+
+    public Rect union(Rect other) {
+        if (other == null) return this;
+        return new Rect(Math.min(minX, other.minX), Math.min(minY, other.minY),
+                Math.max(maxX, other.maxX), Math.max(maxY, other.maxY));
+    }
+
+    public Rect expand(double amount) {
+        return new Rect(minX - amount, minY - amount, maxX + amount, maxY + amount);
+    }
+
+    @Override
+    public String toString() {
+        return "Rect[" + minX + ", " + minY + ", " + maxX + ", " + maxY + "]";
+    }
+}
@@ -0,0 +1,93 @@
+package com.example.whiteboard;
+
+import javafx.application.Platform;
+import javafx.embed.swing.SwingFXUtils;
+import javafx.scene.canvas.Canvas;
+import javafx.scene.canvas.GraphicsContext;
+import javafx.scene.paint.Color;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.Locale;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
+/*
+ * Renders a board both on a JavaFX canvas, the way the board view's tiles
+ * draw it, and with the headless renderer, and reports how many pixels differ.
+ * Needs a desktop session for the canvas. Media is left out: the canvas never
+ * draws it, since it lives in nodes above the canvas.
+ *
+ *   --compare <board> [--size <max pixels>] [--tolerance <0-255>] [--max <fraction>]
+ */
+public class RenderComparison {
+    // Returns the process exit code: 0 if the renderers agree, 1 if not or on failure, 2 on bad arguments
+    public static int run(String[] args) {
+        if (args.length < 2 || !args[0].equals("--compare")) return usage();
+        int maxSize = 2048, tolerance = 32;
+        double maxDifference = 0.02;
+        try {
+            for (int i = 2; i < args.length; i += 2) {
+                if (i + 1 >= args.length) return usage();
+                switch (args[i]) {
+                    case "--size": maxSize = Integer.parseInt(args[i + 1]); break;
+                    case "--tolerance": tolerance = Integer.parseInt(args[i + 1]); break;
+                    case "--max": maxDifference = Double.parseDouble(args[i + 1]); break;
+                    default: return usage();
+                }
+            }
+            if (maxSize < 1 || tolerance < 0 || tolerance > 255) return usage();
+
+            SceneModel model = new SceneModel();
+            for (SceneItem item : BoardFile.read(Paths.get(args[1])).items) model.add(item);
+            Rect area = null;
+            for (SceneItem item : model.getItems()) area = item.getBounds().union(area);
+            if (area == null) area = Rect.ofSize(0, 0, 1, 1);
+            double scale = Math.min(1, maxSize / Math.max(area.getWidth(), area.getHeight()));
+
+            BufferedImage headless = new HeadlessRenderer().render(model, area, scale);
+            BufferedImage canvas = renderCanvas(model, area, scale, headless.getWidth(), headless.getHeight());
+            double difference = HeadlessRenderer.difference(canvas, headless, tolerance);
+            System.out.printf(Locale.ROOT, "%.3f%% of pixels differ by more than %d%n", difference * 100, tolerance);
+            return difference <= maxDifference ? 0 : 1;
+        } catch (NumberFormatException e) {
+            return usage();
+        } catch (IOException | ExecutionException | InterruptedException | RuntimeException e) {
+            System.err.println("Comparison failed: " + e.getMessage());
+            return 1;
+        }
+    }
+
+    // Items of each layer in z-order, drawn as TileCache draws them, on white
+    private static BufferedImage renderCanvas(SceneModel model, Rect area, double scale, int width, int height)
+            throws ExecutionException, InterruptedException {
+        CompletableFuture<BufferedImage> result = new CompletableFuture<>();
+        Platform.startup(() -> {
+            try {
+                Canvas canvas = new Canvas(width, height);
+                GraphicsContext gc = canvas.getGraphicsContext2D();
+                gc.setFill(Color.WHITE);
+                gc.fillRect(0, 0, width, height);
+                gc.scale(scale, scale);
+                gc.translate(-area.minX, -area.minY);
+                for (Layer layer : Layer.values()) {
+                    for (SceneItem item : model.query(area, layer)) item.drawRegion(gc, area, 1 / scale);
+                }
+                result.complete(SwingFXUtils.fromFXImage(canvas.snapshot(null, null), null));
+            } catch (RuntimeException e) {
+                result.completeExceptionally(e);
+            }
+        });
+        try {
+            return result.get();
+        } finally {
+            Platform.exit();
+        }
+    }
+
+    private static int usage() {
+        System.err.println("Usage: --compare <board> [--size <max pixels>] [--tolerance <0-255>] [--max <fraction>]");
+        return 2;
+    }
+}
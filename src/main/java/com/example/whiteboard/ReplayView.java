@@ -0,0 +1,192 @@
+package com.example.whiteboard;
+
+import javafx.animation.AnimationTimer;
+import javafx.geometry.Insets;
+import javafx.geometry.Pos;
+import javafx.scene.Group;
+import javafx.scene.Node;
+import javafx.scene.canvas.Canvas;
+import javafx.scene.control.Button;
+import javafx.scene.control.ComboBox;
+import javafx.scene.control.Label;
+import javafx.scene.control.Slider;
+import javafx.scene.image.ImageView;
+import javafx.scene.input.MouseButton;
+import javafx.scene.layout.BorderPane;
+import javafx.scene.layout.HBox;
+import javafx.scene.layout.Pane;
+import javafx.scene.layout.Priority;
+import javafx.scene.shape.Rectangle;
+import javafx.scene.transform.Scale;
+import javafx.scene.transform.Translate;
+
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/*
+ * Overlay that plays a session recording back over the board, with its own
+ * board view of the replay model. The timeline slider scrubs to any moment;
+ * playback advances the replay time by the wall-clock time of each pulse times
+ * the chosen speed. Images are shown as image views over the canvas, the way
+ * the board shows them; videos and audio are not replayed.
+ */
+public class ReplayView {
+    private static final String[] SPEEDS = {"0.5x", "1x", "2x", "4x", "8x", "16x", "64x"};
+
+    private final SessionReplay replay;
+    private final BorderPane root = new BorderPane();
+    private final BoardView view;
+    private final ImageCache imageCache;
+    private final Group mediaLayer = new Group();
+    private final Map<Long, ImageView> images = new HashMap<>();
+    private final Slider timeline;
+    private final Label timeLabel = new Label();
+    private final Button playBtn = new Button("Play");
+    private final AnimationTimer player;
+    private double speed = 1;
+    private double time;     // milliseconds into the session
+    private long lastPulse;
+    private boolean updatingTimeline;
+    private double panLastX, panLastY;
+
+    public ReplayView(SessionReplay replay, Viewport startView, PerfMonitor monitor, ImageCache imageCache,
+                      Node... extraControls) {
+        this.replay = replay;
+        this.imageCache = imageCache;
+        root.getStyleClass().add("replay-view");
+
+        Canvas canvas = new Canvas();
+        Pane canvasPane = new Pane(canvas, mediaLayer);
+        canvasPane.setStyle("-fx-background-color: white;");
+        canvas.widthProperty().bind(canvasPane.widthProperty());
+        canvas.heightProperty().bind(canvasPane.heightProperty());
+        Rectangle clip = new Rectangle();
+        clip.widthProperty().bind(canvasPane.widthProperty());
+        clip.heightProperty().bind(canvasPane.heightProperty());
+        canvasPane.setClip(clip);
+        view = new BoardView(canvas, replay.getModel(), monitor);
+
+        // Images are laid out in board coordinates and follow pan and zoom
+        Scale mediaScale = new Scale();
+        Translate mediaTranslate = new Translate();
+        mediaLayer.getTransforms().addAll(mediaScale, mediaTranslate);
+        mediaLayer.setMouseTransparent(true);
+        view.getViewport().addListener(() -> {
+            Viewport viewport = view.getViewport();
+            mediaScale.setX(viewport.getScale());
+            mediaScale.setY(viewport.getScale());
+            mediaTranslate.setX(-viewport.getOffsetX());
+            mediaTranslate.setY(-viewport.getOffsetY());
+        });
+        view.getViewport().copyFrom(startView);
+
+        // The replay can be panned and zoomed on its own, like the board
+        canvas.setOnScroll(e -> view.getViewport().zoomAt(e.getX(), e.getY(), Math.exp(e.getDeltaY() * 0.002)));
+        canvas.setOnMousePressed(e -> {
+            panLastX = e.getX();
+            panLastY = e.getY();
+        });
+        canvas.setOnMouseDragged(e -> {
+            if (e.getButton() == MouseButton.NONE) return;
+            view.getViewport().panBy(e.getX() - panLastX, e.getY() - panLastY);
+            panLastX = e.getX();
+            panLastY = e.getY();
+        });
+
+        timeline = new Slider(0, Math.max(1, replay.getDuration()), 0);
+        HBox.setHgrow(timeline, Priority.ALWAYS);
+        timeline.valueProperty().addListener((obs, oldVal, newVal) -> {
+            if (!updatingTimeline) seek(newVal.doubleValue());
+        });
+
+        ComboBox<String> speedBox = new ComboBox<>();
+        speedBox.getItems().addAll(SPEEDS);
+        speedBox.setValue("1x");
+        speedBox.setOnAction(e -> speed = Double.parseDouble(speedBox.getValue().replace("x", "")));
+
+        playBtn.setOnAction(e -> setPlaying(playBtn.getText().equals("Play")));
+
+        HBox controls = new HBox(10, playBtn, speedBox, timeline, timeLabel);
+        controls.getChildren().addAll(extraControls);
+        controls.setAlignment(Pos.CENTER_LEFT);
+        controls.setPadding(new Insets(5));
+        controls.getStyleClass().add("replay-controls");
+
+        root.setCenter(canvasPane);
+        root.setBottom(controls);
+
+        player = new AnimationTimer() {
+            @Override
+            public void handle(long now) {
+                if (lastPulse != 0) {
+                    double next = time + (now - lastPulse) / 1e6 * speed;
+                    if (next >= replay.getDuration()) {
+                        next = replay.getDuration();
+                        setPlaying(false);
+                    }
+                    seek(next);
+                }
+                lastPulse = now;
+            }
+        };
+        seek(0);
+    }
+
+    public Node getNode() { return root; }
+
+    public void setPlaying(boolean playing) {
+        playBtn.setText(playing ? "Pause" : "Play");
+        if (playing) {
+            if (time >= replay.getDuration()) seek(0);
+            lastPulse = 0;
+            player.start();
+        } else {
+            player.stop();
+        }
+    }
+
+    public void close() {
+        player.stop();
+    }
+
+    private void seek(double millis) {
+        time = millis;
+        replay.seek((long) millis);
+        updatingTimeline = true;
+        timeline.setValue(millis);
+        updatingTimeline = false;
+        timeLabel.setText(format(millis) + " / " + format(replay.getDuration()));
+        updateImages();
+    }
+
+    // Matches the image views to the images on the replayed board
+    private void updateImages() {
+        Map<Long, BoardFile.MediaRecord> media = replay.getMedia();
+        images.entrySet().removeIf(entry -> {
+            if (media.containsKey(entry.getKey())) return false;
+            mediaLayer.getChildren().remove(entry.getValue());
+            return true;
+        });
+        for (Map.Entry<Long, BoardFile.MediaRecord> entry : media.entrySet()) {
+            BoardFile.MediaRecord record = entry.getValue();
+            if (!record.type.equals("image")) continue;
+            ImageView image = images.get(entry.getKey());
+            if (image == null) {
+                double pixelWidth = WhiteboardUI.IMAGE_WIDTH * view.getViewport().getScale();
+                image = new ImageView(imageCache.load(record.source, pixelWidth));
+                image.setPreserveRatio(true);
+                image.setFitWidth(WhiteboardUI.IMAGE_WIDTH);
+                images.put(entry.getKey(), image);
+                mediaLayer.getChildren().add(image);
+            }
+            image.setLayoutX(record.x);
+            image.setLayoutY(record.y);
+        }
+    }
+
+    private static String format(double millis) {
+        long seconds = (long) (millis / 1000);
+        return String.format(Locale.ROOT, "%d:%02d:%02d", seconds / 3600, seconds / 60 % 60, seconds % 60);
+    }
+}
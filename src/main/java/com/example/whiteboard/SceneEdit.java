@@ -0,0 +1,51 @@
+package com.example.whiteboard;
+
+import java.util.List;
+
+// An undoable change to the scene model: some items removed, others added
+public class SceneEdit {
+    private final List<SceneItem> removed;
+    private final List<SceneItem> added;
+    private final Rect bounds;
+    private final long byteSize;
+
+    public SceneEdit(List<SceneItem> removed, List<SceneItem> added) {
+        this.removed = List.copyOf(removed);
+        this.added = List.copyOf(added);
+
+        Rect union = null;
+        long size = 64;
+        for (SceneItem item : this.removed) {
+            union = item.getBounds().union(union);
+            size += item.getByteSize();
+        }
+        for (SceneItem item : this.added) {
+            union = item.getBounds().union(union);
+            size += item.getByteSize();
+        }
+        this.bounds = union;
+        this.byteSize = size;
+    }
+
+    public static SceneEdit add(SceneItem item) {
+        return new SceneEdit(List.of(), List.of(item));
+    }
+
+    public void apply(SceneModel model) {
+        for (SceneItem item : removed) model.remove(item);
+        for (SceneItem item : added) model.add(item);
+    }
+
+    public void revert(SceneModel model) {
+        for (SceneItem item : added) model.remove(item);
+        for (SceneItem item : removed) model.add(item);
+    }
+
+    public List<SceneItem> getRemoved() { return removed; }
+    public List<SceneItem> getAdded() { return added; }
+
+    // Area that needs redrawing after applying or reverting, null if nothing changed
+    public Rect getBounds() { return bounds; }
+
+    public long getByteSize() { return byteSize; }
+}
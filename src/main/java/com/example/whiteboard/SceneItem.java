@@ -0,0 +1,48 @@
+package com.example.whiteboard;
+
+import javafx.scene.canvas.GraphicsContext;
+
+// Something drawn on the board that is kept in the scene model
+public abstract class SceneItem {
+    private long order; // z-order assigned by the model, 0 until first added
+    private SceneModel model;
+
+    public abstract Rect getBounds();
+
+    public abstract void draw(GraphicsContext gc);
+
+    // Cheaper drawing for zoomed-out views; detail below tolerance world units may be dropped
+    public void drawSimplified(GraphicsContext gc, double tolerance) {
+        draw(gc);
+    }
+
+    // Draws the part of the item inside area at unitsPerPixel world units per output pixel
+    public void drawRegion(GraphicsContext gc, Rect area, double unitsPerPixel) {
+        if (unitsPerPixel > 1) {
+            drawSimplified(gc, unitsPerPixel / 2);
+        } else {
+            draw(gc);
+        }
+    }
+
+    // Layer the item is drawn in; strokes are ink, subclasses pick their own
+    public Layer getLayer() {
+        return Layer.INK;
+    }
+
+    // Approximate memory held by this item, used for the history budget
+    public long getByteSize() {
+        return 64;
+    }
+
+    public long getOrder() { return order; }
+
+    void setOrder(long order) { this.order = order; }
+
+    void setModel(SceneModel model) { this.model = model; }
+
+    // Tells the model that the item's appearance inside area changed without an edit
+    protected void fireChanged(Rect area) {
+        if (model != null) model.itemChanged(this, area);
+    }
+}
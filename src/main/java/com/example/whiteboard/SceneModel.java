@@ -0,0 +1,218 @@
+package com.example.whiteboard;
+
+import javafx.geometry.Bounds;
+import javafx.scene.canvas.GraphicsContext;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/*
+ * Retained model of everything on the board. Drawn items (one quadtree per
+ * layer) and media elements are each kept in a quadtree so hit testing and
+ * partial redraw only touch the items near the area of interest.
+ */
+public class SceneModel {
+    public static final int SITE_BITS = 8;
+    public static final int MAX_SITE = (1 << SITE_BITS) - 1;
+
+    private static final Comparator<SceneItem> Z_ORDER = Comparator.comparingLong(SceneItem::getOrder);
+
+    private final Map<Layer, QuadTree<SceneItem>> layers = new EnumMap<>(Layer.class);
+    private final QuadTree<WhiteboardController.MediaElement> media = new QuadTree<>();
+    private final Map<WhiteboardController.MediaElement, Long> mediaOrder = new IdentityHashMap<>();
+    private final List<Listener> listeners = new ArrayList<>();
+    private long nextSequence = 1;
+    private int site;
+
+    public SceneModel() {
+        for (Layer layer : Layer.values()) layers.put(layer, new QuadTree<>());
+    }
+
+    // Notified of every change to the model, e.g. to journal it
+    public interface Listener {
+        default void itemAdded(SceneItem item) {}
+        default void itemRemoved(SceneItem item) {}
+        default void itemChanged(SceneItem item, Rect area) {}
+        default void mediaAdded(WhiteboardController.MediaElement element) {}
+        default void mediaMoved(WhiteboardController.MediaElement element) {}
+        default void mediaRemoved(WhiteboardController.MediaElement element) {}
+    }
+
+    public void addListener(Listener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(Listener listener) {
+        listeners.remove(listener);
+    }
+
+    /*
+     * Ids double as z-order: a sequence number above every id seen so far,
+     * with the site in the low bits. Sites are handed out by the collaboration
+     * relay, so ids made by different participants never collide and new
+     * items always land on top of what was already there.
+     */
+    public void setSite(int site) {
+        if (site < 0 || site > MAX_SITE) throw new IllegalArgumentException("Site out of range: " + site);
+        this.site = site;
+    }
+
+    private long nextId() {
+        return nextSequence++ << SITE_BITS | site;
+    }
+
+    private void observeId(long id) {
+        nextSequence = Math.max(nextSequence, (id >>> SITE_BITS) + 1);
+    }
+
+    // Items keep their z-order when re-added by undo or loaded from a file
+    public void add(SceneItem item) {
+        if (item.getOrder() == 0) item.setOrder(nextId());
+        observeId(item.getOrder());
+        layers.get(item.getLayer()).insert(item, item.getBounds());
+        item.setModel(this);
+        for (Listener listener : listeners) listener.itemAdded(item);
+    }
+
+    public boolean remove(SceneItem item) {
+        boolean removed = layers.get(item.getLayer()).remove(item);
+        if (removed) {
+            item.setModel(null);
+            for (Listener listener : listeners) listener.itemRemoved(item);
+        }
+        return removed;
+    }
+
+    void itemChanged(SceneItem item, Rect area) {
+        if (!layers.get(item.getLayer()).contains(item)) return;
+        for (Listener listener : listeners) listener.itemChanged(item, area);
+    }
+
+    public boolean contains(SceneItem item) {
+        return layers.get(item.getLayer()).contains(item);
+    }
+
+    public void clear() {
+        for (SceneItem item : getItems()) remove(item);
+    }
+
+    public int size() {
+        int size = 0;
+        for (QuadTree<SceneItem> items : layers.values()) size += items.size();
+        return size;
+    }
+
+    // All items in z-order
+    public List<SceneItem> getItems() {
+        List<SceneItem> result = new ArrayList<>();
+        for (QuadTree<SceneItem> items : layers.values()) result.addAll(items.items());
+        result.sort(Z_ORDER);
+        return result;
+    }
+
+    // Items intersecting the area, in layer order and z-order within each layer
+    public List<SceneItem> query(Rect area) {
+        List<SceneItem> result = new ArrayList<>();
+        for (Layer layer : layers.keySet()) result.addAll(query(area, layer));
+        return result;
+    }
+
+    // Items of one layer intersecting the area, in z-order
+    public List<SceneItem> query(Rect area, Layer layer) {
+        List<SceneItem> result = layers.get(layer).query(area);
+        result.sort(Z_ORDER);
+        return result;
+    }
+
+    // Draws the items intersecting the area; the caller is responsible for clipping
+    public void draw(GraphicsContext gc, Rect area) {
+        for (SceneItem item : query(area)) {
+            item.draw(gc);
+        }
+    }
+
+    public void addMedia(WhiteboardController.MediaElement element) {
+        addMedia(element, 0);
+    }
+
+    // Registers the element under a known id, e.g. one a collaborator chose; 0 picks a new one
+    public void addMedia(WhiteboardController.MediaElement element, long id) {
+        if (id == 0) id = nextId();
+        observeId(id);
+        mediaOrder.put(element, id);
+        media.insert(element, toRect(element.node.getBoundsInParent()));
+        for (Listener listener : listeners) listener.mediaAdded(element);
+    }
+
+    // Called once a move is finished; the index itself follows every bounds change
+    public void mediaMoved(WhiteboardController.MediaElement element) {
+        updateMedia(element);
+        if (media.contains(element)) {
+            for (Listener listener : listeners) listener.mediaMoved(element);
+        }
+    }
+
+    public long getMediaId(WhiteboardController.MediaElement element) {
+        Long order = mediaOrder.get(element);
+        return order != null ? order : 0;
+    }
+
+    public WhiteboardController.MediaElement getMedia(long id) {
+        for (Map.Entry<WhiteboardController.MediaElement, Long> entry : mediaOrder.entrySet()) {
+            if (entry.getValue() == id) return entry.getKey();
+        }
+        return null;
+    }
+
+    public void updateMedia(WhiteboardController.MediaElement element) {
+        if (media.contains(element)) {
+            media.update(element, toRect(element.node.getBoundsInParent()));
+        }
+    }
+
+    public boolean removeMedia(WhiteboardController.MediaElement element) {
+        boolean removed = media.remove(element);
+        if (removed) {
+            for (Listener listener : listeners) listener.mediaRemoved(element);
+        }
+        mediaOrder.remove(element);
+        return removed;
+    }
+
+    public void clearMedia() {
+        for (WhiteboardController.MediaElement element : getMediaElements()) removeMedia(element);
+    }
+
+    public List<WhiteboardController.MediaElement> getMediaElements() {
+        List<WhiteboardController.MediaElement> result = media.items();
+        result.sort(Comparator.comparingLong(mediaOrder::get));
+        return result;
+    }
+
+    // Media elements intersecting the area, in no particular order
+    public List<WhiteboardController.MediaElement> queryMedia(Rect area) {
+        return media.query(area);
+    }
+
+    // Topmost media element under the point, or null
+    public WhiteboardController.MediaElement mediaAt(double x, double y) {
+        WhiteboardController.MediaElement hit = null;
+        long hitOrder = -1;
+        for (WhiteboardController.MediaElement element : media.query(Rect.ofPoint(x, y))) {
+            long order = mediaOrder.get(element);
+            if (order > hitOrder && element.node.getBoundsInParent().contains(x, y)) {
+                hit = element;
+                hitOrder = order;
+            }
+        }
+        return hit;
+    }
+
+    private static Rect toRect(Bounds bounds) {
+        return new Rect(bounds.getMinX(), bounds.getMinY(), bounds.getMaxX(), bounds.getMaxY());
+    }
+}
@@ -0,0 +1,380 @@
+package com.example.whiteboard;
+
+import javafx.geometry.Bounds;
+import javafx.scene.SnapshotParameters;
+import javafx.scene.canvas.Canvas;
+import javafx.scene.canvas.GraphicsContext;
+import javafx.scene.image.Image;
+import javafx.scene.paint.Color;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/*
+ * Items and media picked with the lasso, which can then be moved, scaled
+ * (corner handle) or rotated (handle above the top edge) as a group. Only
+ * the items the layer quadtrees return for the lasso's bounds are tested.
+ *
+ * When a transform starts, the selected items are drawn once into a cached
+ * bitmap and taken off the board; while dragging, only that bitmap is drawn,
+ * transformed, on an overlay canvas above the board, so the cost of a frame
+ * does not depend on how many items are selected. The transformed items are
+ * built and put back once, on release, as a single edit for the history.
+ * Strokes take the full transform; text, raster and image items keep upright
+ * and are moved and scaled about their centres, large images and media
+ * elements are only moved.
+ */
+public class Selection {
+    private static final int MAX_CACHE_SIZE = 4096;  // pixels along the longer side of the bitmap
+    private static final double HANDLE_SIZE = 8;     // screen pixels
+    private static final double ROTATE_OFFSET = 24;  // screen pixels above the top edge
+    private static final double MIN_LASSO_STEP = 2;  // screen pixels between lasso points
+    private static final int STROKE_SAMPLES = 8;     // points of a stroke tested against the lasso
+
+    private enum Mode { NONE, LASSO, MOVE, SCALE, ROTATE }
+
+    private final SceneModel model;
+    private final BoardView view;
+    private final Viewport viewport;
+    private final List<SceneItem> items = new ArrayList<>();
+    private final List<WhiteboardController.MediaElement> media = new ArrayList<>();
+    private GraphicsContext overlay;
+    private Rect bounds;     // of everything selected
+    private Rect itemBounds; // of the selected items alone, where the cached bitmap goes
+    private double[] lasso = new double[128]; // board coordinates
+    private int lassoCount;
+    private Mode mode = Mode.NONE;
+    private double anchorX, anchorY, centerX, centerY;
+    private double moveX, moveY, factor = 1, angle;
+    private double[] mediaStarts = new double[0]; // layout position of each media element
+    private Image cache;
+    private boolean overlayShown;
+
+    public Selection(SceneModel model, BoardView view) {
+        this.model = model;
+        this.view = view;
+        this.viewport = view.getViewport();
+        viewport.addListener(this::redraw);
+    }
+
+    // Transparent canvas over the board for the lasso, outline and dragged bitmap
+    public void setOverlay(GraphicsContext overlay) {
+        this.overlay = overlay;
+    }
+
+    public boolean isEmpty() { return items.isEmpty() && media.isEmpty(); }
+    public List<SceneItem> getItems() { return List.copyOf(items); }
+
+    public void clear() {
+        if (mode != Mode.NONE && mode != Mode.LASSO) cancelTransform();
+        items.clear();
+        media.clear();
+        bounds = itemBounds = null;
+        mode = Mode.NONE;
+        redraw();
+    }
+
+    // Screen coordinates: starts a transform on the selection or its handles, otherwise a new lasso
+    public void press(double x, double y) {
+        mode = bounds != null ? hitTest(x, y) : Mode.NONE;
+        double worldX = viewport.toWorldX(x), worldY = viewport.toWorldY(y);
+        if (mode == Mode.NONE) {
+            clear();
+            mode = Mode.LASSO;
+            lassoCount = 0;
+            addLassoPoint(worldX, worldY);
+            return;
+        }
+        anchorX = worldX;
+        anchorY = worldY;
+        startTransform();
+    }
+
+    public void drag(double x, double y) {
+        double worldX = viewport.toWorldX(x), worldY = viewport.toWorldY(y);
+        switch (mode) {
+            case LASSO:
+                double lastX = lasso[lassoCount * 2 - 2], lastY = lasso[lassoCount * 2 - 1];
+                if (Math.hypot(worldX - lastX, worldY - lastY) * viewport.getScale() < MIN_LASSO_STEP) return;
+                addLassoPoint(worldX, worldY);
+                break;
+            case MOVE:
+                moveX = worldX - anchorX;
+                moveY = worldY - anchorY;
+                break;
+            case SCALE:
+                double from = Math.hypot(anchorX - centerX, anchorY - centerY);
+                factor = Math.max(0.05, Math.hypot(worldX - centerX, worldY - centerY) / Math.max(from, 1e-9));
+                break;
+            case ROTATE:
+                angle = Math.atan2(worldY - centerY, worldX - centerX) - Math.atan2(anchorY - centerY, anchorX - centerX);
+                break;
+            default:
+                return;
+        }
+        if (mode != Mode.LASSO) moveMedia();
+        redraw();
+    }
+
+    // Finishes the lasso or the transform; returns the edit already applied to the model, or null
+    public SceneEdit release() {
+        Mode finished = mode;
+        mode = Mode.NONE;
+        if (finished == Mode.LASSO) {
+            select();
+            redraw();
+            return null;
+        }
+        if (finished == Mode.NONE) return null;
+
+        cache = null;
+        for (WhiteboardController.MediaElement element : media) model.mediaMoved(element);
+        boolean unchanged = moveX == 0 && moveY == 0 && factor == 1 && angle == 0;
+        List<SceneItem> transformed = new ArrayList<>(items.size());
+        for (SceneItem item : items) transformed.add(unchanged ? item : transform(item));
+        SceneEdit edit = new SceneEdit(List.of(), transformed);
+        edit.apply(model);
+
+        List<SceneItem> originals = new ArrayList<>(items);
+        items.clear();
+        items.addAll(transformed);
+        updateBounds();
+        redraw();
+        return unchanged ? null : new SceneEdit(originals, transformed);
+    }
+
+    // Puts the items and media back where they were, e.g. when undo interrupts a drag
+    private void cancelTransform() {
+        cache = null;
+        new SceneEdit(List.of(), items).apply(model);
+        for (int i = 0; i < media.size(); i++) {
+            media.get(i).node.setLayoutX(mediaStarts[i * 2]);
+            media.get(i).node.setLayoutY(mediaStarts[i * 2 + 1]);
+            model.mediaMoved(media.get(i));
+        }
+    }
+
+    private Mode hitTest(double x, double y) {
+        double right = viewport.toScreenX(bounds.maxX), bottom = viewport.toScreenY(bounds.maxY);
+        double middle = viewport.toScreenX((bounds.minX + bounds.maxX) / 2);
+        double top = viewport.toScreenY(bounds.minY);
+        if (Math.abs(x - right) <= HANDLE_SIZE && Math.abs(y - bottom) <= HANDLE_SIZE) return Mode.SCALE;
+        if (Math.hypot(x - middle, y - (top - ROTATE_OFFSET)) <= HANDLE_SIZE) return Mode.ROTATE;
+        return bounds.contains(viewport.toWorldX(x), viewport.toWorldY(y)) ? Mode.MOVE : Mode.NONE;
+    }
+
+    private void addLassoPoint(double x, double y) {
+        if (lassoCount * 2 == lasso.length) lasso = Arrays.copyOf(lasso, lasso.length * 2);
+        lasso[lassoCount * 2] = x;
+        lasso[lassoCount * 2 + 1] = y;
+        lassoCount++;
+    }
+
+    // Items of the visible layers, in drawing order, and media elements mostly inside the lasso
+    private void select() {
+        if (lassoCount < 3) return;
+        Rect area = null;
+        for (int i = 0; i < lassoCount; i++) area = Rect.ofPoint(lasso[i * 2], lasso[i * 2 + 1]).union(area);
+        for (Layer layer : view.getLayerOrder()) {
+            if (!view.isLayerVisible(layer)) continue;
+            for (SceneItem item : model.query(area, layer)) {
+                if (inLasso(item)) items.add(item);
+            }
+        }
+        for (WhiteboardController.MediaElement element : model.queryMedia(area)) {
+            Bounds node = element.node.getBoundsInParent();
+            if (!element.isShown()) continue;
+            if (insideLasso(node.getCenterX(), node.getCenterY())) media.add(element);
+        }
+        updateBounds();
+    }
+
+    // Strokes count as inside when most of a few sample points are; other items by their centre
+    private boolean inLasso(SceneItem item) {
+        if (item instanceof Stroke) {
+            Stroke stroke = (Stroke) item;
+            int count = stroke.getPointCount();
+            int step = Math.max(1, count / STROKE_SAMPLES);
+            int samples = 0, inside = 0;
+            for (int i = 0; i < count; i += step) {
+                samples++;
+                if (insideLasso(stroke.getX(i), stroke.getY(i))) inside++;
+            }
+            return inside * 2 > samples;
+        }
+        Rect itemBounds = item.getBounds();
+        return insideLasso((itemBounds.minX + itemBounds.maxX) / 2, (itemBounds.minY + itemBounds.maxY) / 2);
+    }
+
+    // Even-odd rule against the lasso, closed from its last point back to the first
+    private boolean insideLasso(double x, double y) {
+        boolean inside = false;
+        for (int i = 0, j = lassoCount - 1; i < lassoCount; j = i++) {
+            double xi = lasso[i * 2], yi = lasso[i * 2 + 1];
+            double xj = lasso[j * 2], yj = lasso[j * 2 + 1];
+            if ((yi > y) != (yj > y) && x < (xj - xi) * (y - yi) / (yj - yi) + xi) inside = !inside;
+        }
+        return inside;
+    }
+
+    private void updateBounds() {
+        itemBounds = null;
+        for (SceneItem item : items) itemBounds = item.getBounds().union(itemBounds);
+        bounds = itemBounds;
+        for (WhiteboardController.MediaElement element : media) {
+            Bounds node = element.node.getBoundsInParent();
+            bounds = new Rect(node.getMinX(), node.getMinY(), node.getMaxX(), node.getMaxY()).union(bounds);
+        }
+    }
+
+    // Caches the selected items as one bitmap, then takes them off the board until release
+    private void startTransform() {
+        items.removeIf(item -> !model.contains(item));
+        media.removeIf(element -> model.getMediaId(element) == 0);
+        updateBounds();
+        if (bounds == null) {
+            mode = Mode.NONE;
+            return;
+        }
+        centerX = (bounds.minX + bounds.maxX) / 2;
+        centerY = (bounds.minY + bounds.maxY) / 2;
+        moveX = moveY = angle = 0;
+        factor = 1;
+        mediaStarts = new double[media.size() * 2];
+        for (int i = 0; i < media.size(); i++) {
+            mediaStarts[i * 2] = media.get(i).node.getLayoutX();
+            mediaStarts[i * 2 + 1] = media.get(i).node.getLayoutY();
+        }
+
+        cache = itemBounds != null ? render(itemBounds) : null;
+        new SceneEdit(items, List.of()).apply(model);
+        redraw();
+    }
+
+    private Image render(Rect area) {
+        double scale = viewport.getScale();
+        double longest = Math.max(area.getWidth(), area.getHeight()) * scale;
+        if (longest > MAX_CACHE_SIZE) scale *= MAX_CACHE_SIZE / longest;
+        Canvas canvas = new Canvas(Math.max(1, Math.ceil(area.getWidth() * scale)), Math.max(1, Math.ceil(area.getHeight() * scale)));
+        GraphicsContext gc = canvas.getGraphicsContext2D();
+        gc.scale(scale, scale);
+        gc.translate(-area.minX, -area.minY);
+        for (SceneItem item : items) item.drawRegion(gc, area, 1 / scale);
+        SnapshotParameters params = new SnapshotParameters();
+        params.setFill(Color.TRANSPARENT);
+        return canvas.snapshot(params, null);
+    }
+
+    private double transformX(double x, double y) {
+        return centerX + moveX + factor * (Math.cos(angle) * (x - centerX) - Math.sin(angle) * (y - centerY));
+    }
+
+    private double transformY(double x, double y) {
+        return centerY + moveY + factor * (Math.sin(angle) * (x - centerX) + Math.cos(angle) * (y - centerY));
+    }
+
+    // Media keeps its size; its centre follows the transform
+    private void moveMedia() {
+        for (int i = 0; i < media.size(); i++) {
+            javafx.scene.Node node = media.get(i).node;
+            Bounds box = node.getBoundsInParent();
+            double offsetX = box.getWidth() / 2 + box.getMinX() - node.getLayoutX();
+            double offsetY = box.getHeight() / 2 + box.getMinY() - node.getLayoutY();
+            double x = mediaStarts[i * 2] + offsetX, y = mediaStarts[i * 2 + 1] + offsetY;
+            node.setLayoutX(transformX(x, y) - offsetX);
+            node.setLayoutY(transformY(x, y) - offsetY);
+        }
+    }
+
+    // A new item in the same place in the z-order; unknown item types are put back unchanged
+    private SceneItem transform(SceneItem item) {
+        SceneItem result = item;
+        Rect box = item.getBounds();
+        double cx = (box.minX + box.maxX) / 2, cy = (box.minY + box.maxY) / 2;
+        double newX = transformX(cx, cy), newY = transformY(cx, cy);
+        if (item instanceof Stroke) {
+            Stroke stroke = (Stroke) item;
+            Stroke moved = new Stroke(stroke.getTool(), stroke.getColor(), stroke.getWidth() * factor);
+            for (int run = 0; run < stroke.getRunCount(); run++) {
+                moved.startRun();
+                for (int i = stroke.getRunStart(run); i < stroke.getRunEnd(run); i++) {
+                    moved.addPoint(transformX(stroke.getX(i), stroke.getY(i)), transformY(stroke.getX(i), stroke.getY(i)));
+                }
+            }
+            result = moved;
+        } else if (item instanceof TextItem) {
+            TextItem text = (TextItem) item;
+            result = new TextItem(text.getText(), newX - (cx - text.getX()) * factor, newY - (cy - text.getY()) * factor,
+                    text.getColor(), text.getFontSize() * factor);
+        } else if (item instanceof RasterItem) {
+            RasterItem raster = (RasterItem) item;
+            double x = newX - (cx - raster.getX()) * factor, y = newY - (cy - raster.getY()) * factor;
+            result = item instanceof FillItem
+                    ? new FillItem(raster.getTiles(), x, y, raster.getScale() * factor)
+                    : new RasterItem(raster.getTiles(), x, y, raster.getScale() * factor);
+        } else if (item instanceof LargeImageItem) {
+            LargeImageItem large = (LargeImageItem) item;
+            result = new LargeImageItem(large.getFile(), newX - (cx - large.getX()), newY - (cy - large.getY()),
+                    large.getImageWidth(), large.getImageHeight());
+        }
+        if (result != item) result.setOrder(item.getOrder());
+        return result;
+    }
+
+    private void redraw() {
+        if (overlay == null) return;
+        Canvas canvas = overlay.getCanvas();
+        if (overlayShown) overlay.clearRect(0, 0, canvas.getWidth(), canvas.getHeight());
+        overlayShown = mode == Mode.LASSO || bounds != null;
+        if (!overlayShown) return;
+
+        overlay.save();
+        overlay.setStroke(Color.DODGERBLUE);
+        overlay.setLineWidth(1);
+        overlay.setLineDashes(4, 4);
+        if (mode == Mode.LASSO) {
+            overlay.beginPath();
+            for (int i = 0; i < lassoCount; i++) {
+                double x = viewport.toScreenX(lasso[i * 2]), y = viewport.toScreenY(lasso[i * 2 + 1]);
+                if (i == 0) overlay.moveTo(x, y); else overlay.lineTo(x, y);
+            }
+            overlay.stroke();
+            overlay.restore();
+            return;
+        }
+
+        if (cache != null) {
+            overlay.save();
+            viewport.apply(overlay);
+            overlay.translate(centerX + moveX, centerY + moveY);
+            overlay.rotate(Math.toDegrees(angle));
+            overlay.scale(factor, factor);
+            overlay.translate(-centerX, -centerY);
+            overlay.drawImage(cache, itemBounds.minX, itemBounds.minY, itemBounds.getWidth(), itemBounds.getHeight());
+            overlay.restore();
+        }
+
+        double[] xs = new double[4], ys = new double[4];
+        double[][] corners = {{bounds.minX, bounds.minY}, {bounds.maxX, bounds.minY},
+                {bounds.maxX, bounds.maxY}, {bounds.minX, bounds.maxY}};
+        boolean transforming = mode != Mode.NONE;
+        for (int i = 0; i < 4; i++) {
+            double x = corners[i][0], y = corners[i][1];
+            xs[i] = viewport.toScreenX(transforming ? transformX(x, y) : x);
+            ys[i] = viewport.toScreenY(transforming ? transformY(x, y) : y);
+        }
+        overlay.strokePolygon(xs, ys, 4);
+        if (!transforming) {
+            overlay.setLineDashes();
+            overlay.setFill(Color.WHITE);
+            double middle = (xs[0] + xs[1]) / 2;
+            overlay.strokeLine(middle, ys[0], middle, ys[0] - ROTATE_OFFSET + HANDLE_SIZE / 2);
+            overlay.fillOval(middle - HANDLE_SIZE / 2, ys[0] - ROTATE_OFFSET - HANDLE_SIZE / 2, HANDLE_SIZE, HANDLE_SIZE);
+            overlay.strokeOval(middle - HANDLE_SIZE / 2, ys[0] - ROTATE_OFFSET - HANDLE_SIZE / 2, HANDLE_SIZE, HANDLE_SIZE);
+            overlay.fillRect(xs[2] - HANDLE_SIZE / 2, ys[2] - HANDLE_SIZE / 2, HANDLE_SIZE, HANDLE_SIZE);
+            overlay.strokeRect(xs[2] - HANDLE_SIZE / 2, ys[2] - HANDLE_SIZE / 2, HANDLE_SIZE, HANDLE_SIZE);
+        }
+        overlay.restore();
+    }
+}
@@ -0,0 +1,64 @@
+package com.example.whiteboard;
+
+import java.io.IOException;
+
+/*
+ * Records every item and media element added to, moved on or removed from the
+ * model, starting with what is already on the board. Media is recorded as the
+ * BoardFile media records; a replay shows images but does not play videos.
+ */
+public class SessionRecorder implements SceneModel.Listener {
+    private final SceneModel model;
+    private final SessionRecording recording = new SessionRecording();
+    private final long started = System.nanoTime();
+
+    public SessionRecorder(SceneModel model) {
+        this.model = model;
+        for (SceneItem item : model.getItems()) itemAdded(item);
+        for (WhiteboardController.MediaElement element : model.getMediaElements()) mediaAdded(element);
+        model.addListener(this);
+    }
+
+    @Override
+    public void itemAdded(SceneItem item) {
+        try {
+            record(BoardFile.addItemRecord(item));
+        } catch (IOException e) {
+            System.err.println("Cannot record item: " + e.getMessage());
+        }
+    }
+
+    @Override
+    public void itemRemoved(SceneItem item) {
+        record(BoardFile.removeItemRecord(item));
+    }
+
+    @Override
+    public void mediaAdded(WhiteboardController.MediaElement element) {
+        try {
+            byte[] record = BoardFile.addMediaRecord(model.getMediaId(element), element);
+            if (record != null) record(record);
+        } catch (IOException e) {
+            System.err.println("Cannot record media: " + e.getMessage());
+        }
+    }
+
+    @Override
+    public void mediaMoved(WhiteboardController.MediaElement element) {
+        record(BoardFile.moveMediaRecord(model.getMediaId(element), element));
+    }
+
+    @Override
+    public void mediaRemoved(WhiteboardController.MediaElement element) {
+        record(BoardFile.removeMediaRecord(model.getMediaId(element)));
+    }
+
+    private void record(byte[] record) {
+        recording.add((System.nanoTime() - started) / 1_000_000, record);
+    }
+
+    public SessionRecording stop() {
+        model.removeListener(this);
+        return recording;
+    }
+}
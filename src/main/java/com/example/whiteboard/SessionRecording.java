@@ -0,0 +1,90 @@
+package com.example.whiteboard;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+
+/*
+ * Timestamped board operations for replaying how a board was built. Each
+ * operation is a BoardFile item or media record with the milliseconds since
+ * recording started. A file is [magic][version] then [long time][record]
+ * per operation; a truncated tail is ignored.
+ */
+public class SessionRecording {
+    public static final String EXTENSION = "wbs";
+
+    static final int MAGIC = 0x57425253; // "WBRS"
+    static final int VERSION = 1;
+
+    private long[] times = new long[256];
+    private byte[][] records = new byte[256][];
+    private int size;
+
+    public void add(long time, byte[] record) {
+        if (size == times.length) {
+            times = Arrays.copyOf(times, size * 2);
+            records = Arrays.copyOf(records, size * 2);
+        }
+        times[size] = time;
+        records[size] = record;
+        size++;
+    }
+
+    public int size() { return size; }
+    public long getTime(int index) { return times[index]; }
+    byte[] getRecord(int index) { return records[index]; }
+
+    public long getDuration() {
+        return size == 0 ? 0 : times[size - 1];
+    }
+
+    // Number of operations made at or before time
+    public int countUntil(long time) {
+        int low = 0, high = size;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (times[mid] <= time) low = mid + 1; else high = mid;
+        }
+        return low;
+    }
+
+    public void write(Path path) throws IOException {
+        Path temp = Files.createTempFile(path.toAbsolutePath().getParent(), "recording-", ".tmp");
+        try {
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                for (int i = 0; i < size; i++) {
+                    out.writeLong(times[i]);
+                    out.write(records[i]);
+                }
+            }
+            Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    public static SessionRecording read(Path path) throws IOException {
+        ByteBuffer in = ByteBuffer.wrap(Files.readAllBytes(path));
+        if (in.remaining() < 8 || in.getInt() != MAGIC) throw new IOException("Not a session recording: " + path);
+        int version = in.getInt();
+        if (version != VERSION) throw new IOException("Unsupported recording version " + version);
+
+        SessionRecording recording = new SessionRecording();
+        while (in.remaining() >= 12) {
+            long time = in.getLong();
+            int length = in.getInt(in.position());
+            if (length < 1 || in.remaining() < length + 8) break;
+            byte[] record = new byte[length + 8];
+            in.get(record);
+            recording.add(time, record);
+        }
+        return recording;
+    }
+}
@@ -0,0 +1,228 @@
+package com.example.whiteboard;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/*
+ * Plays a session recording back into its own scene model. Every operation
+ * is decoded once up front, and every CHECKPOINT_INTERVAL operations the
+ * items and media on the board at that point are kept as a checkpoint.
+ * Seeking restores the nearest checkpoint at or before the target and applies
+ * at most one interval of operations, so a seek costs about the same however
+ * long the session is; playing forward just applies the operations in
+ * between. Media is kept as BoardFile media records beside the model, since
+ * its elements are JavaFX nodes; frames and the replay view draw its images.
+ *
+ * Headless frame export:
+ *   --replay <recording> <out dir> [--fps <n>] [--speed <x>] [--size <px>]
+ */
+public class SessionReplay {
+    public static final int DEFAULT_CHECKPOINT_INTERVAL = 256;
+
+    private final SessionRecording recording;
+    private final int interval;
+    private final byte[] types;       // record type of each operation, 0 if it does nothing
+    private final long[] ids;         // item or media id of each operation
+    private final SceneItem[] added;  // item added by each operation
+    private final BoardFile.MediaRecord[] placed; // media as each add or move leaves it
+    private final List<Checkpoint> checkpoints = new ArrayList<>(); // board before operation i * interval
+    private final SceneModel model = new SceneModel();
+    private final Map<Long, SceneItem> live = new HashMap<>();
+    private final Map<Long, BoardFile.MediaRecord> media = new LinkedHashMap<>();
+    private Rect bounds; // every item that is ever on the board
+    private int position; // operations applied to the model
+
+    private static class Checkpoint {
+        final SceneItem[] items;
+        final Map<Long, BoardFile.MediaRecord> media;
+
+        Checkpoint(SceneItem[] items, Map<Long, BoardFile.MediaRecord> media) {
+            this.items = items;
+            this.media = media;
+        }
+    }
+
+    public SessionReplay(SessionRecording recording) {
+        this(recording, DEFAULT_CHECKPOINT_INTERVAL);
+    }
+
+    public SessionReplay(SessionRecording recording, int interval) {
+        this.recording = recording;
+        this.interval = interval;
+        this.types = new byte[recording.size()];
+        this.ids = new long[recording.size()];
+        this.added = new SceneItem[recording.size()];
+        this.placed = new BoardFile.MediaRecord[recording.size()];
+
+        Map<Long, SceneItem> items = new LinkedHashMap<>();
+        Map<Long, BoardFile.MediaRecord> shown = new LinkedHashMap<>();
+        for (int i = 0; i < recording.size(); i++) {
+            if (i % interval == 0) {
+                checkpoints.add(new Checkpoint(items.values().toArray(new SceneItem[0]), new LinkedHashMap<>(shown)));
+            }
+            decode(i, shown);
+            switch (types[i]) {
+                case BoardFile.ADD_ITEM:
+                    items.put(ids[i], added[i]);
+                    bounds = added[i].getBounds().union(bounds);
+                    break;
+                case BoardFile.REMOVE_ITEM: items.remove(ids[i]); break;
+                case BoardFile.ADD_MEDIA:
+                case BoardFile.MOVE_MEDIA: shown.put(ids[i], placed[i]); break;
+                case BoardFile.REMOVE_MEDIA: shown.remove(ids[i]); break;
+                default: break;
+            }
+        }
+    }
+
+    // Unreadable records (e.g. item kinds from a newer version) become operations that do nothing
+    private void decode(int index, Map<Long, BoardFile.MediaRecord> shown) {
+        ByteBuffer record = ByteBuffer.wrap(recording.getRecord(index));
+        record.position(4);
+        byte type = record.get();
+        ids[index] = record.getLong();
+        try {
+            switch (type) {
+                case BoardFile.ADD_ITEM:
+                    SceneItem item = BoardFile.readItem(record);
+                    item.setOrder(ids[index]);
+                    added[index] = item;
+                    break;
+                case BoardFile.ADD_MEDIA:
+                    placed[index] = BoardFile.readMedia(record);
+                    break;
+                case BoardFile.MOVE_MEDIA:
+                    BoardFile.MediaRecord moved = shown.get(ids[index]);
+                    if (moved == null) return;
+                    placed[index] = BoardFile.readMove(moved, record);
+                    break;
+                case BoardFile.REMOVE_ITEM:
+                case BoardFile.REMOVE_MEDIA:
+                    break;
+                default:
+                    return;
+            }
+            types[index] = type;
+        } catch (RuntimeException e) {
+            // Left as an operation that does nothing
+        }
+    }
+
+    public SceneModel getModel() { return model; }
+    public long getDuration() { return recording.getDuration(); }
+    public Rect getBounds() { return bounds; }
+
+    // Media on the board at the current position by id, in the order it was added
+    public Map<Long, BoardFile.MediaRecord> getMedia() { return Collections.unmodifiableMap(media); }
+
+    // Shows the board as it was time milliseconds into the session
+    public void seek(long time) {
+        int target = recording.countUntil(time);
+        // The end of a recording of k intervals has no checkpoint of its own; replay the last interval
+        int checkpoint = Math.min(target / interval, checkpoints.size() - 1);
+        if (target < position || checkpoint * interval > position) restore(checkpoint);
+        while (position < target) apply(position++);
+    }
+
+    private void restore(int checkpoint) {
+        model.clear();
+        live.clear();
+        for (SceneItem item : checkpoints.get(checkpoint).items) {
+            model.add(item);
+            live.put(item.getOrder(), item);
+        }
+        media.clear();
+        media.putAll(checkpoints.get(checkpoint).media);
+        position = checkpoint * interval;
+    }
+
+    private void apply(int index) {
+        switch (types[index]) {
+            case BoardFile.ADD_ITEM:
+            case BoardFile.REMOVE_ITEM:
+                SceneItem previous = added[index] != null
+                        ? live.put(ids[index], added[index]) : live.remove(ids[index]);
+                if (previous != null) model.remove(previous);
+                if (added[index] != null) model.add(added[index]);
+                break;
+            case BoardFile.ADD_MEDIA:
+            case BoardFile.MOVE_MEDIA:
+                media.put(ids[index], placed[index]);
+                break;
+            case BoardFile.REMOVE_MEDIA:
+                media.remove(ids[index]);
+                break;
+            default:
+                break;
+        }
+    }
+
+    // Renders the whole session as numbered PNG frames; speed is session time per output time
+    public int exportFrames(Path dir, double fps, double speed, int maxSize, HeadlessRenderer renderer)
+            throws IOException {
+        Files.createDirectories(dir);
+        HeadlessRenderer.ImageSet images = new HeadlessRenderer.ImageSet(maxSize);
+        Rect area = bounds;
+        for (BoardFile.MediaRecord record : placed) {
+            Rect image = record != null ? images.bounds(record) : null;
+            if (image != null) area = image.union(area);
+        }
+        if (area == null) area = Rect.ofSize(0, 0, 1, 1);
+        double scale = Math.min(1, maxSize / Math.max(area.getWidth(), area.getHeight()));
+        double step = 1000 * speed / fps;
+        int frames = (int) Math.ceil(getDuration() / step) + 1;
+        for (int frame = 0; frame < frames; frame++) {
+            seek(Math.round(frame * step));
+            BufferedImage image = renderer.render(model, media.values(), images, area, scale);
+            ImageIO.write(image, "png", dir.resolve(String.format(Locale.ROOT, "frame-%05d.png", frame)).toFile());
+        }
+        return frames;
+    }
+
+    // Returns the process exit code: 0 on success, 1 on failure, 2 on bad arguments
+    public static int run(String[] args) {
+        if (args.length < 3 || !args[0].equals("--replay")) return usage();
+        double fps = 30, speed = 1;
+        int maxSize = 1920;
+        try {
+            for (int i = 3; i < args.length; i += 2) {
+                if (i + 1 >= args.length) return usage();
+                switch (args[i]) {
+                    case "--fps": fps = Double.parseDouble(args[i + 1]); break;
+                    case "--speed": speed = Double.parseDouble(args[i + 1]); break;
+                    case "--size": maxSize = Integer.parseInt(args[i + 1]); break;
+                    default: return usage();
+                }
+            }
+            if (fps <= 0 || speed <= 0 || maxSize < 1) return usage();
+
+            long start = System.nanoTime();
+            SessionReplay replay = new SessionReplay(SessionRecording.read(Paths.get(args[1])));
+            int frames = replay.exportFrames(Paths.get(args[2]), fps, speed, maxSize, new HeadlessRenderer());
+            System.out.printf(Locale.ROOT, "Exported %d frames in %.2f s%n", frames, (System.nanoTime() - start) / 1e9);
+            return 0;
+        } catch (NumberFormatException e) {
+            return usage();
+        } catch (IOException e) {
+            System.err.println("Replay export failed: " + e.getMessage());
+            return 1;
+        }
+    }
+
+    private static int usage() {
+        System.err.println("Usage: --replay <recording> <out dir> [--fps <n>] [--speed <x>] [--size <max pixels>]");
+        return 2;
+    }
+}
@@ -0,0 +1,141 @@
+package com.example.whiteboard;
+
+import javafx.scene.canvas.GraphicsContext;
+import javafx.scene.paint.Color;
+import javafx.scene.shape.StrokeLineCap;
+import javafx.scene.shape.StrokeLineJoin;
+
+import java.util.Arrays;
+
+/*
+ * A freehand line. Usually one polyline; the eraser can cut a stroke into
+ * several runs, which stay one item so the pieces keep its id and z-order.
+ */
+public class Stroke extends SceneItem {
+    private final String tool;
+    private final Color color;
+    private final double width;
+    private double[] points = new double[32];
+    private int pointCount;
+    private int[] runStarts = {0}; // index of the first point of each run
+    private int runCount = 1;
+    private double minX = Double.MAX_VALUE, minY = Double.MAX_VALUE;
+    private double maxX = -Double.MAX_VALUE, maxY = -Double.MAX_VALUE;
+
+    public Stroke(String tool, Color color, double width) {
+        this.tool = tool;
+        this.color = color;
+        this.width = width;
+    }
+
+    public void addPoint(double x, double y) {
+        if (pointCount * 2 == points.length) {
+            points = Arrays.copyOf(points, points.length * 2);
+        }
+        points[pointCount * 2] = x;
+        points[pointCount * 2 + 1] = y;
+        pointCount++;
+
+        minX = Math.min(minX, x);
+        minY = Math.min(minY, y);
+        maxX = Math.max(maxX, x);
+        maxY = Math.max(maxY, y);
+    }
+
+    // Points added from now on form a new run, not joined to the previous point
+    public void startRun() {
+        if (pointCount == 0 || runStarts[runCount - 1] == pointCount) return;
+        if (runCount == runStarts.length) {
+            runStarts = Arrays.copyOf(runStarts, runCount * 2);
+        }
+        runStarts[runCount++] = pointCount;
+    }
+
+    public int getRunCount() { return runCount; }
+    public int getRunStart(int run) { return runStarts[run]; }
+    public int getRunEnd(int run) { return run + 1 < runCount ? runStarts[run + 1] : pointCount; }
+
+    public int getPointCount() { return pointCount; }
+    public String getTool() { return tool; }
+    public Color getColor() { return color; }
+    public double getWidth() { return width; }
+    public double getX(int index) { return points[index * 2]; }
+    public double getY(int index) { return points[index * 2 + 1]; }
+
+    @Override
+    public Rect getBounds() {
+        return new Rect(minX, minY, maxX, maxY).expand(width / 2 + 1);
+    }
+
+    @Override
+    public void draw(GraphicsContext gc) {
+        for (int run = 0; run < runCount; run++) {
+            drawSegments(gc, getRunStart(run), getRunEnd(run));
+        }
+    }
+
+    // Skips points closer than tolerance to the last drawn one
+    @Override
+    public void drawSimplified(GraphicsContext gc, double tolerance) {
+        if (pointCount < 2) return;
+
+        gc.save();
+        applyStyle(gc);
+        gc.beginPath();
+        double minDistSq = tolerance * tolerance;
+        for (int run = 0; run < runCount; run++) {
+            int start = getRunStart(run), end = getRunEnd(run);
+            if (end - start < 2) continue;
+            double lastX = points[start * 2], lastY = points[start * 2 + 1];
+            gc.moveTo(lastX, lastY);
+            for (int i = start + 1; i < end; i++) {
+                double x = points[i * 2], y = points[i * 2 + 1];
+                double dx = x - lastX, dy = y - lastY;
+                if (dx * dx + dy * dy >= minDistSq || i == end - 1) {
+                    gc.lineTo(x, y);
+                    lastX = x;
+                    lastY = y;
+                }
+            }
+        }
+        gc.stroke();
+        gc.restore();
+    }
+
+    // Strokes the polyline through points [from, to) as a single path
+    public void drawSegments(GraphicsContext gc, int from, int to) {
+        if (to - from < 2) return;
+
+        gc.save();
+        applyStyle(gc);
+        gc.beginPath();
+        gc.moveTo(points[from * 2], points[from * 2 + 1]);
+        for (int i = from + 1; i < to; i++) {
+            gc.lineTo(points[i * 2], points[i * 2 + 1]);
+        }
+        gc.stroke();
+        gc.restore();
+    }
+
+    // Strokes from the last point to (x, y), for input that has not arrived yet
+    public void drawTail(GraphicsContext gc, double x, double y) {
+        if (pointCount == 0) return;
+
+        gc.save();
+        applyStyle(gc);
+        gc.strokeLine(points[pointCount * 2 - 2], points[pointCount * 2 - 1], x, y);
+        gc.restore();
+    }
+
+    private void applyStyle(GraphicsContext gc) {
+        gc.setStroke(color);
+        gc.setLineWidth(width);
+        gc.setLineCap(StrokeLineCap.ROUND);
+        gc.setLineJoin(StrokeLineJoin.ROUND);
+    }
+
+    @Override
+    public long getByteSize() {
+        return 64 + points.length * 8L + runStarts.length * 4L;
+    }
+}
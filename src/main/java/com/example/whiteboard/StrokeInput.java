@@ -0,0 +1,176 @@
+package com.example.whiteboard;
+
+import java.util.Arrays;
+
+/*
+ * Input stage between pointer events and the stroke being drawn. Pen and touch
+ * displays deliver 200+ events a second with sensor jitter, so each sample is
+ * decimated (dropped if it moved less than MIN_DISTANCE screen pixels), then
+ * smoothed with a one-euro filter: a low-pass filter whose cutoff rises with
+ * the pointer speed, so slow strokes lose their jitter while fast ones do not
+ * lag behind. The filter's velocity estimate also gives the position a frame
+ * ahead, which is drawn but never stored, to hide the remaining latency. When
+ * the stroke ends its points are simplified with Ramer-Douglas-Peucker.
+ *
+ * Samples go straight into the stroke's primitive point arrays and the
+ * simplification reuses its buffers from stroke to stroke, so nothing is
+ * allocated per event. Distances are in screen pixels, converted with the
+ * zoom at the start of the stroke.
+ */
+public class StrokeInput {
+    private static final double MIN_DISTANCE = 0.5;       // screen pixels
+    private static final double MIN_CUTOFF = 3;           // Hz, cutoff while at rest
+    private static final double BETA = 0.02;              // cutoff increase per screen pixel/s
+    private static final double DERIVATIVE_CUTOFF = 1;    // Hz, for the velocity estimate
+    private static final double MIN_INTERVAL = 0.001;     // s, for events delivered together
+    private static final double PREDICTION_TIME = 0.016;  // s, about one frame
+    private static final double MAX_PREDICTION = 24;      // screen pixels
+
+    private double simplifyTolerance = 0.5; // screen pixels, 0 keeps every point
+    private Stroke stroke;
+    private double scale;
+    private double rawX, rawY;        // last accepted sample
+    private double x, y;              // filtered position
+    private double velocityX, velocityY; // filtered velocity, board units per second
+    private long lastTime;
+    private int[] stack = new int[64];   // first and last point of the ranges still to simplify
+    private long[] keep = new long[16];  // points kept by the simplification
+
+    public double getSimplifyTolerance() { return simplifyTolerance; }
+
+    public void setSimplifyTolerance(double tolerance) {
+        simplifyTolerance = Math.max(0, tolerance);
+    }
+
+    // Starts filling the stroke, at a pointer position in board coordinates
+    public void begin(Stroke stroke, double x, double y, double scale, long nanos) {
+        this.stroke = stroke;
+        this.scale = scale;
+        this.rawX = this.x = x;
+        this.rawY = this.y = y;
+        velocityX = velocityY = 0;
+        lastTime = nanos;
+        stroke.addPoint(x, y);
+    }
+
+    // Returns whether a point was added to the stroke
+    public boolean add(double sampleX, double sampleY, long nanos) {
+        if (stroke == null) return false;
+        double moveX = sampleX - rawX, moveY = sampleY - rawY;
+        if ((moveX * moveX + moveY * moveY) * scale * scale < MIN_DISTANCE * MIN_DISTANCE) return false;
+
+        double dt = Math.max(MIN_INTERVAL, (nanos - lastTime) / 1e9);
+        double derivativeAlpha = alpha(DERIVATIVE_CUTOFF, dt);
+        velocityX += derivativeAlpha * (moveX / dt - velocityX);
+        velocityY += derivativeAlpha * (moveY / dt - velocityY);
+        double cutoff = MIN_CUTOFF + BETA * Math.hypot(velocityX, velocityY) * scale;
+        double alpha = alpha(cutoff, dt);
+        x += alpha * (sampleX - x);
+        y += alpha * (sampleY - y);
+
+        rawX = sampleX;
+        rawY = sampleY;
+        lastTime = nanos;
+        stroke.addPoint(x, y);
+        return true;
+    }
+
+    private static double alpha(double cutoff, double dt) {
+        double tau = 1 / (2 * Math.PI * cutoff);
+        return 1 / (1 + tau / dt);
+    }
+
+    // Where the pointer is expected to be a frame from now; only meant to be drawn
+    public double getPredictedX() { return rawX + predictionStep() * velocityX; }
+    public double getPredictedY() { return rawY + predictionStep() * velocityY; }
+
+    private double predictionStep() {
+        double distance = Math.hypot(velocityX, velocityY) * PREDICTION_TIME * scale;
+        return distance > MAX_PREDICTION ? PREDICTION_TIME * MAX_PREDICTION / distance : PREDICTION_TIME;
+    }
+
+    // Ends the stroke where the pointer was released; returns its simplified copy
+    public Stroke finish() {
+        Stroke drawn = stroke;
+        stroke = null;
+        if (drawn == null) return null;
+        int last = drawn.getPointCount() - 1;
+        if (drawn.getX(last) != rawX || drawn.getY(last) != rawY) drawn.addPoint(rawX, rawY);
+        return simplify(drawn, simplifyTolerance / scale);
+    }
+
+    /*
+     * The stroke without the points that lie within tolerance of the line
+     * through their neighbours; the stroke itself if every point is needed.
+     * Each run keeps its end points.
+     */
+    public Stroke simplify(Stroke stroke, double tolerance) {
+        int count = stroke.getPointCount();
+        if (tolerance <= 0 || count < 3) return stroke;
+        if (keep.length * 64 < count) keep = new long[(count + 63) >>> 6];
+        Arrays.fill(keep, 0, (count + 63) >>> 6, 0);
+
+        int kept = 0;
+        for (int run = 0; run < stroke.getRunCount(); run++) {
+            int start = stroke.getRunStart(run), end = stroke.getRunEnd(run);
+            mark(start);
+            mark(end - 1);
+            kept += end - start > 1 ? 2 : 1;
+            int stackSize = 0;
+            if (end - start > 2) {
+                stack[stackSize++] = start;
+                stack[stackSize++] = end - 1;
+            }
+            while (stackSize > 0) {
+                int last = stack[--stackSize], first = stack[--stackSize];
+                int farthest = farthest(stroke, first, last, tolerance * tolerance);
+                if (farthest < 0) continue;
+                mark(farthest);
+                kept++;
+                if (stackSize + 4 > stack.length) stack = Arrays.copyOf(stack, stack.length * 2);
+                if (farthest - first > 1) {
+                    stack[stackSize++] = first;
+                    stack[stackSize++] = farthest;
+                }
+                if (last - farthest > 1) {
+                    stack[stackSize++] = farthest;
+                    stack[stackSize++] = last;
+                }
+            }
+        }
+        if (kept == count) return stroke;
+
+        Stroke simplified = new Stroke(stroke.getTool(), stroke.getColor(), stroke.getWidth());
+        for (int run = 0; run < stroke.getRunCount(); run++) {
+            simplified.startRun();
+            for (int i = stroke.getRunStart(run); i < stroke.getRunEnd(run); i++) {
+                if ((keep[i >>> 6] & 1L << i) != 0) simplified.addPoint(stroke.getX(i), stroke.getY(i));
+            }
+        }
+        return simplified;
+    }
+
+    private void mark(int index) {
+        keep[index >>> 6] |= 1L << index;
+    }
+
+    // Index of the point between first and last farthest from the segment joining them, or -1 if all are within reach
+    private static int farthest(Stroke stroke, int first, int last, double reachSq) {
+        double ax = stroke.getX(first), ay = stroke.getY(first);
+        double dx = stroke.getX(last) - ax, dy = stroke.getY(last) - ay;
+        double lengthSq = dx * dx + dy * dy;
+        int farthest = -1;
+        double maxSq = reachSq;
+        for (int i = first + 1; i < last; i++) {
+            double px = stroke.getX(i) - ax, py = stroke.getY(i) - ay;
+            double t = lengthSq == 0 ? 0 : Math.max(0, Math.min(1, (px * dx + py * dy) / lengthSq));
+            double ex = px - t * dx, ey = py - t * dy;
+            double distSq = ex * ex + ey * ey;
+            if (distSq > maxSq) {
+                maxSq = distSq;
+                farthest = i;
+            }
+        }
+        return farthest;
+    }
+}
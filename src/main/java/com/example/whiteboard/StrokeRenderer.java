@@ -0,0 +1,114 @@
+package com.example.whiteboard;
+
+import javafx.animation.AnimationTimer;
+import javafx.scene.canvas.Canvas;
+import javafx.scene.canvas.GraphicsContext;
+
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+/*
+ * Draws strokes in progress incrementally: the local one and any that
+ * collaborators are drawing. Mouse events and the network only append points;
+ * once per JavaFX pulse the points added since the last frame are stroked as
+ * one short path, so the cost of a frame does not depend on the stroke length.
+ *
+ * The local stroke can also show where the pointer is predicted to be. That
+ * tail is drawn on a separate transparent canvas above the board, cleared
+ * every frame, so it never has to be erased from the board itself.
+ */
+public class StrokeRenderer {
+    private final GraphicsContext gc;
+    private final Viewport viewport;
+    private final PerfMonitor monitor;
+    private final AnimationTimer timer;
+    private final Map<Stroke, Integer> renderedCounts = new IdentityHashMap<>();
+    private GraphicsContext predictionGc;
+    private Stroke predicted;
+    private double predictedX, predictedY;
+    private boolean predictionShown, predictionChanged;
+
+    public StrokeRenderer(GraphicsContext gc, Viewport viewport, PerfMonitor monitor) {
+        this.gc = gc;
+        this.viewport = viewport;
+        this.monitor = monitor;
+        this.timer = new AnimationTimer() {
+            @Override
+            public void handle(long now) {
+                flush();
+            }
+        };
+    }
+
+    // Canvas over the board for predicted input; without one nothing is predicted
+    public void setPredictionLayer(GraphicsContext predictionGc) {
+        this.predictionGc = predictionGc;
+    }
+
+    // Extends the stroke to (x, y) on screen until its next points arrive
+    public void predict(Stroke stroke, double x, double y) {
+        if (predictionGc == null || !renderedCounts.containsKey(stroke)) return;
+        predicted = stroke;
+        predictedX = x;
+        predictedY = y;
+        predictionChanged = true;
+    }
+
+    public void begin(Stroke stroke) {
+        renderedCounts.put(stroke, 0);
+        timer.start();
+    }
+
+    // Draws any pending segments, overlapping the last drawn point to keep the line joined
+    public void flush() {
+        if (renderedCounts.isEmpty()) return;
+
+        gc.save();
+        viewport.apply(gc);
+        for (Map.Entry<Stroke, Integer> entry : renderedCounts.entrySet()) {
+            Stroke stroke = entry.getKey();
+            int rendered = entry.getValue();
+            int count = stroke.getPointCount();
+            if (count > rendered) {
+                stroke.drawSegments(gc, Math.max(0, rendered - 1), count);
+                entry.setValue(count);
+            }
+        }
+        gc.restore();
+        if (predictionChanged) drawPrediction();
+        monitor.inputDrawn();
+    }
+
+    private void drawPrediction() {
+        predictionChanged = false;
+        Canvas canvas = predictionGc.getCanvas();
+        if (predictionShown) predictionGc.clearRect(0, 0, canvas.getWidth(), canvas.getHeight());
+        predictionShown = predicted != null;
+        if (predicted == null) return;
+
+        predictionGc.save();
+        viewport.apply(predictionGc);
+        predicted.drawTail(predictionGc, predictedX, predictedY);
+        predictionGc.restore();
+    }
+
+    // Draws the strokes again after the canvas has been repainted underneath them
+    public void redrawAll() {
+        renderedCounts.replaceAll((stroke, rendered) -> 0);
+        predictionChanged = true;
+        flush();
+    }
+
+    public void finish(Stroke stroke) {
+        if (!renderedCounts.containsKey(stroke)) return;
+        if (stroke == predicted) {
+            predicted = null;
+            predictionChanged = true;
+        }
+        flush();
+        renderedCounts.remove(stroke);
+        if (renderedCounts.isEmpty()) timer.stop();
+    }
+
+    public boolean isActive() { return !renderedCounts.isEmpty(); }
+}
@@ -0,0 +1,149 @@
+package com.example.whiteboard;
+
+import javafx.scene.paint.Color;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Base64;
+
+/*
+ * SVG output, in board units. Each image is defined once as a unit-sized
+ * <image> inside <defs> where it is first drawn, with its pixels base64
+ * encoded straight into the output, and placed with <use> and a transform.
+ */
+public class SvgWriter extends VectorWriter {
+    private int images;
+
+    public SvgWriter(OutputStream out) {
+        super(out);
+    }
+
+    @Override
+    public void begin(Rect area) throws IOException {
+        line.setLength(0);
+        line.append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n")
+                .append("<svg xmlns=\"http://www.w3.org/2000/svg\" xmlns:xlink=\"http://www.w3.org/1999/xlink\"");
+        line.append(" width=\"");
+        appendNumber(line, area.getWidth());
+        line.append("\" height=\"");
+        appendNumber(line, area.getHeight());
+        line.append("\" viewBox=\"");
+        appendNumbers(area.minX, area.minY, area.getWidth(), area.getHeight());
+        line.append("\">\n<rect x=\"");
+        appendNumber(line, area.minX);
+        line.append("\" y=\"");
+        appendNumber(line, area.minY);
+        line.append("\" width=\"100%\" height=\"100%\" fill=\"white\"/>\n");
+        write(line);
+    }
+
+    @Override
+    public void finish() throws IOException {
+        write("</svg>\n");
+        out.flush();
+    }
+
+    @Override
+    protected void drawStroke(Stroke stroke) throws IOException {
+        line.setLength(0);
+        line.append("<path d=\"");
+        for (int run = 0; run < stroke.getRunCount(); run++) {
+            int start = stroke.getRunStart(run), end = stroke.getRunEnd(run);
+            if (end - start < 2) continue;
+            for (int i = start; i < end; i++) {
+                line.append(i == start ? 'M' : 'L');
+                appendNumber(line, stroke.getX(i));
+                line.append(' ');
+                appendNumber(line, stroke.getY(i));
+            }
+        }
+        line.append("\" fill=\"none\" stroke=\"");
+        appendColor(stroke.getColor(), "stroke");
+        line.append(" stroke-width=\"");
+        appendNumber(line, stroke.getWidth());
+        line.append("\" stroke-linecap=\"round\" stroke-linejoin=\"round\"/>\n");
+        write(line);
+    }
+
+    // One <text> per line, spaced as the headless renderer spaces them
+    @Override
+    protected void drawText(TextItem text) throws IOException {
+        double lineHeight = HeadlessRenderer.lineHeight(text.getText(), text.getFontSize());
+        double y = text.getY();
+        for (String textLine : text.getText().split("\n", -1)) {
+            line.setLength(0);
+            line.append("<text x=\"");
+            appendNumber(line, text.getX());
+            line.append("\" y=\"");
+            appendNumber(line, y);
+            line.append("\" font-family=\"sans-serif\" font-size=\"");
+            appendNumber(line, text.getFontSize());
+            line.append("\" fill=\"");
+            appendColor(text.getColor(), "fill");
+            line.append(" xml:space=\"preserve\">");
+            appendEscaped(textLine);
+            line.append("</text>\n");
+            write(line);
+            y += lineHeight;
+        }
+    }
+
+    @Override
+    protected String defineImage(BufferedImage image) throws IOException {
+        String name = "image" + ++images;
+        boolean opaque = isOpaque(image);
+        write("<defs><image id=\"" + name + "\" width=\"1\" height=\"1\" preserveAspectRatio=\"none\" xlink:href=\"data:image/"
+                + (opaque ? "jpeg" : "png") + ";base64,");
+        try (OutputStream encoded = Base64.getEncoder().wrap(shielded())) {
+            if (opaque) {
+                writeJpeg(image, encoded);
+            } else {
+                ImageIO.write(image, "png", encoded);
+            }
+        }
+        write("\"/></defs>\n");
+        return name;
+    }
+
+    @Override
+    protected void placeImage(String name, Rect bounds) throws IOException {
+        line.setLength(0);
+        line.append("<use xlink:href=\"#").append(name).append("\" transform=\"matrix(");
+        appendNumbers(bounds.getWidth(), 0, 0, bounds.getHeight(), bounds.minX, bounds.minY);
+        line.append(")\"/>\n");
+        write(line);
+    }
+
+    // Closes the colour attribute's quotes, adding an opacity attribute when needed
+    private void appendColor(Color color, String attribute) {
+        int rgb = (int) Math.round(color.getRed() * 255) << 16
+                | (int) Math.round(color.getGreen() * 255) << 8
+                | (int) Math.round(color.getBlue() * 255);
+        line.append('#');
+        String hex = Integer.toHexString(rgb);
+        for (int i = hex.length(); i < 6; i++) line.append('0');
+        line.append(hex).append('"');
+        if (color.getOpacity() < 1) {
+            line.append(' ').append(attribute).append("-opacity=\"");
+            appendNumber(line, color.getOpacity());
+            line.append('"');
+        }
+    }
+
+    // Characters XML 1.0 cannot hold at all are dropped
+    private void appendEscaped(String text) {
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            switch (c) {
+                case '&': line.append("&amp;"); break;
+                case '<': line.append("&lt;"); break;
+                case '>': line.append("&gt;"); break;
+                case '"': line.append("&quot;"); break;
+                default:
+                    if (c >= 0x20 || c == '\t') line.append(c);
+            }
+        }
+    }
+}
@@ -0,0 +1,139 @@
+package com.example.whiteboard;
+
+import javafx.geometry.Bounds;
+import javafx.scene.canvas.GraphicsContext;
+import javafx.scene.paint.Color;
+import javafx.scene.text.Font;
+import javafx.scene.text.Text;
+
+/*
+ * A text label, stored as its string, font size and baseline origin rather
+ * than pixels, so it stays sharp at any zoom and can be edited. The text is
+ * laid out once, when the item is made: it is split into lines and each
+ * line's width and the line spacing are measured then. Drawing reuses that
+ * layout and the font, and when zoomed out so far that the glyphs would be a
+ * few pixels tall, lines are drawn as bars of their measured width without
+ * touching the text engine at all. Items never change once made; an edit
+ * replaces the label, so only its old and new bounds are redrawn.
+ */
+public class TextItem extends SceneItem {
+    private static final double GREEK_SIZE = 4; // screen pixels of font size below which lines become bars
+
+    private final String text;
+    private final double x, y;
+    private final Color color;
+    private final double fontSize;
+    private final String[] lines;
+    private final double[] lineWidths;
+    private final double lineHeight;    // distance between baselines
+    private final double ascent;        // from the top of the first line to its baseline
+    private final Rect bounds;
+    private Font font;                  // made on first draw, on the FX thread
+
+    private static volatile boolean fxLayoutAvailable = true;
+
+    public TextItem(String text, double x, double y, Color color, double fontSize) {
+        this.text = text;
+        this.x = x;
+        this.y = y;
+        this.color = color;
+        this.fontSize = fontSize;
+
+        // Measure once; (x, y) is the baseline origin of the first line like fillText
+        this.lines = text.split("\n", -1);
+        this.lineWidths = new double[lines.length];
+        double[] metrics = measure(lines, fontSize, lineWidths);
+        this.lineHeight = metrics[0];
+        this.ascent = metrics[1];
+        double width = 0;
+        for (double lineWidth : lineWidths) width = Math.max(width, lineWidth);
+        this.bounds = Rect.ofSize(x, y - ascent, width, lineHeight * lines.length).expand(1);
+    }
+
+    /*
+     * Fills in the width of each line and returns the line height and ascent.
+     * JavaFX text layout needs the font natives, which a server rendering boards
+     * headless may not have; the Java2D metrics the headless renderer draws with stand in.
+     */
+    private static double[] measure(String[] lines, double fontSize, double[] widths) {
+        if (fxLayoutAvailable) {
+            try {
+                Text measure = new Text();
+                measure.setFont(Font.font(fontSize));
+                double height = 0, ascent = 0;
+                for (int i = 0; i < lines.length; i++) {
+                    measure.setText(lines[i]);
+                    Bounds layout = measure.getLayoutBounds();
+                    widths[i] = layout.getMaxX();
+                    if (i == 0) {
+                        height = layout.getHeight();
+                        ascent = -layout.getMinY();
+                    }
+                }
+                return new double[] {height, ascent};
+            } catch (LinkageError e) {
+                fxLayoutAvailable = false;
+            }
+        }
+        for (int i = 0; i < lines.length; i++) {
+            widths[i] = HeadlessRenderer.measureText(lines[i], 0, 0, fontSize).maxX;
+        }
+        Rect first = HeadlessRenderer.measureText(lines[0], 0, 0, fontSize);
+        return new double[] {HeadlessRenderer.lineHeight(lines[0], fontSize), -first.minY};
+    }
+
+    public String getText() { return text; }
+    public double getX() { return x; }
+    public double getY() { return y; }
+    public Color getColor() { return color; }
+    public double getFontSize() { return fontSize; }
+
+    // The same label with different text, in the same place and z-order, for editing
+    public TextItem withText(String newText) {
+        TextItem edited = new TextItem(newText, x, y, color, fontSize);
+        edited.setOrder(getOrder());
+        return edited;
+    }
+
+    @Override
+    public Rect getBounds() {
+        return bounds;
+    }
+
+    @Override
+    public void draw(GraphicsContext gc) {
+        if (font == null) font = Font.font(fontSize);
+        gc.save();
+        gc.setFill(color);
+        gc.setFont(font);
+        for (int i = 0; i < lines.length; i++) {
+            if (!lines[i].isEmpty()) gc.fillText(lines[i], x, y + i * lineHeight);
+        }
+        gc.restore();
+    }
+
+    @Override
+    public void drawSimplified(GraphicsContext gc, double tolerance) {
+        // tolerance is half a screen pixel in board units
+        if (fontSize / (tolerance * 2) >= GREEK_SIZE) {
+            draw(gc);
+            return;
+        }
+        gc.save();
+        gc.setFill(color.deriveColor(0, 1, 1, 0.5));
+        for (int i = 0; i < lines.length; i++) {
+            gc.fillRect(x, y + i * lineHeight - ascent * 0.6, lineWidths[i], ascent * 0.5);
+        }
+        gc.restore();
+    }
+
+    @Override
+    public Layer getLayer() {
+        return Layer.ANNOTATIONS;
+    }
+
+    @Override
+    public long getByteSize() {
+        return 128 + text.length() * 2L + lines.length * 48L;
+    }
+}
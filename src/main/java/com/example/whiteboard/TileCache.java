@@ -0,0 +1,150 @@
+package com.example.whiteboard;
+
+import javafx.scene.SnapshotParameters;
+import javafx.scene.canvas.Canvas;
+import javafx.scene.canvas.GraphicsContext;
+import javafx.scene.image.Image;
+import javafx.scene.image.WritableImage;
+import javafx.scene.paint.Color;
+
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/*
+ * Rendered tiles of one layer of the board. World space is split into square
+ * tiles per level of detail: a tile at level L covers TILE_SIZE * 2^L world
+ * units and is always rendered at TILE_SIZE pixels, so zoomed-out views need
+ * few tiles and skip detail too small to see. Tiles are kept in an LRU cache,
+ * sized to hold every tile the view shows plus a margin, and dropped when an
+ * edit touches them. Tiles with nothing on them share one blank image that
+ * callers can skip drawing.
+ */
+public class TileCache {
+    public static final int TILE_SIZE = 256;
+    public static final int MIN_LEVEL = -4;
+    public static final int MAX_LEVEL = 12;
+
+    private static final int MIN_TILES = 256;
+
+    private final SceneModel model;
+    private final Layer layer;
+    private final WritableImage blank = new WritableImage(1, 1);
+    private final Canvas scratch = new Canvas(TILE_SIZE, TILE_SIZE);
+    private final SnapshotParameters snapshotParams = new SnapshotParameters();
+    private final Map<TileKey, WritableImage> tiles = new LinkedHashMap<>(64, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<TileKey, WritableImage> eldest) {
+            return size() > capacity;
+        }
+    };
+    private final Set<TileKey> stale = new HashSet<>(); // dropped by an edit, not yet re-rendered
+    private int capacity = MIN_TILES;
+
+    private record TileKey(int level, int x, int y) {}
+
+    public TileCache(SceneModel model, Layer layer) {
+        this.model = model;
+        this.layer = layer;
+        snapshotParams.setFill(Color.TRANSPARENT);
+    }
+
+    // Level whose tiles are drawn at or just below their rendered resolution
+    public static int levelFor(double scale) {
+        int level = (int) Math.floor(Math.log(1 / scale) / Math.log(2));
+        return Math.max(MIN_LEVEL, Math.min(MAX_LEVEL, level));
+    }
+
+    public static double worldSize(int level) {
+        return TILE_SIZE * Math.pow(2, level);
+    }
+
+    /*
+     * Makes room for the tiles one repaint draws. A smaller cache would evict
+     * tiles rendered earlier in the same repaint, so the view would never be
+     * complete and would re-render tiles every frame. The margin holds the
+     * parent tiles drawn as fallbacks (a quarter as many) and a ring for panning.
+     */
+    public void reserve(int visibleTiles) {
+        capacity = Math.max(MIN_TILES, visibleTiles + visibleTiles / 2);
+        Iterator<TileKey> eldest = tiles.keySet().iterator();
+        while (tiles.size() > capacity && eldest.hasNext()) {
+            eldest.next();
+            eldest.remove();
+        }
+    }
+
+    public WritableImage get(int level, int x, int y) {
+        return tiles.get(new TileKey(level, x, y));
+    }
+
+    // True when the tile was cached but an edit has since invalidated it
+    public boolean isStale(int level, int x, int y) {
+        return stale.contains(new TileKey(level, x, y));
+    }
+
+    public Layer getLayer() { return layer; }
+
+    // True for the shared image of tiles with nothing on them
+    public boolean isBlank(Image tile) {
+        return tile == blank;
+    }
+
+    public WritableImage render(int level, int x, int y) {
+        double size = worldSize(level);
+        double unitsPerPixel = size / TILE_SIZE;
+        Rect area = Rect.ofSize(x * size, y * size, size, size);
+        TileKey key = new TileKey(level, x, y);
+
+        List<SceneItem> items = model.query(area, layer);
+        if (items.isEmpty()) {
+            tiles.put(key, blank);
+            stale.remove(key);
+            return blank;
+        }
+
+        GraphicsContext gc = scratch.getGraphicsContext2D();
+        gc.clearRect(0, 0, TILE_SIZE, TILE_SIZE);
+        gc.save();
+        gc.scale(1 / unitsPerPixel, 1 / unitsPerPixel);
+        gc.translate(-area.minX, -area.minY);
+        for (SceneItem item : items) {
+            Rect bounds = item.getBounds();
+            // Items smaller than half a pixel at this level are not visible
+            if (Math.max(bounds.getWidth(), bounds.getHeight()) < unitsPerPixel / 2) continue;
+            item.drawRegion(gc, area, unitsPerPixel);
+        }
+        gc.restore();
+
+        WritableImage image = scratch.snapshot(snapshotParams, null);
+        tiles.put(key, image);
+        stale.remove(key);
+        return image;
+    }
+
+    // Drops every cached tile that overlaps the given world area
+    public void invalidate(Rect area) {
+        Iterator<TileKey> keys = tiles.keySet().iterator();
+        while (keys.hasNext()) {
+            TileKey key = keys.next();
+            double size = worldSize(key.level());
+            if (Rect.ofSize(key.x() * size, key.y() * size, size, size).intersects(area)) {
+                keys.remove();
+                stale.add(key);
+            }
+        }
+        if (stale.size() > capacity) stale.clear();
+    }
+
+    public void invalidateAll() {
+        tiles.clear();
+        stale.clear();
+    }
+
+    public int size() {
+        return tiles.size();
+    }
+}
@@ -0,0 +1,254 @@
+package com.example.whiteboard;
+
+import javafx.scene.canvas.GraphicsContext;
+import javafx.scene.image.PixelFormat;
+import javafx.scene.image.PixelReader;
+import javafx.scene.image.WritableImage;
+
+import java.awt.Graphics2D;
+import java.awt.geom.AffineTransform;
+import java.awt.image.BufferedImage;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.IntStream;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/*
+ * Pixels of a raster split into fixed-size tiles. Each tile is deflated into a
+ * direct (off-heap) buffer and fully transparent tiles are not stored, so a
+ * snapshot only costs as much as the content it actually covers. Tiles of one
+ * colour are deflated once per colour and size and share their data, which
+ * covers most of a large fill. Pixels are deflated as big-endian ARGB ints on
+ * every platform, since the tiles are stored in board files as they are.
+ */
+public class TileSnapshot {
+    public static final int TILE_SIZE = 256;
+
+    private final List<Tile> tiles;
+    private final int width, height;
+    private final long byteSize;
+
+    private static class Tile {
+        final int x, y, width, height;
+        final ByteBuffer data;
+
+        Tile(int x, int y, int width, int height, ByteBuffer data) {
+            this.x = x;
+            this.y = y;
+            this.width = width;
+            this.height = height;
+            this.data = data;
+        }
+    }
+
+    private TileSnapshot(List<Tile> tiles, int width, int height) {
+        this.tiles = tiles;
+        this.width = width;
+        this.height = height;
+        long size = 0;
+        Set<ByteBuffer> counted = Collections.newSetFromMap(new IdentityHashMap<>());
+        for (Tile tile : tiles) {
+            if (counted.add(tile.data)) size += tile.data.capacity();
+        }
+        this.byteSize = size;
+    }
+
+    // Copies the pixels of one tile into pixels, w values per row
+    private interface TileSource {
+        void read(int x, int y, int w, int h, int[] pixels);
+    }
+
+    public static TileSnapshot capture(PixelReader reader, int width, int height) {
+        return capture(width, height, false, (tx, ty, w, h, pixels) ->
+                reader.getPixels(tx, ty, w, h, PixelFormat.getIntArgbInstance(), pixels, 0, w));
+    }
+
+    // From ARGB values already read, width per row; needs no image, so rows of tiles are compressed in parallel
+    public static TileSnapshot capture(int[] argb, int width, int height) {
+        return capture(width, height, true, (tx, ty, w, h, pixels) -> {
+            for (int row = 0; row < h; row++) System.arraycopy(argb, (ty + row) * width + tx, pixels, row * w, w);
+        });
+    }
+
+    private static TileSnapshot capture(int width, int height, boolean parallel, TileSource source) {
+        Map<Long, ByteBuffer> uniformTiles = new ConcurrentHashMap<>(); // by colour and size
+        IntStream rows = IntStream.range(0, (height + TILE_SIZE - 1) / TILE_SIZE);
+        List<Tile> tiles = new ArrayList<>();
+        (parallel ? rows.parallel() : rows)
+                .mapToObj(row -> captureRow(row * TILE_SIZE, width, height, source, uniformTiles))
+                .forEachOrdered(tiles::addAll);
+        return new TileSnapshot(tiles, width, height);
+    }
+
+    private static List<Tile> captureRow(int ty, int width, int height, TileSource source,
+                                         Map<Long, ByteBuffer> uniformTiles) {
+        List<Tile> tiles = new ArrayList<>();
+        int[] pixels = new int[TILE_SIZE * TILE_SIZE];
+        ByteBuffer raw = ByteBuffer.allocate(pixels.length * 4).order(ByteOrder.BIG_ENDIAN);
+        byte[] compressed = new byte[raw.capacity() + 1024];
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        try {
+            for (int tx = 0; tx < width; tx += TILE_SIZE) {
+                int w = Math.min(TILE_SIZE, width - tx);
+                int h = Math.min(TILE_SIZE, height - ty);
+                source.read(tx, ty, w, h, pixels);
+                ByteBuffer data;
+                if (isUniform(pixels, w * h)) {
+                    if ((pixels[0] >>> 24) == 0) continue;
+                    long key = (long) pixels[0] << 32 | w << 16 | h;
+                    data = uniformTiles.get(key);
+                    if (data == null) {
+                        ByteBuffer deflated = deflate(pixels, w * h, raw, compressed, deflater);
+                        data = uniformTiles.putIfAbsent(key, deflated);
+                        if (data == null) data = deflated;
+                    }
+                } else {
+                    if (isTransparent(pixels, w * h)) continue;
+                    data = deflate(pixels, w * h, raw, compressed, deflater);
+                }
+                tiles.add(new Tile(tx, ty, w, h, data));
+            }
+        } finally {
+            deflater.end();
+        }
+        return tiles;
+    }
+
+    private static ByteBuffer deflate(int[] pixels, int length, ByteBuffer raw, byte[] compressed, Deflater deflater) {
+        raw.clear();
+        raw.asIntBuffer().put(pixels, 0, length);
+        deflater.reset();
+        deflater.setInput(raw.array(), 0, length * 4);
+        deflater.finish();
+        int size = deflater.deflate(compressed);
+
+        ByteBuffer data = ByteBuffer.allocateDirect(size);
+        data.put(compressed, 0, size).flip();
+        return data;
+    }
+
+    // Draws the tiles with their top-left corner at (x, y)
+    public void draw(GraphicsContext gc, double x, double y) {
+        draw(gc, x, y, null);
+    }
+
+    // Draws only the tiles overlapping region, given in snapshot pixels; null draws all
+    public void draw(GraphicsContext gc, double x, double y, Rect region) {
+        inflateTiles(region, (tx, ty, w, h, pixels) -> {
+            // A fresh image per tile: the canvas renders later and must not see it change
+            WritableImage image = new WritableImage(w, h);
+            image.getPixelWriter().setPixels(0, 0, w, h, PixelFormat.getIntArgbInstance(), pixels, 0, w);
+            gc.drawImage(image, x + tx, y + ty);
+        });
+    }
+
+    // Same as draw, for Java2D targets such as the headless renderer
+    public void draw(Graphics2D g, double x, double y) {
+        draw(g, x, y, null);
+    }
+
+    public void draw(Graphics2D g, double x, double y, Rect region) {
+        inflateTiles(region, (tx, ty, w, h, pixels) -> {
+            BufferedImage image = new BufferedImage(w, h, BufferedImage.TYPE_INT_ARGB);
+            image.setRGB(0, 0, w, h, pixels, 0, w);
+            g.drawImage(image, AffineTransform.getTranslateInstance(x + tx, y + ty), null);
+        });
+    }
+
+    interface TileVisitor {
+        void visit(int x, int y, int width, int height, int[] pixels);
+    }
+
+    // Inflates each stored tile overlapping region in turn; pixels are only valid during the visit
+    void inflateTiles(Rect region, TileVisitor visitor) {
+        int[] pixels = new int[TILE_SIZE * TILE_SIZE];
+        ByteBuffer raw = ByteBuffer.allocate(pixels.length * 4).order(ByteOrder.BIG_ENDIAN);
+        Inflater inflater = new Inflater();
+        try {
+            for (Tile tile : tiles) {
+                if (region != null && !region.intersects(Rect.ofSize(tile.x, tile.y, tile.width, tile.height))) continue;
+                inflater.reset();
+                inflater.setInput(tile.data.duplicate());
+                raw.clear();
+                inflater.inflate(raw.array(), 0, tile.width * tile.height * 4);
+                raw.asIntBuffer().get(pixels, 0, tile.width * tile.height);
+                visitor.visit(tile.x, tile.y, tile.width, tile.height, pixels);
+            }
+        } catch (DataFormatException e) {
+            throw new IllegalStateException("Corrupt tile data", e);
+        } finally {
+            inflater.end();
+        }
+    }
+
+    public void writeTo(DataOutputStream out) throws IOException {
+        out.writeInt(width);
+        out.writeInt(height);
+        out.writeInt(tiles.size());
+        for (Tile tile : tiles) {
+            out.writeInt(tile.x);
+            out.writeInt(tile.y);
+            out.writeInt(tile.width);
+            out.writeInt(tile.height);
+            out.writeInt(tile.data.capacity());
+            ByteBuffer data = tile.data.duplicate();
+            data.clear();
+            byte[] bytes = new byte[data.remaining()];
+            data.get(bytes);
+            out.write(bytes);
+        }
+    }
+
+    // Reads tiles written by writeTo, copying their compressed data off-heap
+    public static TileSnapshot readFrom(ByteBuffer in) {
+        int width = in.getInt();
+        int height = in.getInt();
+        int count = in.getInt();
+        List<Tile> tiles = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            int x = in.getInt();
+            int y = in.getInt();
+            int w = in.getInt();
+            int h = in.getInt();
+            int length = in.getInt();
+            ByteBuffer source = in.slice();
+            source.limit(length);
+            ByteBuffer data = ByteBuffer.allocateDirect(length);
+            data.put(source).flip();
+            in.position(in.position() + length);
+            tiles.add(new Tile(x, y, w, h, data));
+        }
+        return new TileSnapshot(tiles, width, height);
+    }
+
+    public int getWidth() { return width; }
+    public int getHeight() { return height; }
+    public long getByteSize() { return byteSize; }
+    public int getTileCount() { return tiles.size(); }
+
+    private static boolean isUniform(int[] pixels, int length) {
+        int first = pixels[0];
+        for (int i = 1; i < length; i++) {
+            if (pixels[i] != first) return false;
+        }
+        return true;
+    }
+
+    private static boolean isTransparent(int[] pixels, int length) {
+        for (int i = 0; i < length; i++) {
+            if ((pixels[i] >>> 24) != 0) return false;
+        }
+        return true;
+    }
+}
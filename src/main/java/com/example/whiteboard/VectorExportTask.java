@@ -0,0 +1,90 @@
+package com.example.whiteboard;
+
+import javafx.concurrent.Task;
+
+import java.awt.image.BufferedImage;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.List;
+
+/*
+ * Writes the board as SVG or PDF off the FX application thread. The items
+ * and image placements are captured on the FX thread when the task is made;
+ * items are never changed once on the board (edits replace them), so the
+ * writer can read them while drawing goes on. As with raster exports, output
+ * goes to a temporary file that only replaces the target once complete.
+ */
+public class VectorExportTask extends Task<File> {
+    // An embedded media image and where it is shown on the board
+    public static class PlacedImage {
+        final String source;
+        final Rect bounds;
+
+        public PlacedImage(String source, Rect bounds) {
+            this.source = source;
+            this.bounds = bounds;
+        }
+    }
+
+    private final List<SceneItem> items;
+    private final List<PlacedImage> images;
+    private final Rect area;
+    private final File file;
+    private final String format;
+
+    // Items in drawing order; images are drawn above them, as media is on screen
+    public VectorExportTask(List<SceneItem> items, List<PlacedImage> images, Rect area, File file, String format) {
+        this.items = items;
+        this.images = images;
+        this.area = area;
+        this.file = file;
+        this.format = format.toLowerCase();
+    }
+
+    public VectorExportTask start() {
+        ImageExportTask.EXECUTOR.execute(this);
+        return this;
+    }
+
+    @Override
+    protected File call() throws IOException {
+        updateMessage("Saving " + file.getName());
+        File temp = File.createTempFile("whiteboard-", "." + format, file.getAbsoluteFile().getParentFile());
+        try {
+            try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(temp.toPath()), 1 << 16)) {
+                VectorWriter writer = VectorWriter.create(format, out);
+                writer.begin(area);
+                int total = items.size() + images.size();
+                for (int i = 0; i < items.size(); i++) {
+                    if (isCancelled()) return null;
+                    writer.draw(items.get(i));
+                    if (i % 256 == 0) updateProgress(i, total);
+                }
+                for (PlacedImage image : images) {
+                    if (isCancelled()) return null;
+                    writer.drawImage(image.source, image.bounds, () -> load(image.source));
+                }
+                writer.finish();
+            }
+            Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            Files.deleteIfExists(temp.toPath());
+        }
+        updateProgress(1, 1);
+        return file;
+    }
+
+    // An image that cannot be loaded any more is left out rather than failing the export
+    private static BufferedImage load(String source) {
+        try {
+            return VectorWriter.loadImage(source);
+        } catch (IOException | RuntimeException e) {
+            System.err.println("Cannot load " + source + ": " + e.getMessage());
+            return null;
+        }
+    }
+}
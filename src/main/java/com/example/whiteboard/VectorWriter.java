@@ -0,0 +1,225 @@
+package com.example.whiteboard;
+
+import javafx.scene.paint.Color;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.ImageOutputStream;
+import javax.imageio.stream.MemoryCacheImageOutputStream;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/*
+ * Writes board items as a vector document, one item at a time, straight to
+ * the output stream: nothing is buffered beyond the item being written, so
+ * memory does not grow with the board. Images are written the first time they
+ * are drawn and referenced by name after that, however often they appear.
+ * Raster items are written tile by tile, as stored, and transparent tiles are
+ * never written at all.
+ */
+public abstract class VectorWriter {
+    static final int MAX_IMAGE_SIZE = 4096; // pixels along the longer side of an embedded image
+    private static final float JPEG_QUALITY = 0.9f;
+
+    // Produces the pixels of an image the first time it is drawn
+    public interface ImageSource {
+        BufferedImage load() throws IOException;
+    }
+
+    protected final OutputStream out;
+    protected final StringBuilder line = new StringBuilder(256); // reused for each item
+    private final Map<Object, String> imageNames = new HashMap<>();
+
+    protected VectorWriter(OutputStream out) {
+        this.out = out;
+    }
+
+    public static VectorWriter create(String format, OutputStream out) {
+        switch (format.toLowerCase()) {
+            case "svg": return new SvgWriter(out);
+            case "pdf": return new PdfWriter(out);
+            default: throw new IllegalArgumentException("No vector format " + format);
+        }
+    }
+
+    // Starts a page showing area of the board
+    public abstract void begin(Rect area) throws IOException;
+
+    // Ends the document; the output stream is left open
+    public abstract void finish() throws IOException;
+
+    protected abstract void drawStroke(Stroke stroke) throws IOException;
+
+    protected abstract void drawText(TextItem text) throws IOException;
+
+    // Writes the pixels once and returns the name later placements refer to
+    protected abstract String defineImage(BufferedImage image) throws IOException;
+
+    // Draws a defined image stretched over bounds
+    protected abstract void placeImage(String name, Rect bounds) throws IOException;
+
+    // Same item types and appearance as HeadlessRenderer.draw
+    public void draw(SceneItem item) throws IOException {
+        if (item instanceof Stroke) {
+            if (((Stroke) item).getPointCount() > 1) drawStroke((Stroke) item);
+        } else if (item instanceof TextItem) {
+            drawText((TextItem) item);
+        } else if (item instanceof RasterItem) {
+            drawRaster((RasterItem) item);
+        } else if (item instanceof LargeImageItem) {
+            LargeImageItem large = (LargeImageItem) item;
+            int subsampling = (Math.max(large.getImageWidth(), large.getImageHeight()) - 1) / MAX_IMAGE_SIZE + 1;
+            drawImage(large.getFile(), large.getBounds(), () -> large.decode(
+                    new Rectangle(large.getImageWidth(), large.getImageHeight()), subsampling));
+        }
+    }
+
+    // Draws the image stretched over bounds; key identifies the same image wherever it is used
+    public void drawImage(Object key, Rect bounds, ImageSource source) throws IOException {
+        String name = imageNames.get(key);
+        if (name == null) {
+            BufferedImage image = source.load();
+            if (image == null) return;
+            name = defineImage(image);
+            imageNames.put(key, name);
+        }
+        placeImage(name, bounds);
+    }
+
+    private void drawRaster(RasterItem raster) throws IOException {
+        TileSnapshot tiles = raster.getTiles();
+        double scale = raster.getScale();
+        IOException[] failure = new IOException[1];
+        tiles.inflateTiles(null, (tx, ty, w, h, pixels) -> {
+            if (failure[0] != null) return;
+            Rect bounds = Rect.ofSize(raster.getX() + tx * scale, raster.getY() + ty * scale, w * scale, h * scale);
+            try {
+                drawImage(List.of(tiles, tx, ty), bounds, () -> {
+                    BufferedImage image = new BufferedImage(w, h, BufferedImage.TYPE_INT_ARGB);
+                    image.setRGB(0, 0, w, h, pixels, 0, w);
+                    return image;
+                });
+            } catch (IOException e) {
+                failure[0] = e;
+            }
+        });
+        if (failure[0] != null) throw failure[0];
+    }
+
+    protected static boolean isOpaque(BufferedImage image) {
+        if (!image.getColorModel().hasAlpha()) return true;
+        int[] row = new int[image.getWidth()];
+        for (int y = 0; y < image.getHeight(); y++) {
+            image.getRGB(0, y, row.length, 1, row, 0, row.length);
+            for (int pixel : row) {
+                if (pixel >>> 24 != 0xff) return false;
+            }
+        }
+        return true;
+    }
+
+    // Plain RGB copy for the JPEG encoder, which cannot take alpha or indexed images
+    protected static BufferedImage toRgb(BufferedImage image) {
+        if (image.getType() == BufferedImage.TYPE_INT_RGB || image.getType() == BufferedImage.TYPE_3BYTE_BGR) return image;
+        BufferedImage rgb = new BufferedImage(image.getWidth(), image.getHeight(), BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = rgb.createGraphics();
+        try {
+            g.drawImage(image, 0, 0, null);
+        } finally {
+            g.dispose();
+        }
+        return rgb;
+    }
+
+    // JPEG for opaque images such as photos, where it is far smaller than lossless encodings
+    protected static void writeJpeg(BufferedImage image, OutputStream target) throws IOException {
+        ImageWriter writer = ImageIO.getImageWritersByFormatName("jpeg").next();
+        try (ImageOutputStream stream = new MemoryCacheImageOutputStream(target)) {
+            ImageWriteParam param = writer.getDefaultWriteParam();
+            param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+            param.setCompressionQuality(JPEG_QUALITY);
+            writer.setOutput(stream);
+            writer.write(null, new IIOImage(toRgb(image), null, null), param);
+        } finally {
+            writer.dispose();
+        }
+    }
+
+    // Appends value with at most two decimals, without the cost of String.format
+    protected static void appendNumber(StringBuilder out, double value) {
+        long scaled = Math.round(value * 100);
+        if (scaled < 0) {
+            out.append('-');
+            scaled = -scaled;
+        }
+        out.append(scaled / 100);
+        int fraction = (int) (scaled % 100);
+        if (fraction == 0) return;
+        out.append('.');
+        if (fraction < 10) out.append('0');
+        out.append(fraction % 10 == 0 ? fraction / 10 : fraction);
+    }
+
+    protected void appendNumbers(double... values) {
+        for (int i = 0; i < values.length; i++) {
+            if (i > 0) line.append(' ');
+            appendNumber(line, values[i]);
+        }
+    }
+
+    // The output as a stream image encoders may close without ending the document
+    protected OutputStream shielded() {
+        return new FilterOutputStream(out) {
+            @Override
+            public void write(byte[] bytes, int offset, int length) throws IOException {
+                out.write(bytes, offset, length);
+            }
+
+            @Override
+            public void close() throws IOException {
+                flush();
+            }
+        };
+    }
+
+    protected void write(CharSequence text) throws IOException {
+        out.write(text.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    // Decodes an embedded media image, subsampled to at most MAX_IMAGE_SIZE pixels
+    static BufferedImage loadImage(String url) throws IOException {
+        try (InputStream in = new URL(url).openStream();
+             ImageInputStream stream = ImageIO.createImageInputStream(in)) {
+            Iterator<ImageReader> readers = stream != null ? ImageIO.getImageReaders(stream) : null;
+            if (readers == null || !readers.hasNext()) throw new IOException("Unsupported image format");
+
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(stream, true, true);
+                int size = Math.max(reader.getWidth(0), reader.getHeight(0));
+                int subsampling = (size - 1) / MAX_IMAGE_SIZE + 1;
+                ImageReadParam param = reader.getDefaultReadParam();
+                param.setSourceSubsampling(subsampling, subsampling, 0, 0);
+                return reader.read(0, param);
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+}
@@ -0,0 +1,73 @@
+package com.example.whiteboard;
+
+import javafx.scene.canvas.GraphicsContext;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// Maps between screen pixels and board (world) coordinates for pan and zoom
+public class Viewport {
+    public static final double MIN_SCALE = 1.0 / 64;
+    public static final double MAX_SCALE = 16;
+
+    private double offsetX, offsetY; // world position shown at the screen origin
+    private double scale = 1;        // screen pixels per world unit
+    private final List<Runnable> listeners = new ArrayList<>();
+
+    public double getOffsetX() { return offsetX; }
+    public double getOffsetY() { return offsetY; }
+    public double getScale() { return scale; }
+
+    public double toWorldX(double screenX) { return offsetX + screenX / scale; }
+    public double toWorldY(double screenY) { return offsetY + screenY / scale; }
+    public double toScreenX(double worldX) { return (worldX - offsetX) * scale; }
+    public double toScreenY(double worldY) { return (worldY - offsetY) * scale; }
+
+    public Rect getVisibleArea(double screenWidth, double screenHeight) {
+        return Rect.ofSize(offsetX, offsetY, screenWidth / scale, screenHeight / scale);
+    }
+
+    public void panBy(double screenDx, double screenDy) {
+        offsetX -= screenDx / scale;
+        offsetY -= screenDy / scale;
+        fireChanged();
+    }
+
+    // Zooms keeping the world point under (screenX, screenY) fixed
+    public void zoomAt(double screenX, double screenY, double factor) {
+        double worldX = toWorldX(screenX);
+        double worldY = toWorldY(screenY);
+        scale = Math.max(MIN_SCALE, Math.min(MAX_SCALE, scale * factor));
+        offsetX = worldX - screenX / scale;
+        offsetY = worldY - screenY / scale;
+        fireChanged();
+    }
+
+    // Shows the same part of the board as other
+    public void copyFrom(Viewport other) {
+        offsetX = other.offsetX;
+        offsetY = other.offsetY;
+        scale = other.scale;
+        fireChanged();
+    }
+
+    public void reset() {
+        offsetX = 0;
+        offsetY = 0;
+        scale = 1;
+        fireChanged();
+    }
+
+    // Sets up gc so drawing in world coordinates lands in the right screen position
+    public void apply(GraphicsContext gc) {
+        gc.transform(scale, 0, 0, scale, -offsetX * scale, -offsetY * scale);
+    }
+
+    public void addListener(Runnable listener) {
+        listeners.add(listener);
+    }
+
+    private void fireChanged() {
+        for (Runnable listener : listeners) listener.run();
+    }
+}
@@ -15,6 +15,7 @@ public class WhiteboardApp extends Application {
     public void start(Stage primaryStage) {
         // Create the controller which will manage the application logic
         controller = new WhiteboardController();
+        controller.getPerfMonitor().register();
 
         // Create the UI components
         whiteboardUI = new WhiteboardUI(controller);
@@ -26,8 +27,37 @@ public class WhiteboardApp extends Application {
         primaryStage.setTitle("Whiteboard");
         primaryStage.setScene(scene);
         primaryStage.show();
+
+        whiteboardUI.startSession();
+    }
+
+    @Override
+    public void stop() {
+        controller.shutdown();
     }
     public static void main(String[] args) {
+        // Batch export runs without a window; see BatchExporter for the options
+        if (args.length > 0 && args[0].equals("--export")) {
+            System.exit(BatchExporter.run(args));
+        }
+        // Headless replay of a session recording into PNG frames; see SessionReplay
+        if (args.length > 0 && args[0].equals("--replay")) {
+            System.exit(SessionReplay.run(args));
+        }
+        // Canvas against headless rendering of one board; see RenderComparison
+        if (args.length > 0 && args[0].equals("--compare")) {
+            System.exit(RenderComparison.run(args));
+        }
+        // Standalone relay for shared boards: --relay [port] [bind address]
+        if (args.length > 0 && args[0].equals("--relay")) {
+            try {
+                CollabRelay.main(args);
+            } catch (Exception e) {
+                System.err.println("Relay failed: " + e.getMessage());
+                System.exit(1);
+            }
+            return;
+        }
         launch(args);
     }
 }
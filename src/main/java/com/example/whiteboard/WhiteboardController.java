@@ -1,40 +1,76 @@
 package com.example.whiteboard;
 
-import javafx.embed.swing.SwingFXUtils;
+import javafx.application.Platform;
+import javafx.concurrent.Task;
+import javafx.geometry.Bounds;
+import javafx.scene.SnapshotParameters;
+import javafx.scene.canvas.Canvas;
 import javafx.scene.canvas.GraphicsContext;
 import javafx.scene.image.Image;
+import javafx.scene.image.ImageView;
+import javafx.scene.image.PixelFormat;
+import javafx.scene.image.WritableImage;
 import javafx.scene.media.Media;
 import javafx.scene.media.MediaPlayer;
+import javafx.scene.media.MediaView;
 import javafx.scene.paint.Color;
 import javafx.stage.FileChooser;
+import javafx.scene.transform.Scale;
 import javafx.stage.Stage;
 
-import javax.imageio.ImageIO;
-import java.awt.image.BufferedImage;
 import java.io.File;
 import java.io.IOException;
-import java.util.ArrayDeque;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.ArrayList;
-import java.util.Deque;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 public class WhiteboardController {
+    // Fills run one at a time, on one thread kept for them
+    private static final ExecutorService FILL_EXECUTOR = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "whiteboard-fill");
+        thread.setDaemon(true);
+        return thread;
+    });
+
     private GraphicsContext gc;
     private Color currentColor = Color.BLACK;
     private double brushSize = 5;
+    private int fillTolerance = 32;
     private String currentTool = "pen";
     private boolean isTextMode = false;
-    private Deque<Image> undoStack = new ArrayDeque<>();
-    private Deque<Image> redoStack = new ArrayDeque<>();
+    private SceneModel model = new SceneModel();
+    private CommandHistory history = new CommandHistory();
+    private BoardView view;
+    private BoardJournal journal;
+    private ImageCache imageCache = new ImageCache();
+    private MediaManager mediaManager = new MediaManager();
+    private PerfMonitor perfMonitor = new PerfMonitor(history, mediaManager, imageCache);
+    private CollabSession session;
+    private StrokeInput strokeInput = new StrokeInput();
+    private Stroke currentStroke;
+    private Eraser eraser;
+    private Selection selection;
+    private SessionRecorder recorder;
+    private SessionRecording recording; // the last finished recording
+    private WritableImage fillSnapshot; // reused between fills of the same canvas size
+    private byte[] fillBytes;
+    private int[] fillPixels;
+    private boolean filling; // a fill is being computed from fillBytes
     private double lastX, lastY;
-    private List<MediaElement> mediaElements = new ArrayList<>();
+    private double panLastX, panLastY;
     private MediaElement selectedMediaElement;
     private double dragStartX, dragStartY;
 
     public static class MediaElement {
         public javafx.scene.Node node;
         public double startX, startY;
-        public MediaPlayer mediaPlayer;
+        public MediaPlayer mediaPlayer; // may be swapped or released by the MediaManager
+        public String source;
         public boolean isDragging;
 
         public MediaElement(javafx.scene.Node node, double startX, double startY, MediaPlayer mediaPlayer) {
@@ -42,65 +78,277 @@ public class WhiteboardController {
             this.startX = startX;
             this.startY = startY;
             this.mediaPlayer = mediaPlayer;
+            this.source = mediaPlayer != null ? mediaPlayer.getMedia().getSource() : null;
             this.isDragging = false;
         }
+
+        // Media can be hidden as a whole in the UI, which hides the node's parent
+        public boolean isShown() {
+            return node.isVisible() && (node.getParent() == null || node.getParent().isVisible());
+        }
     }
 
     public void setGraphicsContext(GraphicsContext gc) {
         this.gc = gc;
+        this.view = new BoardView(gc.getCanvas(), model, perfMonitor);
+        // Lets the media manager pause and eventually release videos scrolled out of view
+        Runnable visibilityUpdate = () -> mediaManager.setVisibleArea(view.getVisibleArea());
+        view.getViewport().addListener(visibilityUpdate);
+        gc.getCanvas().widthProperty().addListener(obs -> visibilityUpdate.run());
+        gc.getCanvas().heightProperty().addListener(obs -> visibilityUpdate.run());
+        selection = new Selection(model, view);
         updateToolSettings();
+        view.requestRepaint();
+    }
+
+    public Viewport getViewport() { return view.getViewport(); }
+
+    // Transparent canvas over the board where predicted pen input is drawn
+    public void setPredictionLayer(GraphicsContext predictionGc) {
+        view.getStrokeRenderer().setPredictionLayer(predictionGc);
+    }
+
+    // Transparent canvas over the board where the lasso and the selection being moved are drawn
+    public void setSelectionLayer(GraphicsContext selectionGc) {
+        selection.setOverlay(selectionGc);
     }
 
+    // Layers from bottom to top; media nodes always stay above them
+    public List<Layer> getLayerOrder() { return view.getLayerOrder(); }
+    public void moveLayer(Layer layer, int steps) { view.moveLayer(layer, steps); }
+    public boolean isLayerVisible(Layer layer) { return view.isLayerVisible(layer); }
+    public void setLayerVisible(Layer layer, boolean visible) { view.setLayerVisible(layer, visible); }
+
+    BoardView getView() { return view; }
+
+    // Mouse coordinates are in screen pixels and converted to board coordinates here
     public void handleMousePressed(double x, double y) {
-        lastX = x;
-        lastY = y;
+        Viewport viewport = view.getViewport();
+        lastX = viewport.toWorldX(x);
+        lastY = viewport.toWorldY(y);
 
         if (isTextMode) return;
 
-        gc.beginPath();
-        gc.moveTo(x, y);
-        gc.stroke();
-        saveCurrentState();
+        if (currentTool.equals("fill")) {
+            fill((int) x, (int) y);
+            return;
+        }
+
+        if (currentTool.equals("select")) {
+            selection.press(x, y);
+            return;
+        }
+
+        if (isEraser()) {
+            // The eraser is as wide as the brush in screen pixels, so its radius is half the brush size
+            eraser = new Eraser(model, currentTool.equals("object-eraser"), brushSize / 2 / viewport.getScale());
+            erase(lastX, lastY);
+            return;
+        }
+
+        // Brush size is in screen pixels, so strokes look the same at any zoom while drawing
+        currentStroke = new Stroke(currentTool, currentColor, gc.getLineWidth() / viewport.getScale());
+        strokeInput.begin(currentStroke, lastX, lastY, viewport.getScale(), System.nanoTime());
+        perfMonitor.inputReceived();
+        view.getStrokeRenderer().begin(currentStroke);
+        if (session != null) session.strokeStarted(currentStroke);
     }
 
     public void handleMouseDragged(double x, double y) {
-        if (!isTextMode && (currentTool.equals("pen") || currentTool.equals("eraser"))) {
-            gc.lineTo(x, y);
-            gc.stroke();
+        if (eraser != null) {
+            Viewport viewport = view.getViewport();
+            erase(viewport.toWorldX(x), viewport.toWorldY(y));
+        } else if (currentTool.equals("select")) {
+            selection.drag(x, y);
+        } else if (!isTextMode && currentStroke != null && currentTool.equals("pen")) {
+            Viewport viewport = view.getViewport();
+            strokeInput.add(viewport.toWorldX(x), viewport.toWorldY(y), System.nanoTime());
+            view.getStrokeRenderer().predict(currentStroke, strokeInput.getPredictedX(), strokeInput.getPredictedY());
+            perfMonitor.inputReceived();
         }
     }
 
     public void handleMouseReleased() {
-        if (!isTextMode) gc.closePath();
+        if (eraser != null) {
+            // Each step is already applied and redrawn; the gesture is undone as a whole
+            SceneEdit edit = eraser.finish();
+            if (edit != null) history.push(edit);
+            eraser = null;
+            return;
+        }
+        if (currentTool.equals("select")) {
+            // The items were moved off the board while dragging; this puts them back in one edit
+            SceneEdit edit = selection.release();
+            if (edit != null) history.push(edit);
+            return;
+        }
+        if (isTextMode || currentStroke == null) return;
+
+        // The stored stroke is simplified; the drawn one stays the live preview for collaborators
+        Stroke finished = strokeInput.finish();
+        view.getStrokeRenderer().finish(currentStroke);
+        if (finished.getPointCount() > 1) {
+            SceneEdit edit = SceneEdit.add(finished);
+            edit.apply(model);
+            history.push(edit);
+        }
+        if (session != null) session.strokeFinished(currentStroke);
+        currentStroke = null;
     }
 
-    public void handleMediaDragStart(double x, double y) {
-        for (MediaElement element : mediaElements) {
-            if (element.node.getBoundsInParent().contains(x, y)) {
-                selectedMediaElement = element;
-                dragStartX = x - element.node.getLayoutX();
-                dragStartY = y - element.node.getLayoutY();
-                element.isDragging = true;
-                break;
+    // Erases from the last pointer position to (x, y), in board coordinates
+    private void erase(double x, double y) {
+        eraser.erase(lastX, lastY, x, y);
+        lastX = x;
+        lastY = y;
+    }
+
+    /*
+     * Fills the area under the screen pixel (x, y) as it is shown, i.e. within
+     * the visible part of the board. Only the filled bounding box is kept, as a
+     * raster at screen resolution on the ink layer. The FX thread only takes the
+     * snapshot and copies out its pixels in the image's own BGRA format, the
+     * cheapest read; converting them, the flood fill and compressing the result
+     * into tiles run on the fill executor, and the fill is committed when they
+     * finish. Clicks while a fill is still being computed are ignored.
+     */
+    private void fill(int x, int y) {
+        Canvas canvas = gc.getCanvas();
+        int width = (int) canvas.getWidth(), height = (int) canvas.getHeight();
+        if (filling || x < 0 || y < 0 || x >= width || y >= height) return;
+
+        SnapshotParameters params = new SnapshotParameters();
+        params.setFill(Color.WHITE); // the board's background
+        if (fillSnapshot == null || fillSnapshot.getWidth() != width || fillSnapshot.getHeight() != height) {
+            fillSnapshot = new WritableImage(width, height);
+            fillBytes = new byte[width * height * 4];
+            fillPixels = new int[width * height];
+        }
+        canvas.snapshot(params, fillSnapshot);
+        fillSnapshot.getPixelReader().getPixels(0, 0, width, height,
+                PixelFormat.getByteBgraPreInstance(), fillBytes, 0, width * 4);
+
+        // Placed where the board was when clicked, even if it is panned meanwhile
+        Viewport viewport = view.getViewport();
+        double originX = viewport.toWorldX(0), originY = viewport.toWorldY(0), scale = 1 / viewport.getScale();
+        byte[] bytes = fillBytes;
+        int[] pixels = fillPixels;
+        int tolerance = fillTolerance, color = toArgb(currentColor);
+        filling = true;
+        FILL_EXECUTOR.execute(() -> {
+            FillItem item = null;
+            try {
+                // BGRA bytes read as little-endian ints are ARGB. Premultiplied or not makes no
+                // difference, since the snapshot has an opaque background
+                ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN).asIntBuffer().get(pixels);
+                FloodFill.Region region = FloodFill.fill(pixels, width, height, x, y, tolerance, color);
+                if (region != null) {
+                    TileSnapshot tiles = TileSnapshot.capture(region.pixels, region.width, region.height);
+                    item = new FillItem(tiles, originX + region.x * scale, originY + region.y * scale, scale);
+                }
+            } finally {
+                FillItem filled = item;
+                Platform.runLater(() -> {
+                    filling = false;
+                    if (filled != null) commit(SceneEdit.add(filled));
+                });
             }
+        });
+    }
+
+    private static int toArgb(Color color) {
+        return (int) Math.round(color.getOpacity() * 255) << 24
+                | (int) Math.round(color.getRed() * 255) << 16
+                | (int) Math.round(color.getGreen() * 255) << 8
+                | (int) Math.round(color.getBlue() * 255);
+    }
+
+    private boolean isEraser() {
+        return currentTool.equals("eraser") || currentTool.equals("object-eraser");
+    }
+
+    public void handlePanStart(double x, double y) {
+        panLastX = x;
+        panLastY = y;
+    }
+
+    public void handlePan(double x, double y) {
+        view.getViewport().panBy(x - panLastX, y - panLastY);
+        panLastX = x;
+        panLastY = y;
+    }
+
+    public void handleZoom(double x, double y, double scrollDelta) {
+        view.getViewport().zoomAt(x, y, Math.exp(scrollDelta * 0.002));
+    }
+
+    public void resetView() {
+        view.getViewport().reset();
+    }
+
+    public void commitText(String text, double x, double y) {
+        if (text == null || text.isEmpty()) return;
+
+        Viewport viewport = view.getViewport();
+        TextItem item = new TextItem(text, viewport.toWorldX(x), viewport.toWorldY(y),
+                currentColor, brushSize * 3 / viewport.getScale());
+        commit(SceneEdit.add(item));
+    }
+
+    // Topmost label of the visible annotation layer under the screen point, or null
+    public TextItem textAt(double x, double y) {
+        if (!view.isLayerVisible(Layer.ANNOTATIONS)) return null;
+        Viewport viewport = view.getViewport();
+        Rect point = Rect.ofPoint(viewport.toWorldX(x), viewport.toWorldY(y));
+        List<SceneItem> items = model.query(point, Layer.ANNOTATIONS);
+        for (int i = items.size() - 1; i >= 0; i--) {
+            if (items.get(i) instanceof TextItem) return (TextItem) items.get(i);
+        }
+        return null;
+    }
+
+    // Replaces the label's text, keeping its place; empty text deletes the label
+    public void editText(TextItem item, String text) {
+        if (text == null || text.equals(item.getText()) || !model.contains(item)) return;
+        if (text.isEmpty()) {
+            commit(new SceneEdit(List.of(item), List.of()));
+        } else {
+            commit(new SceneEdit(List.of(item), List.of(item.withText(text))));
+        }
+    }
+
+    public void handleMediaDragStart(double x, double y) {
+        if (currentTool.equals("select")) return;
+        Viewport viewport = view.getViewport();
+        x = viewport.toWorldX(x);
+        y = viewport.toWorldY(y);
+        MediaElement element = model.mediaAt(x, y);
+        if (element != null) {
+            selectedMediaElement = element;
+            dragStartX = x - element.node.getLayoutX();
+            dragStartY = y - element.node.getLayoutY();
+            element.isDragging = true;
         }
     }
 
     public void handleMediaDrag(double x, double y) {
         if (selectedMediaElement != null) {
-            selectedMediaElement.node.setLayoutX(x - dragStartX);
-            selectedMediaElement.node.setLayoutY(y - dragStartY);
+            Viewport viewport = view.getViewport();
+            selectedMediaElement.node.setLayoutX(viewport.toWorldX(x) - dragStartX);
+            selectedMediaElement.node.setLayoutY(viewport.toWorldY(y) - dragStartY);
         }
     }
 
     public void handleMediaDragEnd() {
         if (selectedMediaElement != null) {
             selectedMediaElement.isDragging = false;
+            model.mediaMoved(selectedMediaElement);
             selectedMediaElement = null;
         }
     }
 
     public void setTool(String tool) {
+        if (!tool.equals("select")) selection.clear();
         currentTool = tool;
         isTextMode = tool.equals("text");
         updateToolSettings();
@@ -110,10 +358,8 @@ public class WhiteboardController {
         if (currentTool.equals("pen") || currentTool.equals("text")) {
             gc.setStroke(currentColor);
             gc.setFill(currentColor);
-        } else if (currentTool.equals("eraser")) {
-            gc.setStroke(Color.WHITE);
         }
-        gc.setLineWidth(currentTool.equals("eraser") ? brushSize * 2 : brushSize);
+        gc.setLineWidth(brushSize);
     }
 
     public boolean isTextMode() { return isTextMode; }
@@ -126,34 +372,61 @@ public class WhiteboardController {
         updateToolSettings();
     }
 
+    // Largest per-channel difference (0-255) from the clicked colour that the fill tool still covers
+    public int getFillTolerance() { return fillTolerance; }
+
+    public void setFillTolerance(int tolerance) {
+        fillTolerance = tolerance;
+    }
+
+    // How far, in screen pixels, finished strokes may be simplified from the drawn line
+    public double getSimplifyTolerance() { return strokeInput.getSimplifyTolerance(); }
+
+    public void setSimplifyTolerance(double tolerance) {
+        strokeInput.setSimplifyTolerance(tolerance);
+    }
+
     public void setBrushSize(double size) {
         brushSize = size;
         updateToolSettings();
     }
 
     public void clearCanvas() {
-        saveCurrentState();
-        gc.clearRect(0, 0, gc.getCanvas().getWidth(), gc.getCanvas().getHeight());
+        selection.clear();
+        List<SceneItem> items = model.getItems();
+        if (!items.isEmpty()) {
+            SceneEdit edit = new SceneEdit(items, List.of());
+            edit.apply(model);
+            history.push(edit);
+        }
+        view.invalidateAll();
         clearMediaElements();
     }
 
     public void clearMediaElements() {
-        for (MediaElement element : mediaElements) {
-            if (element.mediaPlayer != null) {
-                element.mediaPlayer.stop();
-            }
-        }
-        mediaElements.clear();
+        mediaManager.clear();
+        model.clearMedia();
+    }
+
+    // Removes one element from the board and releases its player
+    public void removeMediaElement(MediaElement element) {
+        mediaManager.remove(element);
+        model.removeMedia(element);
     }
 
-    public Image loadImage(Stage stage) {
+    public MediaManager getMediaManager() { return mediaManager; }
+
+    public File chooseImageFile(Stage stage) {
         FileChooser fileChooser = new FileChooser();
         fileChooser.getExtensionFilters().add(
                 new FileChooser.ExtensionFilter("Image Files", "*.png", "*.jpg", "*.jpeg", "*.gif"));
-        File file = fileChooser.showOpenDialog(stage);
-        return file != null ? new Image(file.toURI().toString()) : null;
+        return fileChooser.showOpenDialog(stage);
     }
 
+    public ImageCache getImageCache() { return imageCache; }
+
+    public PerfMonitor getPerfMonitor() { return perfMonitor; }
+
     public MediaPlayer loadMedia(Stage stage, String type) {
         FileChooser fileChooser = new FileChooser();
         String[] extensions = type.equals("video") ?
@@ -166,49 +439,224 @@ public class WhiteboardController {
     }
 
     public void addMediaElement(MediaElement element) {
-        mediaElements.add(element);
+        addMediaElement(element, 0);
     }
 
+    // id is the element's id in a stored or shared board, or 0 for a new element
+    public void addMediaElement(MediaElement element, long id) {
+        model.addMedia(element, id);
+        mediaManager.register(element);
+        // Keep the index current as the node moves or its media finishes loading
+        element.node.boundsInParentProperty().addListener((obs, oldBounds, newBounds) ->
+                model.updateMedia(element));
+    }
+
+    // Very large images are decoded region by region as they are viewed instead of all at once
     public void openFile(Stage stage) {
-        Image image = loadImage(stage);
-        if (image != null) {
-            saveCurrentState();
-            gc.drawImage(image, 0, 0);
+        File file = chooseImageFile(stage);
+        if (file == null) return;
+
+        Viewport viewport = view.getViewport();
+        int[] size = ImageCache.readSize(file);
+        if (size != null && LargeImageItem.isLarge(size[0], size[1])) {
+            commit(SceneEdit.add(new LargeImageItem(file, viewport.getOffsetX(), viewport.getOffsetY(),
+                    size[0], size[1])));
+            return;
+        }
+
+        Image image = new Image(file.toURI().toString());
+        if (!image.isError()) {
+            TileSnapshot tiles = TileSnapshot.capture(image.getPixelReader(),
+                    (int) image.getWidth(), (int) image.getHeight());
+            commit(SceneEdit.add(new RasterItem(tiles, viewport.getOffsetX(), viewport.getOffsetY())));
         }
     }
 
-    public void undo() {
-        if (!undoStack.isEmpty()) {
-            redoStack.push(gc.getCanvas().snapshot(null, null));
-            gc.clearRect(0, 0, gc.getCanvas().getWidth(), gc.getCanvas().getHeight());
-            gc.drawImage(undoStack.pop(), 0, 0);
+    // Replaces the board with the one stored in path; the UI rebuilds the returned media nodes
+    public BoardFile.Contents openBoard(Path path) throws IOException {
+        BoardFile.Contents contents = BoardFile.read(path);
+        closeJournal();
+        model.clear();
+        clearMediaElements();
+        history.clear();
+        for (SceneItem item : contents.items) {
+            model.add(item);
         }
+        view.invalidateAll();
+        return contents;
     }
 
-    public void redo() {
-        if (!redoStack.isEmpty()) {
-            undoStack.push(gc.getCanvas().snapshot(null, null));
-            gc.clearRect(0, 0, gc.getCanvas().getWidth(), gc.getCanvas().getHeight());
-            gc.drawImage(redoStack.pop(), 0, 0);
+    // Compacts the current board into path and journals every further change there
+    public void attachBoardFile(Path path) throws IOException {
+        closeJournal();
+        journal = BoardJournal.open(path, model);
+        if (!path.equals(BoardFile.RECOVERY_PATH)) {
+            Files.deleteIfExists(BoardFile.RECOVERY_PATH);
         }
     }
 
-    public void saveCanvas(Stage stage, String format) throws IOException {
+    public Path getBoardPath() {
+        return journal != null ? journal.getPath() : null;
+    }
+
+    // Shares this board with everyone else connected to the relay at host:port
+    public void joinSession(String host, int port, CollabSession.MediaHandler mediaHandler) throws IOException {
+        leaveSession();
+        // Joining may replace the board with the shared one; the file (or autosave) keeps the board
+        // as it was rather than journaling the replacement. Saving during the session attaches a file again
+        closeJournal();
+        session = CollabSession.connect(host, port, this, mediaHandler);
+    }
+
+    public void leaveSession() {
+        if (session == null) return;
+        session.close();
+        session = null;
+    }
+
+    public boolean isInSession() { return session != null; }
+
+    // Records every change to the board, with timings, until stopRecording
+    public void startRecording() {
+        if (recorder == null) recorder = new SessionRecorder(model);
+    }
+
+    public SessionRecording stopRecording() {
+        if (recorder != null) {
+            recording = recorder.stop();
+            recorder = null;
+        }
+        return recording;
+    }
+
+    public boolean isRecording() { return recorder != null; }
+    public SessionRecording getRecording() { return recording; }
+
+    public void shutdown() {
+        leaveSession();
+        perfMonitor.unregister();
+        Path path = getBoardPath();
+        closeJournal();
+        try {
+            // An empty unsaved board is not worth offering to restore
+            if (path != null && path.equals(BoardFile.RECOVERY_PATH) && model.size() == 0) {
+                Files.deleteIfExists(path);
+            }
+        } catch (IOException e) {
+            System.err.println("Cannot remove recovery file: " + e.getMessage());
+        }
+    }
+
+    private void closeJournal() {
+        if (journal == null) return;
+        try {
+            journal.close();
+        } catch (IOException e) {
+            System.err.println("Cannot flush board journal: " + e.getMessage());
+        }
+        journal = null;
+    }
+
+    public SceneModel getModel() { return model; }
+    public CommandHistory getHistory() { return history; }
+
+    public void setUndoBudget(long bytes) {
+        history.setByteBudget(bytes);
+    }
+
+    public void undo() {
+        selection.clear();
+        history.undo(model);
+    }
+
+    public void redo() {
+        selection.clear();
+        history.redo(model);
+    }
+
+    private void commit(SceneEdit edit) {
+        edit.apply(model);
+        history.push(edit);
+    }
+
+    // Snapshots the canvas, or for SVG and PDF the board, on the FX thread and writes it in the background
+    public Task<File> saveCanvas(Stage stage, String format) {
         FileChooser fileChooser = new FileChooser();
         fileChooser.getExtensionFilters().add(
                 new FileChooser.ExtensionFilter(format + " files", "*." + format.toLowerCase())
         );
         File file = fileChooser.showSaveDialog(stage);
 
-        if (file != null) {
-            Image snapshot = gc.getCanvas().snapshot(null, null);
-            BufferedImage bufferedImage = SwingFXUtils.fromFXImage(snapshot, null);
-            ImageIO.write(bufferedImage, format.toLowerCase(), file);
+        if (file == null) return null;
+        if (format.equals("SVG") || format.equals("PDF")) return exportVector(file, format);
+        Image snapshot = gc.getCanvas().snapshot(null, null);
+        return new ImageExportTask(snapshot, captureMediaFrames(), file, format).start();
+    }
+
+    /*
+     * Media shown over the canvas, in z-order, as frames for the export task to
+     * composite in the background. Images hand over their decoded pixels as they
+     * are; videos (at their current frame) and audio controls are snapshotted one
+     * node at a time, never the whole scene. Media off screen costs nothing.
+     */
+    private List<ImageExportTask.Frame> captureMediaFrames() {
+        List<ImageExportTask.Frame> frames = new ArrayList<>();
+        Viewport viewport = view.getViewport();
+        Rect visible = view.getVisibleArea();
+        for (MediaElement element : model.getMediaElements()) {
+            javafx.scene.Node node = element.node;
+            boolean shown = element.isShown();
+            Bounds bounds = node.getBoundsInParent();
+            Rect placed = new Rect(bounds.getMinX(), bounds.getMinY(), bounds.getMaxX(), bounds.getMaxY());
+            if (!shown || !placed.intersects(visible)) continue;
+
+            Image frame;
+            if (node instanceof ImageView) {
+                frame = ((ImageView) node).getImage();
+                // Still decoding in the background, or failed to load
+                if (frame == null || frame.getProgress() < 1 || frame.isError()) continue;
+            } else if (node instanceof MediaView && ((MediaView) node).getMediaPlayer() == null) {
+                continue; // released by the media manager; nothing is showing
+            } else {
+                // At screen resolution, but never larger than an image the export could need
+                double scale = Math.min(viewport.getScale(),
+                        VectorWriter.MAX_IMAGE_SIZE / Math.max(1, Math.max(placed.getWidth(), placed.getHeight())));
+                SnapshotParameters params = new SnapshotParameters();
+                params.setTransform(new Scale(scale, scale));
+                params.setFill(Color.TRANSPARENT);
+                frame = node.snapshot(params, null);
+            }
+            frames.add(new ImageExportTask.Frame(frame, new Rect(
+                    viewport.toScreenX(placed.minX), viewport.toScreenY(placed.minY),
+                    viewport.toScreenX(placed.maxX), viewport.toScreenY(placed.maxY))));
         }
+        return frames;
     }
 
-    private void saveCurrentState() {
-        undoStack.push(gc.getCanvas().snapshot(null, null));
-        redoStack.clear();
+    // The whole board, not just the view: visible layers in their order, then the images on top
+    private VectorExportTask exportVector(File file, String format) {
+        List<SceneItem> all = model.getItems();
+        List<SceneItem> items = new ArrayList<>(all.size());
+        Rect area = null;
+        for (Layer layer : view.getLayerOrder()) {
+            if (!view.isLayerVisible(layer)) continue;
+            for (SceneItem item : all) {
+                if (item.getLayer() != layer) continue;
+                items.add(item);
+                area = item.getBounds().union(area);
+            }
+        }
+        List<VectorExportTask.PlacedImage> images = new ArrayList<>();
+        for (MediaElement element : model.getMediaElements()) {
+            boolean shown = element.isShown();
+            BoardFile.MediaRecord media = BoardFile.describe(element);
+            if (!shown || media == null || !media.type.equals("image")) continue;
+            Bounds bounds = element.node.getBoundsInParent();
+            Rect placed = new Rect(bounds.getMinX(), bounds.getMinY(), bounds.getMaxX(), bounds.getMaxY());
+            images.add(new VectorExportTask.PlacedImage(media.source, placed));
+            area = placed.union(area);
+        }
+        if (area == null) area = Rect.ofSize(0, 0, 1, 1);
+        return new VectorExportTask(items, images, area, file, format).start();
     }
 }
@@ -1,27 +1,60 @@
 package com.example.whiteboard;
 
-import javafx.scene.canvas.GraphicsContext;
+import javafx.animation.KeyFrame;
+import javafx.animation.Timeline;
+import javafx.scene.Group;
+import javafx.scene.Node;
 import javafx.scene.control.*;
 import javafx.scene.image.Image;
 import javafx.scene.layout.*;
 import javafx.scene.canvas.Canvas;
+import javafx.scene.input.MouseButton;
+import javafx.scene.shape.Rectangle;
+import javafx.scene.transform.Scale;
+import javafx.scene.transform.Translate;
+import javafx.scene.media.Media;
 import javafx.scene.media.MediaPlayer;
-import javafx.scene.text.Font;
+import javafx.application.Platform;
+import javafx.concurrent.Task;
+import javafx.stage.DirectoryChooser;
+import javafx.stage.FileChooser;
 import javafx.stage.Stage;
+import javafx.util.Duration;
 import javafx.scene.paint.Color;
 import javafx.scene.media.MediaView;
 import javafx.scene.image.ImageView;
 
+import java.io.File;
+import java.io.IOException;
+import java.net.ConnectException;
+import java.net.InetAddress;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
 public class WhiteboardUI {
+    static final double IMAGE_WIDTH = 500; // embedded images are shown at this board width
+
     private BorderPane root;
     private Canvas canvas;
     private TextField textField;
     private WhiteboardController controller;
     private Pane canvasContainer;
+    private Group mediaLayer;
+    private final Map<WhiteboardController.MediaElement, Node> mediaControls = new IdentityHashMap<>();
+    private CollabRelay relay;
+    private Button shareBtn;
+    private Label statsOverlay;
+    private Timeline statsRefresh;
+    private ReplayView replayView;
 
     public WhiteboardUI(WhiteboardController controller) {
         this.controller = controller;
         this.canvasContainer = new Pane(); // Initialize canvasContainer first
+        this.mediaLayer = new Group();
         initializeUI();
     }
 
@@ -39,11 +72,39 @@ public class WhiteboardUI {
 
         // Set up canvas container
         canvasContainer.getStyleClass().add("canvas-container");
-        canvasContainer.getChildren().addAll(canvas, textField);
-
-        // Bind canvas size to container
+        Canvas predictionCanvas = new Canvas();
+        predictionCanvas.setMouseTransparent(true);
+        predictionCanvas.widthProperty().bind(canvasContainer.widthProperty());
+        predictionCanvas.heightProperty().bind(canvasContainer.heightProperty());
+        controller.setPredictionLayer(predictionCanvas.getGraphicsContext2D());
+        // The lasso and dragged selection go above media, which moves with the selection
+        Canvas selectionCanvas = new Canvas();
+        selectionCanvas.setMouseTransparent(true);
+        selectionCanvas.widthProperty().bind(canvasContainer.widthProperty());
+        selectionCanvas.heightProperty().bind(canvasContainer.heightProperty());
+        controller.setSelectionLayer(selectionCanvas.getGraphicsContext2D());
+        canvasContainer.getChildren().addAll(canvas, predictionCanvas, mediaLayer, selectionCanvas, textField, createStatsOverlay());
+
+        // Bind canvas size to container; the canvas is a window onto the infinite board
         canvas.widthProperty().bind(canvasContainer.widthProperty());
         canvas.heightProperty().bind(canvasContainer.heightProperty());
+        Rectangle clip = new Rectangle();
+        clip.widthProperty().bind(canvasContainer.widthProperty());
+        clip.heightProperty().bind(canvasContainer.heightProperty());
+        canvasContainer.setClip(clip);
+
+        // Media nodes are laid out in board coordinates and follow pan and zoom
+        Scale mediaScale = new Scale();
+        Translate mediaTranslate = new Translate();
+        mediaLayer.getTransforms().addAll(mediaScale, mediaTranslate);
+        controller.getViewport().addListener(() -> {
+            Viewport viewport = controller.getViewport();
+            mediaScale.setX(viewport.getScale());
+            mediaScale.setY(viewport.getScale());
+            mediaTranslate.setX(-viewport.getOffsetX());
+            mediaTranslate.setY(-viewport.getOffsetY());
+            refreshImageResolution();
+        });
 
         // Setup drawing handlers (now called after canvasContainer is initialized)
         setupCanvasHandlers();
@@ -65,15 +126,25 @@ public class WhiteboardUI {
 
     private void setupCanvasHandlers() {
         canvas.setOnMousePressed(e -> {
-            if (controller.isTextMode()) {
-                textField.setLayoutX(e.getX());
-                textField.setLayoutY(e.getY());
+            if (e.getButton() != MouseButton.PRIMARY) {
+                controller.handlePanStart(e.getX(), e.getY());
+            } else if (controller.isTextMode()) {
+                // Clicking a label edits it in place; elsewhere starts a new one. The field holds
+                // a single line, so labels with line breaks are left alone rather than flattened
+                TextItem hit = controller.textAt(e.getX(), e.getY());
+                TextItem existing = hit != null && !hit.getText().contains("\n") ? hit : null;
+                Viewport viewport = controller.getViewport();
+                textField.setLayoutX(existing != null ? viewport.toScreenX(existing.getBounds().minX) : e.getX());
+                textField.setLayoutY(existing != null ? viewport.toScreenY(existing.getBounds().minY) : e.getY());
+                textField.setText(existing != null ? existing.getText() : "");
                 textField.setVisible(true);
                 textField.requestFocus();
                 textField.setOnAction(event -> {
-                    GraphicsContext gc = canvas.getGraphicsContext2D();
-                    gc.setFont(Font.font(controller.getBrushSize() * 3));
-                    gc.fillText(textField.getText(), textField.getLayoutX(), textField.getLayoutY());
+                    if (existing != null) {
+                        controller.editText(existing, textField.getText());
+                    } else {
+                        controller.commitText(textField.getText(), textField.getLayoutX(), textField.getLayoutY());
+                    }
                     textField.clear();
                     textField.setVisible(false);
                 });
@@ -83,16 +154,25 @@ public class WhiteboardUI {
         });
 
         canvas.setOnMouseDragged(e -> {
-            controller.handleMouseDragged(e.getX(), e.getY());
+            if (e.getButton() != MouseButton.PRIMARY) {
+                controller.handlePan(e.getX(), e.getY());
+            } else {
+                controller.handleMouseDragged(e.getX(), e.getY());
+            }
         });
 
         canvas.setOnMouseReleased(e -> {
-            controller.handleMouseReleased();
+            if (e.getButton() == MouseButton.PRIMARY) {
+                controller.handleMouseReleased();
+            }
         });
 
+        // Scroll to zoom around the cursor, drag with the middle or right button to pan
+        canvas.setOnScroll(e -> controller.handleZoom(e.getX(), e.getY(), e.getDeltaY()));
+
         // Add mouse handlers for media elements
         canvasContainer.setOnMousePressed(e -> {
-            if (!controller.isTextMode()) {
+            if (!controller.isTextMode() && mediaLayer.isVisible()) {
                 controller.handleMediaDragStart(e.getX(), e.getY());
             }
         });
@@ -123,7 +203,10 @@ public class WhiteboardUI {
         ToggleGroup toolGroup = new ToggleGroup();
         ToggleButton penBtn = createToggleToolButton("Draw", "pen", toolGroup);
         ToggleButton eraserBtn = createToggleToolButton("Eraser", "eraser", toolGroup);
+        ToggleButton objectEraserBtn = createToggleToolButton("Object Eraser", "object-eraser", toolGroup);
+        ToggleButton fillBtn = createToggleToolButton("Fill", "fill", toolGroup);
         ToggleButton textBtn = createToggleToolButton("Text", "text", toolGroup);
+        ToggleButton selectBtn = createToggleToolButton("Select", "select", toolGroup);
 
         // Color picker
         Label colorLabel = new Label("Color");
@@ -144,6 +227,32 @@ public class WhiteboardUI {
         sizeSlider.valueProperty().addListener((obs, oldVal, newVal) ->
                 controller.setBrushSize(newVal.doubleValue()));
 
+        // How far colours may differ from the clicked one and still be filled
+        Label toleranceLabel = new Label("Fill Tolerance");
+        toleranceLabel.getStyleClass().add("section-label");
+        Slider toleranceSlider = new Slider(0, 128, controller.getFillTolerance());
+        toleranceSlider.setShowTickLabels(true);
+        toleranceSlider.setMajorTickUnit(32);
+        toleranceSlider.setPrefWidth(140);
+        toleranceSlider.valueProperty().addListener((obs, oldVal, newVal) ->
+                controller.setFillTolerance(newVal.intValue()));
+
+        // How closely finished strokes keep to the drawn line, in screen pixels
+        Label simplifyLabel = new Label("Stroke Simplify");
+        simplifyLabel.getStyleClass().add("section-label");
+        Slider simplifySlider = new Slider(0, 4, controller.getSimplifyTolerance());
+        simplifySlider.setShowTickLabels(true);
+        simplifySlider.setMajorTickUnit(1);
+        simplifySlider.setPrefWidth(140);
+        simplifySlider.valueProperty().addListener((obs, oldVal, newVal) ->
+                controller.setSimplifyTolerance(newVal.doubleValue()));
+
+        // Layers, listed top first
+        Label layersLabel = new Label("Layers");
+        layersLabel.getStyleClass().add("section-label");
+        VBox layerList = new VBox(5);
+        refreshLayerList(layerList);
+
         // Media buttons
         Button addImageBtn = createToolButton("Add Image", "image");
         addImageBtn.setPrefWidth(140);
@@ -162,32 +271,57 @@ public class WhiteboardUI {
         clearBtn.setPrefWidth(140);
         clearBtn.setOnAction(e -> {
             controller.clearCanvas();
-            canvasContainer.getChildren().removeIf(node -> !(node instanceof Canvas) && !(node instanceof TextField));
+            mediaLayer.getChildren().clear();
+            mediaControls.clear();
         });
 
         // Save options
         ComboBox<String> saveFormat = new ComboBox<>();
-        saveFormat.getItems().addAll("PNG", "JPG", "GIF", "BMP");
+        saveFormat.getItems().addAll("PNG", "JPG", "GIF", "BMP", "SVG", "PDF");
         saveFormat.setValue("PNG");
         saveFormat.setPrefWidth(140);
 
         Button saveBtn = createToolButton("Save", "save");
         saveBtn.setPrefWidth(140);
+
+        // Save progress, shown while an export runs in the background
+        ProgressBar saveProgress = new ProgressBar();
+        saveProgress.setPrefWidth(140);
+        Button cancelSaveBtn = createToolButton("Cancel Save", "cancel");
+        cancelSaveBtn.setPrefWidth(140);
+        VBox saveStatus = new VBox(5, saveProgress, cancelSaveBtn);
+        saveStatus.setVisible(false);
+        saveStatus.setManaged(false);
+
         saveBtn.setOnAction(e -> {
-            try {
-                controller.saveCanvas((Stage) root.getScene().getWindow(), saveFormat.getValue());
-            } catch (Exception ex) {
-                showAlert("Error saving file: " + ex.getMessage());
-            }
+            Task<File> task = controller.saveCanvas((Stage) root.getScene().getWindow(), saveFormat.getValue());
+            if (task == null) return;
+
+            saveProgress.progressProperty().bind(task.progressProperty());
+            cancelSaveBtn.setOnAction(event -> task.cancel());
+            saveStatus.setVisible(true);
+            saveStatus.setManaged(true);
+            saveBtn.setDisable(true);
+            task.runningProperty().addListener((obs, wasRunning, running) -> {
+                if (!running) {
+                    saveStatus.setVisible(false);
+                    saveStatus.setManaged(false);
+                    saveBtn.setDisable(false);
+                }
+            });
+            task.setOnFailed(event -> showAlert("Error saving file: " + task.getException().getMessage()));
         });
 
         leftToolbar.getChildren().addAll(
                 toolsLabel,
-                penBtn, eraserBtn, textBtn,
+                penBtn, eraserBtn, objectEraserBtn, fillBtn, textBtn, selectBtn,
                 colorLabel, colorPicker,
                 sizeLabel, sizeSlider,
+                simplifyLabel, simplifySlider,
+                toleranceLabel, toleranceSlider,
+                layersLabel, layerList,
                 addImageBtn, addVideoBtn, addAudioBtn,
-                saveFormat, saveBtn,
+                saveFormat, saveBtn, saveStatus,
                 clearBtn
         );
 
@@ -209,6 +343,23 @@ public class WhiteboardUI {
             }
         });
 
+        Button openBoardBtn = createToolButton("Open Board", "open-board");
+        openBoardBtn.setOnAction(e -> {
+            File file = chooseBoardFile(false);
+            if (file != null) openBoard(file.toPath());
+        });
+
+        Button saveBoardBtn = createToolButton("Save Board", "save-board");
+        saveBoardBtn.setOnAction(e -> {
+            File file = chooseBoardFile(true);
+            if (file == null) return;
+            try {
+                controller.attachBoardFile(file.toPath());
+            } catch (IOException ex) {
+                showAlert("Error saving board: " + ex.getMessage());
+            }
+        });
+
         // Edit operations
         Button undoBtn = createToolButton("Undo", "undo");
         undoBtn.setOnAction(e -> {
@@ -228,6 +379,41 @@ public class WhiteboardUI {
             }
         });
 
+        Button resetViewBtn = createToolButton("Reset View", "reset-view");
+        resetViewBtn.setOnAction(e -> controller.resetView());
+
+        PerfMonitor monitor = controller.getPerfMonitor();
+        Button statsBtn = createToolButton(monitor.isEnabled() ? "Hide Stats" : "Stats", "stats");
+        statsBtn.setOnAction(e -> {
+            setStatsVisible(!monitor.isEnabled());
+            statsBtn.setText(monitor.isEnabled() ? "Hide Stats" : "Stats");
+        });
+
+        Button recordBtn = createToolButton("Record", "record");
+        Button replayBtn = createToolButton("Replay", "replay");
+        replayBtn.setDisable(true);
+        recordBtn.setOnAction(e -> {
+            if (controller.isRecording()) {
+                controller.stopRecording();
+                recordBtn.setText("Record");
+                replayBtn.setDisable(false);
+            } else {
+                controller.startRecording();
+                recordBtn.setText("Stop Recording");
+            }
+        });
+        replayBtn.setOnAction(e -> showReplay());
+
+        shareBtn = createToolButton("Share", "share");
+        shareBtn.setOnAction(e -> {
+            if (controller.isInSession()) {
+                controller.leaveSession();
+                shareBtn.setText("Share");
+            } else {
+                shareBoard();
+            }
+        });
+
         // Add separators for visual grouping
         Separator fileSeparator = new Separator();
         fileSeparator.setOrientation(javafx.geometry.Orientation.VERTICAL);
@@ -236,98 +422,369 @@ public class WhiteboardUI {
         editSeparator.setOrientation(javafx.geometry.Orientation.VERTICAL);
 
         topToolbar.getChildren().addAll(
-                openBtn,
+                openBtn, openBoardBtn, saveBoardBtn,
                 fileSeparator,
                 undoBtn, redoBtn,
-                editSeparator
+                editSeparator,
+                resetViewBtn, statsBtn, recordBtn, replayBtn, shareBtn
         );
 
         return topToolbar;
     }
 
+    // Performance figures over the board; only refreshed, and only measured, while shown
+    private Label createStatsOverlay() {
+        statsOverlay = new Label();
+        statsOverlay.getStyleClass().add("stats-overlay");
+        statsOverlay.setStyle("-fx-background-color: rgba(0, 0, 0, 0.6); -fx-text-fill: white; "
+                + "-fx-font-family: monospace; -fx-padding: 6;");
+        statsOverlay.setMouseTransparent(true);
+        statsOverlay.relocate(10, 10);
+        statsRefresh = new Timeline(new KeyFrame(Duration.millis(250),
+                e -> statsOverlay.setText(controller.getPerfMonitor().describe())));
+        statsRefresh.setCycleCount(Timeline.INDEFINITE);
+        setStatsVisible(controller.getPerfMonitor().isEnabled());
+        return statsOverlay;
+    }
+
+    private void setStatsVisible(boolean visible) {
+        PerfMonitor monitor = controller.getPerfMonitor();
+        monitor.setEnabled(visible);
+        statsOverlay.setVisible(visible);
+        if (visible) {
+            monitor.resetWorst();
+            statsOverlay.setText(monitor.describe());
+            statsRefresh.play();
+        } else {
+            statsRefresh.stop();
+        }
+    }
+
+    /*
+     * Joins the relay at host:port. If nothing is listening on a loopback
+     * address, this instance starts the relay itself so others on the machine
+     * can join; it then lives as long as this window.
+     */
+    private void shareBoard() {
+        TextInputDialog dialog = new TextInputDialog("localhost:" + CollabRelay.DEFAULT_PORT);
+        dialog.setTitle("Share Board");
+        dialog.setHeaderText("Relay address (host:port)");
+        String address = dialog.showAndWait().orElse(null);
+        if (address == null || address.isBlank()) return;
+
+        int colon = address.lastIndexOf(':');
+        String host = colon > 0 ? address.substring(0, colon).trim() : address.trim();
+        int port;
+        try {
+            port = colon > 0 ? Integer.parseInt(address.substring(colon + 1).trim()) : CollabRelay.DEFAULT_PORT;
+        } catch (NumberFormatException ex) {
+            showAlert("Invalid port in " + address);
+            return;
+        }
+
+        try {
+            try {
+                controller.joinSession(host, port, sessionMedia);
+            } catch (ConnectException ex) {
+                if (relay != null || !InetAddress.getByName(host).isLoopbackAddress()) throw ex;
+                relay = CollabRelay.startLocal(port);
+                controller.joinSession(host, port, sessionMedia);
+            }
+            shareBtn.setText("Leave Session");
+        } catch (IOException ex) {
+            showAlert("Cannot join session: " + ex.getMessage());
+        }
+    }
+
+    // Media changes made by collaborators
+    private final CollabSession.MediaHandler sessionMedia = new CollabSession.MediaHandler() {
+        @Override
+        public void mediaAdded(long id, BoardFile.MediaRecord media) {
+            placeMedia(media, id);
+        }
+
+        @Override
+        public void mediaRemoved(WhiteboardController.MediaElement element) {
+            removeMedia(element);
+        }
+
+        @Override
+        public void disconnected(String reason) {
+            controller.leaveSession();
+            shareBtn.setText("Share");
+            showAlert(reason);
+        }
+    };
+
+    // Offers to restore an unsaved board left by a previous session, then starts journaling
+    public void startSession() {
+        Path recovery = BoardFile.RECOVERY_PATH;
+        if (BoardFile.hasContent(recovery)) {
+            Alert alert = new Alert(Alert.AlertType.CONFIRMATION,
+                    "Restore the unsaved board from your last session?", ButtonType.YES, ButtonType.NO);
+            alert.setHeaderText(null);
+            if (alert.showAndWait().orElse(ButtonType.NO) == ButtonType.YES) {
+                openBoard(recovery);
+                return;
+            }
+        }
+        try {
+            controller.attachBoardFile(recovery);
+        } catch (IOException e) {
+            showAlert("Autosave is unavailable: " + e.getMessage());
+        }
+    }
+
+    private void openBoard(Path path) {
+        try {
+            BoardFile.Contents contents = controller.openBoard(path);
+            mediaLayer.getChildren().clear();
+            mediaControls.clear();
+            for (BoardFile.MediaRecord media : contents.media) {
+                placeMedia(media, 0);
+            }
+            controller.attachBoardFile(path);
+            if (contents.recovered) {
+                showAlert("The board was recovered up to its last autosave.");
+            }
+        } catch (IOException | RuntimeException e) {
+            showAlert("Error opening board: " + e.getMessage());
+        }
+    }
+
+    // Plays the last recording over the board until closed
+    private void showReplay() {
+        SessionRecording recording = controller.getRecording();
+        if (recording == null || replayView != null) return;
+
+        Button saveRecordingBtn = createToolButton("Save Recording...", "save-recording");
+        saveRecordingBtn.setOnAction(e -> saveRecording(recording));
+        Button exportFramesBtn = createToolButton("Export Frames...", "export-frames");
+        exportFramesBtn.setOnAction(e -> exportFrames(recording, exportFramesBtn));
+        Button closeBtn = createToolButton("Close", "close-replay");
+
+        replayView = new ReplayView(new SessionReplay(recording), controller.getViewport(),
+                controller.getPerfMonitor(), controller.getImageCache(), saveRecordingBtn, exportFramesBtn, closeBtn);
+        Region node = (Region) replayView.getNode();
+        node.prefWidthProperty().bind(canvasContainer.widthProperty());
+        node.prefHeightProperty().bind(canvasContainer.heightProperty());
+        canvasContainer.getChildren().add(node);
+        closeBtn.setOnAction(e -> {
+            replayView.close();
+            canvasContainer.getChildren().remove(node);
+            replayView = null;
+        });
+    }
+
+    private void saveRecording(SessionRecording recording) {
+        FileChooser fileChooser = new FileChooser();
+        fileChooser.getExtensionFilters().add(
+                new FileChooser.ExtensionFilter("Session Recordings", "*." + SessionRecording.EXTENSION));
+        File file = fileChooser.showSaveDialog(root.getScene().getWindow());
+        if (file == null) return;
+        try {
+            recording.write(file.toPath());
+        } catch (IOException ex) {
+            showAlert("Error saving recording: " + ex.getMessage());
+        }
+    }
+
+    // Renders the frames off the FX thread, from a replay of its own
+    private void exportFrames(SessionRecording recording, Button exportBtn) {
+        File dir = new DirectoryChooser().showDialog(root.getScene().getWindow());
+        if (dir == null) return;
+        exportBtn.setDisable(true);
+        Thread thread = new Thread(() -> {
+            String message;
+            try {
+                int frames = new SessionReplay(recording).exportFrames(dir.toPath(), 30, 1, 1920, new HeadlessRenderer());
+                message = "Exported " + frames + " frames to " + dir;
+            } catch (IOException | RuntimeException ex) {
+                message = "Error exporting frames: " + ex.getMessage();
+            }
+            String result = message;
+            Platform.runLater(() -> {
+                exportBtn.setDisable(false);
+                showAlert(result);
+            });
+        }, "whiteboard-replay-export");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    private File chooseBoardFile(boolean save) {
+        FileChooser fileChooser = new FileChooser();
+        fileChooser.getExtensionFilters().add(
+                new FileChooser.ExtensionFilter("Whiteboard Files", "*." + BoardFile.EXTENSION));
+        Stage stage = (Stage) root.getScene().getWindow();
+        return save ? fileChooser.showSaveDialog(stage) : fileChooser.showOpenDialog(stage);
+    }
+
+    // Rebuilds a stored or shared media element; id 0 gives it a new id
+    private void placeMedia(BoardFile.MediaRecord media, long id) {
+        if (media.type.equals("image")) {
+            placeImage(media.source, media.x, media.y, id);
+        } else if (media.type.equals("video")) {
+            placeVideo(new MediaPlayer(new Media(media.source)), media.x, media.y, id);
+        } else if (media.type.equals("audio")) {
+            placeAudio(new MediaPlayer(new Media(media.source)), media.x, media.y, id);
+        }
+    }
+
+    private void removeMedia(WhiteboardController.MediaElement element) {
+        controller.removeMediaElement(element);
+        mediaLayer.getChildren().remove(element.node);
+        Node controls = mediaControls.remove(element);
+        if (controls != null) mediaLayer.getChildren().remove(controls);
+    }
+
     private void addImage() {
-        Image image = controller.loadImage((Stage) root.getScene().getWindow());
-        if (image != null) {
-            ImageView imageView = new ImageView(image);
-            imageView.setPreserveRatio(true);
-            imageView.setFitWidth(500);
-            imageView.setLayoutX(canvas.getWidth()/2 - 100);
-            imageView.setLayoutY(canvas.getHeight()/2 - 100);
-
-            imageView.setPickOnBounds(true);
-            imageView.setMouseTransparent(false);
-
-            WhiteboardController.MediaElement mediaElement =
-                    new WhiteboardController.MediaElement(imageView, 0, 0, null);
-            controller.addMediaElement(mediaElement);
-            canvasContainer.getChildren().add(imageView);
+        File file = controller.chooseImageFile((Stage) root.getScene().getWindow());
+        if (file != null) {
+            placeImage(file.toURI().toString(), viewCenterX() - 100, viewCenterY() - 100, 0);
         }
     }
 
+    // Decodes in the background at the size the image is shown at
+    private void placeImage(String url, double x, double y, long id) {
+        Image image = controller.getImageCache().load(url, imagePixelWidth());
+        ImageView imageView = new ImageView(image);
+        imageView.setPreserveRatio(true);
+        imageView.setFitWidth(IMAGE_WIDTH);
+        imageView.setLayoutX(x);
+        imageView.setLayoutY(y);
+
+        imageView.setPickOnBounds(true);
+        imageView.setMouseTransparent(false);
+
+        WhiteboardController.MediaElement mediaElement =
+                new WhiteboardController.MediaElement(imageView, 0, 0, null);
+        controller.addMediaElement(mediaElement, id);
+        mediaLayer.getChildren().add(imageView);
+    }
+
     private void addVideo() {
         MediaPlayer mediaPlayer = controller.loadMedia((Stage) root.getScene().getWindow(), "video");
         if (mediaPlayer != null) {
-            MediaView mediaView = new MediaView(mediaPlayer);
-            mediaView.setPreserveRatio(true);
-            mediaView.setFitWidth(550);
-            mediaView.setLayoutX(canvas.getWidth()/2 - 125);
-            mediaView.setLayoutY(canvas.getHeight()/2 - 125);
-
-            // Make video view draggable
-            mediaView.setPickOnBounds(true);
-            mediaView.setMouseTransparent(false);
-
-            // Add media controls
-            HBox controls = createMediaControls(mediaPlayer);
-            controls.setLayoutX(mediaView.getLayoutX());
-            controls.setLayoutY(mediaView.getLayoutY() + mediaView.getFitHeight() + 5);
-
-            WhiteboardController.MediaElement mediaElement =
-                    new WhiteboardController.MediaElement(mediaView, 0, 0, mediaPlayer);
-            controller.addMediaElement(mediaElement);
-            canvasContainer.getChildren().addAll(mediaView, controls);
-            mediaPlayer.play();
+            WhiteboardController.MediaElement element =
+                    placeVideo(mediaPlayer, viewCenterX() - 125, viewCenterY() - 125, 0);
+            controller.getMediaManager().play(element);
         }
     }
 
+    private WhiteboardController.MediaElement placeVideo(MediaPlayer mediaPlayer, double x, double y, long id) {
+        MediaView mediaView = new MediaView(mediaPlayer);
+        mediaView.setPreserveRatio(true);
+        mediaView.setFitWidth(550);
+        mediaView.setLayoutX(x);
+        mediaView.setLayoutY(y);
+
+        // Make video view draggable
+        mediaView.setPickOnBounds(true);
+        mediaView.setMouseTransparent(false);
+
+        WhiteboardController.MediaElement mediaElement =
+                new WhiteboardController.MediaElement(mediaView, 0, 0, mediaPlayer);
+
+        // Add media controls
+        HBox controls = createMediaControls(mediaElement);
+        controls.setLayoutX(mediaView.getLayoutX());
+        controls.setLayoutY(mediaView.getLayoutY() + mediaView.getFitHeight() + 5);
+
+        controller.addMediaElement(mediaElement, id);
+        mediaControls.put(mediaElement, controls);
+        mediaLayer.getChildren().addAll(mediaView, controls);
+        return mediaElement;
+    }
+
     private void addAudio() {
         MediaPlayer mediaPlayer = controller.loadMedia((Stage) root.getScene().getWindow(), "audio");
         if (mediaPlayer != null) {
-            // Create controls for audio (no visual element on canvas)
-            HBox controls = createMediaControls(mediaPlayer);
-            controls.setLayoutX(200);
-            controls.setLayoutY(200);
-
-            canvasContainer.getChildren().add(controls);
-            mediaPlayer.play();
+            WhiteboardController.MediaElement element = placeAudio(mediaPlayer,
+                    controller.getViewport().toWorldX(200), controller.getViewport().toWorldY(200), 0);
+            controller.getMediaManager().play(element);
         }
     }
 
-    private HBox createMediaControls(MediaPlayer mediaPlayer) {
+    // Audio has no visual element on the canvas, so its controls stand in for it
+    private WhiteboardController.MediaElement placeAudio(MediaPlayer mediaPlayer, double x, double y, long id) {
+        WhiteboardController.MediaElement mediaElement =
+                new WhiteboardController.MediaElement(null, 0, 0, mediaPlayer);
+        HBox controls = createMediaControls(mediaElement);
+        controls.setLayoutX(x);
+        controls.setLayoutY(y);
+        mediaElement.node = controls;
+
+        controller.addMediaElement(mediaElement, id);
+        mediaLayer.getChildren().add(controls);
+        return mediaElement;
+    }
+
+    // Controls go through the media manager, which may swap or release the element's player
+    private HBox createMediaControls(WhiteboardController.MediaElement element) {
+        MediaManager manager = controller.getMediaManager();
+
         Button playBtn = new Button("▶");
         playBtn.getStyleClass().add("control-button");
-        playBtn.setOnAction(e -> mediaPlayer.play());
+        playBtn.setOnAction(e -> manager.play(element));
 
         Button pauseBtn = new Button("⏸");
         pauseBtn.getStyleClass().add("control-button");
-        pauseBtn.setOnAction(e -> mediaPlayer.pause());
+        pauseBtn.setOnAction(e -> manager.pause(element));
 
         Button stopBtn = new Button("⏹");
         stopBtn.getStyleClass().add("control-button");
-        stopBtn.setOnAction(e -> mediaPlayer.stop());
+        stopBtn.setOnAction(e -> manager.stop(element));
 
-        Slider volumeSlider = new Slider(0, 1, mediaPlayer.getVolume());
-        volumeSlider.valueProperty().bindBidirectional(mediaPlayer.volumeProperty());
+        Slider volumeSlider = new Slider(0, 1, element.mediaPlayer.getVolume());
+        volumeSlider.valueProperty().addListener((obs, oldValue, newValue) ->
+                manager.setVolume(element, newValue.doubleValue()));
 
         Button deleteBtn = new Button("X");
         deleteBtn.getStyleClass().add("delete-button");
-        deleteBtn.setOnAction(e -> {
-            mediaPlayer.stop();
-            canvasContainer.getChildren().removeIf(node ->
-                    node instanceof HBox && ((HBox)node).getChildren().contains(playBtn));
-        });
+        HBox controls = new HBox(5, playBtn, pauseBtn, stopBtn, volumeSlider, deleteBtn);
+        deleteBtn.setOnAction(e -> removeMedia(element));
+
+        return controls;
+    }
 
-        return new HBox(5, playBtn, pauseBtn, stopBtn, volumeSlider, deleteBtn);
+    // Screen pixels an embedded image currently covers
+    private double imagePixelWidth() {
+        double outputScale = root.getScene() != null && root.getScene().getWindow() != null
+                ? root.getScene().getWindow().getOutputScaleX() : 1;
+        return IMAGE_WIDTH * controller.getViewport().getScale() * outputScale;
+    }
+
+    // Swaps in a sharper decode for images that zooming has enlarged beyond their decoded size
+    private void refreshImageResolution() {
+        double pixelWidth = imagePixelWidth();
+        ImageCache cache = controller.getImageCache();
+        for (javafx.scene.Node node : mediaLayer.getChildren()) {
+            if (!(node instanceof ImageView)) continue;
+            ImageView imageView = (ImageView) node;
+            Image current = imageView.getImage();
+            if (current == null || !cache.needsLargerDecode(current, pixelWidth)) continue;
+
+            Image sharper = cache.load(current.getUrl(), pixelWidth);
+            if (sharper.getProgress() >= 1) {
+                imageView.setImage(sharper);
+            } else {
+                sharper.progressProperty().addListener((obs, oldValue, progress) -> {
+                    if (progress.doubleValue() >= 1 && !sharper.isError() && imageView.getImage() == current) {
+                        imageView.setImage(sharper);
+                    }
+                });
+            }
+        }
+    }
+
+    // Board coordinates of the centre of the visible area
+    private double viewCenterX() {
+        return controller.getViewport().toWorldX(canvas.getWidth() / 2);
+    }
+
+    private double viewCenterY() {
+        return controller.getViewport().toWorldY(canvas.getHeight() / 2);
     }
 
     private void showAlert(String message) {
@@ -338,6 +795,43 @@ public class WhiteboardUI {
         alert.showAndWait();
     }
 
+    private void refreshLayerList(VBox layerList) {
+        layerList.getChildren().clear();
+
+        CheckBox mediaBox = new CheckBox("Media");
+        mediaBox.setSelected(mediaLayer.isVisible());
+        mediaBox.setOnAction(e -> {
+            mediaLayer.setVisible(mediaBox.isSelected());
+            // Hidden videos pause and stop counting against the player limit
+            controller.getMediaManager().updateVisibility();
+        });
+        layerList.getChildren().add(mediaBox);
+
+        List<Layer> order = new ArrayList<>(controller.getLayerOrder());
+        Collections.reverse(order);
+        for (Layer layer : order) {
+            CheckBox visibleBox = new CheckBox(layer.getLabel());
+            visibleBox.setSelected(controller.isLayerVisible(layer));
+            visibleBox.setOnAction(e -> controller.setLayerVisible(layer, visibleBox.isSelected()));
+            visibleBox.setMaxWidth(Double.MAX_VALUE);
+            HBox.setHgrow(visibleBox, Priority.ALWAYS);
+
+            Button upBtn = new Button("\u25B2");
+            upBtn.getStyleClass().add("layer-button");
+            upBtn.setOnAction(e -> {
+                controller.moveLayer(layer, 1);
+                refreshLayerList(layerList);
+            });
+            Button downBtn = new Button("\u25BC");
+            downBtn.getStyleClass().add("layer-button");
+            downBtn.setOnAction(e -> {
+                controller.moveLayer(layer, -1);
+                refreshLayerList(layerList);
+            });
+            layerList.getChildren().add(new HBox(2, visibleBox, upBtn, downBtn));
+        }
+    }
+
     private ToggleButton createToggleToolButton(String text, String type, ToggleGroup group) {
         ToggleButton btn = new ToggleButton(text);
         btn.getStyleClass().add(type + "-button");
@@ -348,6 +842,8 @@ public class WhiteboardUI {
         btn.setOnAction(e -> {
             if (btn.isSelected()) {
                 controller.setTool(type);
+                // Lassoing starts on the canvas even over media, which the selection then moves
+                mediaLayer.setMouseTransparent(type.equals("select"));
             }
         });
 
@@ -3,6 +3,8 @@ module com.example.whiteboardapp {
     requires javafx.fxml;
     requires javafx.media;
     requires javafx.swing;
+    requires java.management;
+    requires jdk.jfr;
 
 
     exports com.example.whiteboard;
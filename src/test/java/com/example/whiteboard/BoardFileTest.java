@@ -0,0 +1,221 @@
+package com.example.whiteboard;
+
+import javafx.scene.paint.Color;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class BoardFileTest {
+    @TempDir
+    Path dir;
+
+    private static Stroke stroke(double x, boolean split) {
+        Stroke stroke = new Stroke("pen", Color.rgb(10, 20, 30, 0.5), 3);
+        for (int i = 0; i < 20; i++) {
+            if (split && i == 10) stroke.startRun();
+            stroke.addPoint(x + i, Math.sin(i) * 10);
+        }
+        return stroke;
+    }
+
+    private static FillItem fill() {
+        int width = 300, height = 20;
+        int[] argb = new int[width * height];
+        Arrays.fill(argb, 0xff336699);
+        argb[5] = 0x80112233;
+        return new FillItem(TileSnapshot.capture(argb, width, height), -50.5, 12.25, 0.5);
+    }
+
+    private static SceneModel board() {
+        SceneModel model = new SceneModel();
+        model.add(stroke(0, false));
+        model.add(stroke(100, true));
+        model.add(new TextItem("two\nlines", 5, 6, Color.RED, 18));
+        model.add(fill());
+        return model;
+    }
+
+    // Items are equal when they encode to the same record
+    private static void assertSameItems(List<SceneItem> expected, List<SceneItem> actual) throws IOException {
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals(expected.get(i).getClass(), actual.get(i).getClass());
+            assertArrayEquals(BoardFile.addItemRecord(expected.get(i)), BoardFile.addItemRecord(actual.get(i)));
+        }
+    }
+
+    private static void append(Path path, byte[] bytes) throws IOException {
+        Files.write(path, bytes, StandardOpenOption.APPEND);
+    }
+
+    @Test
+    void writtenBoardReadsBack() throws IOException {
+        Path path = dir.resolve("board.wbd");
+        SceneModel model = board();
+        BoardFile.write(path, model);
+
+        BoardFile.Contents contents = BoardFile.read(path);
+        assertFalse(contents.recovered);
+        assertSameItems(model.getItems(), contents.items);
+        assertEquals(model.getItems().get(1).getOrder(), contents.items.get(1).getOrder());
+        assertEquals(2, ((Stroke) contents.items.get(1)).getRunCount());
+        assertArrayEquals(TileSnapshotTest.pixels(((FillItem) model.getItems().get(3)).getTiles()),
+                TileSnapshotTest.pixels(((FillItem) contents.items.get(3)).getTiles()));
+    }
+
+    @Test
+    void journalAppendsChanges() throws IOException {
+        Path path = dir.resolve("board.wbd");
+        SceneModel model = board();
+        try (BoardJournal journal = BoardJournal.open(path, model)) {
+            long compacted = Files.size(path);
+            model.remove(model.getItems().get(0));
+            model.add(stroke(200, false));
+            model.add(new TextItem("later", 0, 0, Color.BLUE, 12));
+            journal.flush();
+            assertTrue(Files.size(path) > compacted);
+            assertSameItems(model.getItems(), BoardFile.read(path).items);
+
+            model.clear();
+            journal.flush();
+            assertEquals(0, BoardFile.read(path).items.size());
+        }
+    }
+
+    @Test
+    void tornTailIsSkipped() throws IOException {
+        Path path = dir.resolve("board.wbd");
+        SceneModel model = board();
+        List<SceneItem> before;
+        long intact, full;
+        try (BoardJournal journal = BoardJournal.open(path, model)) {
+            before = model.getItems();
+            intact = Files.size(path);
+            model.add(fill());
+            journal.flush();
+            full = Files.size(path);
+        }
+        byte[] bytes = Files.readAllBytes(path);
+
+        // Cut anywhere inside the last record, as a crash mid-write would
+        for (long cut = intact; cut < full; cut += cut - intact < 16 ? 1 : 97) {
+            Path torn = dir.resolve("torn.wbd");
+            Files.write(torn, Arrays.copyOf(bytes, (int) cut));
+            BoardFile.Contents contents = BoardFile.read(torn);
+            assertEquals(cut > intact, contents.recovered, "cut at " + cut);
+            assertSameItems(before, contents.items);
+        }
+    }
+
+    @Test
+    void corruptRecordEndsTheBoard() throws IOException {
+        Path path = dir.resolve("board.wbd");
+        SceneModel model = new SceneModel();
+        List<Long> ends = new ArrayList<>();
+        try (BoardJournal journal = BoardJournal.open(path, model)) {
+            ends.add(Files.size(path));
+            for (int i = 0; i < 3; i++) {
+                model.add(stroke(i * 50, i == 1));
+                journal.flush();
+                ends.add(Files.size(path));
+            }
+        }
+        List<SceneItem> items = model.getItems();
+        byte[] bytes = Files.readAllBytes(path);
+
+        // A flipped bit in the second record's payload, then in its checksum
+        for (int offset : new int[] {ends.get(1).intValue() + 20, ends.get(2).intValue() - 1}) {
+            byte[] corrupt = bytes.clone();
+            corrupt[offset] ^= 0x10;
+            Path damaged = dir.resolve("damaged.wbd");
+            Files.write(damaged, corrupt);
+            BoardFile.Contents contents = BoardFile.read(damaged);
+            assertTrue(contents.recovered);
+            assertSameItems(items.subList(0, 1), contents.items);
+        }
+
+        // A checksum that matches a payload that does not parse
+        Path garbage = dir.resolve("garbage.wbd");
+        Files.write(garbage, Arrays.copyOf(bytes, ends.get(1).intValue()));
+        append(garbage, BoardFile.record(BoardFile.ADD_ITEM, new byte[] {0, 0, 0, 0, 0, 0, 0, 9, 99}));
+        append(garbage, Arrays.copyOfRange(bytes, ends.get(1).intValue(), bytes.length));
+        BoardFile.Contents contents = BoardFile.read(garbage);
+        assertTrue(contents.recovered);
+        assertSameItems(items.subList(0, 1), contents.items);
+    }
+
+    @Test
+    void unknownRecordsAndMediaAreReplayed() throws IOException {
+        Path path = dir.resolve("board.wbd");
+        SceneModel model = board();
+        BoardFile.write(path, model);
+
+        ByteArrayOutputStream media = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(media);
+        out.writeLong(1000);
+        BoardFile.writeString(out, "image");
+        BoardFile.writeString(out, "file:/a.png");
+        out.writeDouble(1);
+        out.writeDouble(2);
+        append(path, BoardFile.record(BoardFile.ADD_MEDIA, media.toByteArray()));
+        append(path, BoardFile.record((byte) 99, new byte[12])); // from a newer version
+        append(path, BoardFile.record(BoardFile.MOVE_MEDIA,
+                ByteBuffer.allocate(24).putLong(1000).putDouble(30).putDouble(40).array()));
+
+        BoardFile.Contents contents = BoardFile.read(path);
+        assertFalse(contents.recovered);
+        assertSameItems(model.getItems(), contents.items);
+        assertEquals(1, contents.media.size());
+        assertEquals("file:/a.png", contents.media.get(0).source);
+        assertEquals(30, contents.media.get(0).x);
+        assertEquals(40, contents.media.get(0).y);
+    }
+
+    @Test
+    void recoveredBoardIsRewrittenWhole() throws IOException {
+        Path path = dir.resolve("board.wbd");
+        SceneModel model = board();
+        BoardFile.write(path, model);
+        append(path, Arrays.copyOf(BoardFile.addItemRecord(stroke(7, false)), 30)); // torn
+
+        BoardFile.Contents contents = BoardFile.read(path);
+        assertTrue(contents.recovered);
+        SceneModel reopened = new SceneModel();
+        for (SceneItem item : contents.items) reopened.add(item);
+        try (BoardJournal journal = BoardJournal.open(path, reopened)) {
+            reopened.add(stroke(300, false));
+            journal.flush();
+        }
+        contents = BoardFile.read(path);
+        assertFalse(contents.recovered);
+        assertSameItems(reopened.getItems(), contents.items);
+    }
+
+    @Test
+    void rejectsOtherFiles() throws IOException {
+        Path path = dir.resolve("other.wbd");
+        Files.write(path, "not a board at all".getBytes());
+        assertThrows(IOException.class, () -> BoardFile.read(path));
+
+        Files.write(path, new byte[3]);
+        assertTrue(BoardFile.read(path).recovered);
+        Files.write(path, new byte[0]);
+        assertFalse(BoardFile.read(path).recovered);
+    }
+}
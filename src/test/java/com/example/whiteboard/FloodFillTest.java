@@ -0,0 +1,192 @@
+package com.example.whiteboard;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+// Every fill is checked pixel for pixel against a plain breadth-first fill
+class FloodFillTest {
+    private static final int WHITE = 0xffffffff;
+    private static final int BLACK = 0xff000000;
+    private static final int RED = 0xffff0000;
+
+    private static boolean[] reference(int[] argb, int width, int height, int seedX, int seedY, int tolerance) {
+        boolean[] filled = new boolean[width * height];
+        int target = argb[seedY * width + seedX];
+        ArrayDeque<Integer> queue = new ArrayDeque<>();
+        filled[seedY * width + seedX] = true;
+        queue.add(seedY * width + seedX);
+        while (!queue.isEmpty()) {
+            int index = queue.poll();
+            int x = index % width, y = index / width;
+            int[][] neighbours = {{x - 1, y}, {x + 1, y}, {x, y - 1}, {x, y + 1}};
+            for (int[] n : neighbours) {
+                if (n[0] < 0 || n[1] < 0 || n[0] >= width || n[1] >= height) continue;
+                int next = n[1] * width + n[0];
+                if (filled[next] || !withinTolerance(argb[next], target, tolerance)) continue;
+                filled[next] = true;
+                queue.add(next);
+            }
+        }
+        return filled;
+    }
+
+    private static boolean withinTolerance(int pixel, int target, int tolerance) {
+        for (int shift = 0; shift < 32; shift += 8) {
+            if (Math.abs((pixel >>> shift & 0xff) - (target >>> shift & 0xff)) > tolerance) return false;
+        }
+        return true;
+    }
+
+    private static void assertFill(int[] argb, int width, int height, int seedX, int seedY, int tolerance) {
+        boolean[] expected = reference(argb, width, height, seedX, seedY, tolerance);
+        FloodFill.Region region = FloodFill.fill(argb, width, height, seedX, seedY, tolerance, RED);
+
+        boolean[] actual = new boolean[width * height];
+        for (int y = 0; y < region.height; y++) {
+            for (int x = 0; x < region.width; x++) {
+                int pixel = region.pixels[y * region.width + x];
+                if (pixel == 0) continue;
+                assertEquals(RED, pixel);
+                actual[(region.y + y) * width + region.x + x] = true;
+            }
+        }
+        String at = "seed (" + seedX + ", " + seedY + ")";
+        assertArrayEquals(expected, actual, at);
+
+        // Cropped to the bounding box of the filled pixels
+        int minX = width, minY = height, maxX = -1, maxY = -1;
+        for (int i = 0; i < expected.length; i++) {
+            if (!expected[i]) continue;
+            minX = Math.min(minX, i % width);
+            maxX = Math.max(maxX, i % width);
+            minY = Math.min(minY, i / width);
+            maxY = Math.max(maxY, i / width);
+        }
+        assertEquals(minX, region.x, at);
+        assertEquals(minY, region.y, at);
+        assertEquals(maxX - minX + 1, region.width, at);
+        assertEquals(maxY - minY + 1, region.height, at);
+    }
+
+    private static int[] blank(int width, int height) {
+        int[] argb = new int[width * height];
+        Arrays.fill(argb, WHITE);
+        return argb;
+    }
+
+    @Test
+    void seedOutsideTheBufferFillsNothing() {
+        assertNull(FloodFill.fill(blank(10, 10), 10, 10, 10, 0, 0, RED));
+        assertNull(FloodFill.fill(blank(10, 10), 10, 10, 0, -1, 0, RED));
+    }
+
+    @Test
+    void toleranceIsInclusivePerChannel() {
+        int width = 7, height = 1, tolerance = 16;
+        int target = 0xff808080;
+        // Each channel, alpha included, just within and just beyond the tolerance
+        int[] argb = {target, 0xff809080, 0xff908080, 0xef808080, 0xff808090, 0xff808091, target};
+        assertFill(argb, width, height, 0, 0, tolerance);
+        assertEquals(5, FloodFill.fill(argb, width, height, 0, 0, tolerance, RED).width);
+        argb[5] = 0xff817f91;
+        assertFill(argb, width, height, 6, 0, tolerance);
+        assertFill(argb, width, height, 0, 0, 0);
+    }
+
+    @Test
+    void noisyImagesAtToleranceEdges() {
+        Random random = new Random(42);
+        int[][] sizes = {{40, 30}, {300, 250}, {513, 200}};
+        for (int[] size : sizes) {
+            int width = size[0], height = size[1];
+            for (int tolerance : new int[] {0, 8, 32}) {
+                // Grey levels clustered around tolerance steps, so most neighbours sit on an edge
+                int[] argb = new int[width * height];
+                for (int i = 0; i < argb.length; i++) {
+                    int grey = 128 + (random.nextInt(5) - 2) * (tolerance / 2 + (random.nextInt(3) - 1));
+                    grey = Math.max(0, Math.min(255, grey));
+                    argb[i] = 0xff000000 | grey << 16 | grey << 8 | grey;
+                }
+                for (int seed = 0; seed < 5; seed++) {
+                    assertFill(argb, width, height, random.nextInt(width), random.nextInt(height), tolerance);
+                }
+            }
+        }
+    }
+
+    @Test
+    void onePixelCorridors() {
+        // A serpentine corridor one pixel wide, small and large enough for the band fill
+        for (int[] size : new int[][] {{31, 33}, {401, 399}, {257, 1001}}) {
+            int width = size[0], height = size[1];
+            int[] argb = blank(width, height);
+            for (int y = 1; y < height; y += 2) {
+                Arrays.fill(argb, y * width, (y + 1) * width, BLACK);
+                // Alternate the gap between the right and left ends
+                argb[y * width + ((y / 2) % 2 == 0 ? width - 1 : 0)] = WHITE;
+            }
+            assertFill(argb, width, height, 0, 0, 0);
+            assertFill(argb, width, height, width / 2, height - 1, 0);
+            assertFill(argb, width, height, 5, 1, 0); // on a wall
+        }
+
+        // Vertical one-pixel corridors joined along the bottom row
+        int width = 500, height = 300;
+        int[] argb = blank(width, height);
+        for (int x = 1; x < width; x += 2) {
+            for (int y = 0; y < height - 1; y++) argb[y * width + x] = BLACK;
+        }
+        assertFill(argb, width, height, 0, 0, 0);
+        assertFill(argb, width, height, 498, 0, 0);
+    }
+
+    @Test
+    void regionsJoinedAcrossBandBoundaries() {
+        // Heights that do and do not end on a band boundary
+        for (int height : new int[] {64 * 6, 64 * 6 + 17}) {
+            int width = 600;
+            int[] argb = blank(width, height);
+            // Horizontal walls on the last row of each band and the first row of the next, each with one
+            // gap, alternating sides, so the region only connects through single pixels across the boundary
+            for (int band = 1; band * 64 < height; band++) {
+                for (int y = band * 64 - 1; y <= band * 64; y++) {
+                    Arrays.fill(argb, y * width, (y + 1) * width, BLACK);
+                    argb[y * width + (band % 2 == 0 ? 3 : width - 4)] = WHITE;
+                }
+            }
+            assertFill(argb, width, height, 0, 0, 0);
+            assertFill(argb, width, height, width - 1, height - 1, 0);
+            assertFill(argb, width, height, 3, 127, 0);  // in a wall gap on a band's last row
+            assertFill(argb, width, height, 3, 128, 0);  // and on the next band's first row
+
+            // Close one gap: the part below must no longer be filled
+            argb[191 * width + width - 4] = BLACK;
+            assertFill(argb, width, height, 0, 0, 0);
+        }
+
+        // A U shape: two arms that only meet far below, in another band
+        int width = 400, height = 400;
+        int[] argb = blank(width, height);
+        for (int y = 0; y < height - 10; y++) argb[y * width + width / 2] = BLACK;
+        assertFill(argb, width, height, 10, 10, 0);
+        assertFill(argb, width, height, width - 10, 10, 0);
+    }
+
+    @Test
+    void wholeBufferAndSinglePixel() {
+        int width = 640, height = 480;
+        assertFill(blank(width, height), width, height, 320, 240, 0);
+
+        int[] argb = blank(width, height);
+        for (int y = 99; y <= 101; y++) Arrays.fill(argb, y * width + 99, y * width + 102, BLACK);
+        argb[100 * width + 100] = WHITE;
+        assertFill(argb, width, height, 100, 100, 0);
+    }
+}
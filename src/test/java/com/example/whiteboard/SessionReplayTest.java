@@ -0,0 +1,149 @@
+package com.example.whiteboard;
+
+import javafx.scene.paint.Color;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class SessionReplayTest {
+    private static final long STEP = 10; // milliseconds between operations
+
+    // Adds count strokes, and after every third add removes the stroke added two before it
+    private static SessionRecording recording(int count, boolean removes) throws IOException {
+        SessionRecording recording = new SessionRecording();
+        long time = 0;
+        for (int i = 1; i <= count; i++) {
+            recording.add(time += STEP, BoardFile.addItemRecord(stroke(i)));
+            if (removes && i % 3 == 0) recording.add(time += STEP, BoardFile.removeItemRecord(stroke(i - 2)));
+        }
+        return recording;
+    }
+
+    private static Stroke stroke(long id) {
+        Stroke stroke = new Stroke("pen", Color.BLACK, 2);
+        stroke.addPoint(id, 0);
+        stroke.addPoint(id + 1, 1);
+        stroke.setOrder(id);
+        return stroke;
+    }
+
+    // Item ids on the board after the first operations of the recording, replayed one by one
+    private static Set<Long> expected(SessionRecording recording, int operations) {
+        Set<Long> ids = new LinkedHashSet<>();
+        for (int i = 0; i < operations; i++) {
+            byte[] record = recording.getRecord(i);
+            long id = ByteBuffer.wrap(record).getLong(5);
+            if (record[4] == BoardFile.ADD_ITEM) ids.add(id); else ids.remove(id);
+        }
+        return ids;
+    }
+
+    private static Set<Long> shown(SessionReplay replay) {
+        Set<Long> ids = new LinkedHashSet<>();
+        for (SceneItem item : replay.getModel().getItems()) ids.add(item.getOrder());
+        return ids;
+    }
+
+    @Test
+    void seeksToTheEndOfWholeIntervals() throws IOException {
+        SessionRecording recording = recording(SessionReplay.DEFAULT_CHECKPOINT_INTERVAL, false);
+        SessionReplay replay = new SessionReplay(recording);
+        replay.seek(replay.getDuration());
+        assertEquals(SessionReplay.DEFAULT_CHECKPOINT_INTERVAL, replay.getModel().size());
+
+        // From the start, where no operation has been applied yet
+        replay = new SessionReplay(recording(2 * SessionReplay.DEFAULT_CHECKPOINT_INTERVAL, false));
+        replay.seek(Long.MAX_VALUE);
+        assertEquals(2 * SessionReplay.DEFAULT_CHECKPOINT_INTERVAL, replay.getModel().size());
+    }
+
+    @Test
+    void seeksBackwards() throws IOException {
+        SessionRecording recording = recording(600, true);
+        SessionReplay replay = new SessionReplay(recording);
+        replay.seek(replay.getDuration());
+        assertEquals(expected(recording, recording.size()), shown(replay));
+
+        for (int operations : new int[] {500, 300, 256, 255, 10, 1, 0}) {
+            replay.seek(operations == 0 ? 0 : recording.getTime(operations - 1));
+            assertEquals(expected(recording, operations), shown(replay), "after " + operations + " operations");
+        }
+    }
+
+    @Test
+    void seeksAcrossCheckpoints() throws IOException {
+        SessionRecording recording = recording(300, true);
+        int interval = 16;
+        SessionReplay replay = new SessionReplay(recording, interval);
+
+        List<Integer> targets = new ArrayList<>();
+        for (int operations = 0; operations <= recording.size(); operations += 7) targets.add(operations);
+        targets.add(recording.size());
+        // Forward in small steps and large jumps, then jumps back and forth around checkpoints
+        for (int operations : targets) {
+            replay.seek(operations == 0 ? 0 : recording.getTime(operations - 1));
+            assertEquals(expected(recording, operations), shown(replay), "after " + operations + " operations");
+        }
+        for (int operations : new int[] {interval - 1, 5 * interval, 5 * interval - 1, interval, 2 * interval + 1,
+                recording.size(), 3 * interval}) {
+            replay.seek(recording.getTime(operations - 1));
+            assertEquals(expected(recording, operations), shown(replay), "after " + operations + " operations");
+        }
+    }
+
+    @Test
+    void replaysMedia() throws IOException {
+        SessionRecording recording = new SessionRecording();
+        recording.add(10, addMedia(1, "file:/a.png", 0, 0));
+        recording.add(20, addMedia(2, "file:/b.png", 50, 50));
+        recording.add(30, BoardFile.record(BoardFile.MOVE_MEDIA,
+                ByteBuffer.allocate(24).putLong(1).putDouble(100).putDouble(200).array()));
+        recording.add(40, BoardFile.record(BoardFile.REMOVE_MEDIA, ByteBuffer.allocate(8).putLong(2).array()));
+        recording.add(50, BoardFile.record(BoardFile.MOVE_MEDIA,
+                ByteBuffer.allocate(24).putLong(2).putDouble(0).putDouble(0).array())); // already removed
+        SessionReplay replay = new SessionReplay(recording, 2);
+
+        replay.seek(50);
+        assertEquals(Set.of(1L), replay.getMedia().keySet());
+        assertEquals(100, replay.getMedia().get(1L).x);
+        assertEquals(200, replay.getMedia().get(1L).y);
+        assertEquals("file:/a.png", replay.getMedia().get(1L).source);
+
+        replay.seek(20);
+        assertEquals(Set.of(1L, 2L), replay.getMedia().keySet());
+        assertEquals(0, replay.getMedia().get(1L).x);
+        replay.seek(0);
+        assertEquals(Set.of(), replay.getMedia().keySet());
+        replay.seek(30);
+        assertEquals(100, replay.getMedia().get(1L).x);
+        assertEquals(0, replay.getModel().size());
+    }
+
+    private static byte[] addMedia(long id, String source, double x, double y) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeLong(id);
+        BoardFile.writeString(out, "image");
+        BoardFile.writeString(out, source);
+        out.writeDouble(x);
+        out.writeDouble(y);
+        return BoardFile.record(BoardFile.ADD_MEDIA, bytes.toByteArray());
+    }
+
+    @Test
+    void emptyRecordingShowsAnEmptyBoard() {
+        SessionReplay replay = new SessionReplay(new SessionRecording());
+        replay.seek(0);
+        replay.seek(1000);
+        assertEquals(0, replay.getModel().size());
+    }
+}
@@ -0,0 +1,86 @@
+package com.example.whiteboard;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TileSnapshotTest {
+    // The pixels the snapshot holds, with transparent pixels where it stores no tile
+    static int[] pixels(TileSnapshot snapshot) {
+        int width = snapshot.getWidth();
+        int[] argb = new int[width * snapshot.getHeight()];
+        snapshot.inflateTiles(null, (x, y, w, h, pixels) -> {
+            for (int row = 0; row < h; row++) System.arraycopy(pixels, row * w, argb, (y + row) * width + x, w);
+        });
+        return argb;
+    }
+
+    @Test
+    void capturesWhatItIsGiven() {
+        // A large uniform fill with a transparent corner and a few tiles of detail, with partial tiles at the edges
+        int width = 3 * TileSnapshot.TILE_SIZE + 70, height = 2 * TileSnapshot.TILE_SIZE + 5;
+        int[] argb = new int[width * height];
+        Arrays.fill(argb, 0xff3366cc);
+        for (int y = 0; y < 300; y++) Arrays.fill(argb, y * width, y * width + 300, 0);
+        for (int i = 0; i < 500; i++) argb[(i * 7919) % argb.length] = 0x80000000 | i;
+
+        TileSnapshot snapshot = TileSnapshot.capture(argb, width, height);
+        assertArrayEquals(argb, pixels(snapshot));
+    }
+
+    @Test
+    void uniformTilesShareTheirData() {
+        int size = TileSnapshot.TILE_SIZE;
+        int[] argb = new int[8 * size * size];
+        Arrays.fill(argb, 0xffff0000);
+        TileSnapshot one = TileSnapshot.capture(Arrays.copyOf(argb, size * size), size, size);
+        TileSnapshot eight = TileSnapshot.capture(argb, 4 * size, 2 * size);
+
+        assertEquals(8, eight.getTileCount());
+        assertEquals(one.getByteSize(), eight.getByteSize());
+        assertArrayEquals(argb, pixels(eight));
+    }
+
+    @Test
+    void transparentTilesAreNotStored() {
+        int size = TileSnapshot.TILE_SIZE;
+        int[] argb = new int[2 * size * size];
+        argb[argb.length - 1] = 0xff000000;
+        TileSnapshot snapshot = TileSnapshot.capture(argb, 2 * size, size);
+        assertEquals(1, snapshot.getTileCount());
+        assertTrue(snapshot.getByteSize() > 0);
+        assertArrayEquals(argb, pixels(snapshot));
+    }
+
+    @Test
+    void storesPixelsBigEndian() throws IOException, DataFormatException {
+        TileSnapshot snapshot = TileSnapshot.capture(new int[] {0x11223344, 0x11223344}, 2, 1);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        snapshot.writeTo(new DataOutputStream(bytes));
+
+        // width, height, count, then x, y, w, h and length of the one tile
+        ByteBuffer in = ByteBuffer.wrap(bytes.toByteArray());
+        in.position(7 * 4);
+        byte[] data = new byte[in.getInt()];
+        in.get(data);
+        Inflater inflater = new Inflater();
+        inflater.setInput(data);
+        byte[] raw = new byte[8];
+        assertEquals(8, inflater.inflate(raw));
+        inflater.end();
+        assertArrayEquals(new byte[] {0x11, 0x22, 0x33, 0x44, 0x11, 0x22, 0x33, 0x44}, raw);
+
+        TileSnapshot read = TileSnapshot.readFrom(ByteBuffer.wrap(bytes.toByteArray()));
+        assertArrayEquals(new int[] {0x11223344, 0x11223344}, pixels(read));
+    }
+}